@@ -1,7 +1,11 @@
 package imageManipulation;
 
+import toSTL.Orientation;
+
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 
 /**
  * Main control panel UI with buttons and function log.
@@ -10,6 +14,9 @@ public class ControlPanel extends JFrame {
     private JTextArea logArea;
     private JLabel filenameLabel;
     private JLabel sourceLabel;
+    private JLabel taskLabel;
+    private JProgressBar taskProgressBar;
+    private JButton cancelTaskButton;
     private ImageProcessorApp app;
     
     public ControlPanel(ImageProcessorApp app) {
@@ -42,16 +49,57 @@ public class ControlPanel extends JFrame {
         
         fileMenu.addSeparator();
         
+        JMenuItem openSessionItem = new JMenuItem("Open Session...");
+        openSessionItem.addActionListener(e -> app.openSession(this));
+        fileMenu.add(openSessionItem);
+        
+        JMenuItem saveSessionItem = new JMenuItem("Save Session As...");
+        saveSessionItem.addActionListener(e -> app.saveSession(this));
+        fileMenu.add(saveSessionItem);
+        
+        fileMenu.addSeparator();
+        
         JMenuItem exportToSTLItem = new JMenuItem("Export to STL...");
         exportToSTLItem.addActionListener(e -> app.exportToSTL(this));
         fileMenu.add(exportToSTLItem);
+
+        JMenuItem exportLayersItem = new JMenuItem("Export Layers to STL...");
+        exportLayersItem.addActionListener(e -> app.exportLayersToSTL(this));
+        fileMenu.add(exportLayersItem);
+        
+        JMenuItem exportFileToSTLItem = new JMenuItem("Export Image File to STL...");
+        exportFileToSTLItem.addActionListener(e -> app.exportFileToSTL(this));
+        fileMenu.add(exportFileToSTLItem);
+
+        fileMenu.addSeparator();
+
+        JMenuItem exportRecipeItem = new JMenuItem("Export Recipe...");
+        exportRecipeItem.addActionListener(e -> app.exportRecipe(this));
+        fileMenu.add(exportRecipeItem);
+
+        JMenuItem runRecipeItem = new JMenuItem("Run Recipe...");
+        runRecipeItem.addActionListener(e -> app.runRecipe(this));
+        fileMenu.add(runRecipeItem);
         
         fileMenu.addSeparator();
         
         JMenuItem exitItem = new JMenuItem("Exit");
-        exitItem.addActionListener(e -> System.exit(0));
+        exitItem.addActionListener(e -> app.exit(this));
         fileMenu.add(exitItem);
         
+        // Edit Menu
+        JMenu editMenu = new JMenu("Edit");
+        
+        JMenuItem undoItem = new JMenuItem("Undo");
+        undoItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK));
+        undoItem.addActionListener(e -> app.undo(this));
+        editMenu.add(undoItem);
+        
+        JMenuItem redoItem = new JMenuItem("Redo");
+        redoItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK));
+        redoItem.addActionListener(e -> app.redo(this));
+        editMenu.add(redoItem);
+        
         // Process Menu
         JMenu processMenu = new JMenu("Process");
         
@@ -67,6 +115,39 @@ public class ControlPanel extends JFrame {
         scaleItem.addActionListener(e -> app.applyScale(this));
         processMenu.add(scaleItem);
         
+        processMenu.addSeparator();
+        
+        JMenuItem blurItem = new JMenuItem("Gaussian Blur...");
+        blurItem.addActionListener(e -> app.applyBlur(this));
+        processMenu.add(blurItem);
+        
+        JMenuItem medianItem = new JMenuItem("Median Denoise...");
+        medianItem.addActionListener(e -> app.applyMedian(this));
+        processMenu.add(medianItem);
+        
+        processMenu.addSeparator();
+        
+        JMenuItem equalizeItem = new JMenuItem("Equalize Histogram");
+        equalizeItem.addActionListener(e -> app.applyEqualize(this));
+        processMenu.add(equalizeItem);
+        
+        JMenuItem stretchItem = new JMenuItem("Auto Contrast");
+        stretchItem.addActionListener(e -> app.applyContrastStretch(this));
+        processMenu.add(stretchItem);
+        
+        JMenuItem brightnessItem = new JMenuItem("Brightness/Contrast...");
+        brightnessItem.addActionListener(e -> app.applyBrightnessContrast(this));
+        processMenu.add(brightnessItem);
+        
+        JMenu orientMenu = new JMenu("Rotate/Flip");
+        for (Orientation orientation : new Orientation[] {Orientation.ROTATE_90, Orientation.ROTATE_180,
+                Orientation.ROTATE_270, Orientation.FLIP_HORIZONTAL, Orientation.FLIP_VERTICAL}) {
+            JMenuItem orientItem = new JMenuItem(orientation.getDisplayName());
+            orientItem.addActionListener(e -> app.applyOrientation(this, orientation));
+            orientMenu.add(orientItem);
+        }
+        processMenu.add(orientMenu);
+        
         // View Menu
         JMenu viewMenu = new JMenu("View");
         
@@ -82,6 +163,7 @@ public class ControlPanel extends JFrame {
         helpMenu.add(aboutItem);
         
         menuBar.add(fileMenu);
+        menuBar.add(editMenu);
         menuBar.add(processMenu);
         menuBar.add(viewMenu);
         menuBar.add(helpMenu);
@@ -97,7 +179,7 @@ public class ControlPanel extends JFrame {
             "<br>" +
             "<p>This application provides image processing and 3D model export capabilities:</p>" +
             "<ul>" +
-            "<li>Process images with various filters (Posterize, Monochrome, Scale)</li>" +
+            "<li>Process images with various filters (Posterize, Monochrome, Scale, Blur, Median, Equalize, Contrast, Rotate/Flip)</li>" +
             "<li>Chain operations for complex transformations</li>" +
             "<li>Export images as 3D models in STL format for 3D printing</li>" +
             "</ul>" +
@@ -149,6 +231,24 @@ public class ControlPanel extends JFrame {
         JButton scaleBtn = new JButton("Scale");
         scaleBtn.addActionListener(e -> app.applyScale(this));
         
+        JButton blurBtn = new JButton("Blur");
+        blurBtn.addActionListener(e -> app.applyBlur(this));
+        
+        JButton medianBtn = new JButton("Median");
+        medianBtn.addActionListener(e -> app.applyMedian(this));
+        
+        JButton equalizeBtn = new JButton("Equalize");
+        equalizeBtn.addActionListener(e -> app.applyEqualize(this));
+        
+        JButton stretchBtn = new JButton("Auto Contrast");
+        stretchBtn.addActionListener(e -> app.applyContrastStretch(this));
+        
+        JButton rotateBtn = new JButton("Rotate 90°");
+        rotateBtn.addActionListener(e -> app.applyOrientation(this, Orientation.ROTATE_90));
+        
+        JButton flipBtn = new JButton("Flip");
+        flipBtn.addActionListener(e -> app.applyOrientation(this, Orientation.FLIP_HORIZONTAL));
+        
         JButton saveBtn = new JButton("Save Image");
         saveBtn.addActionListener(e -> app.saveImage(this));
         
@@ -161,6 +261,12 @@ public class ControlPanel extends JFrame {
         buttonPanel.add(posterizeBtn);
         buttonPanel.add(monochromeBtn);
         buttonPanel.add(scaleBtn);
+        buttonPanel.add(blurBtn);
+        buttonPanel.add(medianBtn);
+        buttonPanel.add(equalizeBtn);
+        buttonPanel.add(stretchBtn);
+        buttonPanel.add(rotateBtn);
+        buttonPanel.add(flipBtn);
         buttonPanel.add(saveBtn);
         buttonPanel.add(exportBtn);
         buttonPanel.add(gatherBtn);
@@ -204,8 +310,25 @@ public class ControlPanel extends JFrame {
         northPanel.add(topPanel, BorderLayout.NORTH);
         northPanel.add(buttonWrapper, BorderLayout.CENTER);
         
+        // Background task status - progress of the running operation and queue length
+        taskLabel = new JLabel("Ready");
+        taskLabel.setFont(taskLabel.getFont().deriveFont(11f));
+        taskProgressBar = new JProgressBar(0, 100);
+        taskProgressBar.setStringPainted(true);
+        taskProgressBar.setString("");
+        cancelTaskButton = new JButton("Cancel");
+        cancelTaskButton.setEnabled(false);
+        cancelTaskButton.addActionListener(e -> app.cancelProcessing());
+
+        JPanel statusPanel = new JPanel(new BorderLayout(5, 5));
+        statusPanel.setBorder(BorderFactory.createEmptyBorder(0, 5, 5, 5));
+        statusPanel.add(taskLabel, BorderLayout.NORTH);
+        statusPanel.add(taskProgressBar, BorderLayout.CENTER);
+        statusPanel.add(cancelTaskButton, BorderLayout.EAST);
+
         add(northPanel, BorderLayout.NORTH);
         add(scrollPane, BorderLayout.CENTER);
+        add(statusPanel, BorderLayout.SOUTH);
     }
     
     public void clearLog() {
@@ -228,6 +351,23 @@ public class ControlPanel extends JFrame {
         sourceLabel.setText("Source: " + sourceInfo);
     }
     
+    /**
+     * Show the processing queue status (called on the EDT by ProcessingQueue).
+     */
+    public void showTaskStatus(String runningName, int progress, int queued) {
+        if (runningName == null) {
+            taskLabel.setText("Ready");
+            taskProgressBar.setValue(0);
+            taskProgressBar.setString("");
+            cancelTaskButton.setEnabled(false);
+            return;
+        }
+        taskLabel.setText(queued > 0 ? runningName + " (" + queued + " queued)" : runningName);
+        taskProgressBar.setValue(progress);
+        taskProgressBar.setString(progress + "%");
+        cancelTaskButton.setEnabled(true);
+    }
+
     public void resetSourceImage() {
         sourceLabel.setText("Source: Input - 1");
     }
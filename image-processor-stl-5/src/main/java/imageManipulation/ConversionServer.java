@@ -0,0 +1,352 @@
+package imageManipulation;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import toSTL.BaseMode;
+import toSTL.ConversionListener;
+import toSTL.HeightMap;
+import toSTL.Orientation;
+import toSTL.ParallelGzipOutputStream;
+import toSTL.STLWriter;
+import toSTL.Triangle;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local HTTP service for the image to STL conversion, for use by other tools on the same host.
+ * Listens on the loopback interface only.
+ *
+ * <pre>
+ *   POST /convert?width=..&amp;height=..   body: image file   -&gt;   binary STL (model/stl)
+ *   GET  /health                                       -&gt;   status text
+ * </pre>
+ * /convert takes the dimension dialog's settings as query parameters: width, height and
+ * thickness in mm (default: image size in pixels and 255), scale (percent, default 100),
+ * clipping (default 500), zLayers (default 0), invert, flip (true/false), rotation
+ * (0, 90, 180 or 270), base (MERGED or PER_QUAD, default BaseMode.DEFAULT, as in recipes)
+ * and plinth (mm, default 0). Clients sending "Accept-Encoding: gzip" get the STL
+ * gzip-encoded (compressed in parallel blocks, sent chunked); the cache keeps the plain STL.
+ * Errors after the response headers have gone out can't be reported; the connection is
+ * just closed.
+ *
+ * Each request runs on its own virtual thread. Uploads are limited in count; conversions are
+ * admitted against a heap budget (a semaphore of megabytes sized from the max heap), with
+ * each request reserving an estimate based on its height map size. A request that can't be
+ * admitted within QUEUE_TIMEOUT_SECONDS gets 503.
+ */
+public class ConversionServer {
+    public static final int DEFAULT_PORT = 8765;
+    private static final int MAX_REQUESTS = 64; // Requests in flight, including uploads
+    private static final long MAX_UPLOAD_BYTES = 256L << 20;
+    private static final int MAX_CLIPPING = 5000;
+    private static final int DEFAULT_CLIPPING = 500;
+    private static final double DEFAULT_THICKNESS = 255.0;
+    private static final long BYTES_PER_GRID_POINT = 1024; // Pixels, heights and triangle objects
+    private static final int QUEUE_TIMEOUT_SECONDS = 60;
+    private static final long MB = 1024 * 1024;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ResultCache cache;
+    private final Semaphore requests = new Semaphore(MAX_REQUESTS);
+    private final Semaphore heapBudget;
+    private final int heapBudgetMB;
+    private final AtomicLong converted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param cache result cache, or null
+     */
+    public ConversionServer(int port, ResultCache cache) throws IOException {
+        this.cache = cache;
+        this.heapBudgetMB = (int) Math.max(1, Runtime.getRuntime().maxMemory() * 3 / 4 / MB);
+        this.heapBudget = new Semaphore(heapBudgetMB, true);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(executor);
+        server.createContext("/convert", this::handleConvert);
+        server.createContext("/health", this::handleHealth);
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("Conversion server listening on http://" + server.getAddress().getHostString() + ":" +
+                server.getAddress().getPort() + "/convert (heap budget " + heapBudgetMB + " MB)");
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    // ===== Handlers =====
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String status = "ok\nconverted " + converted.get() + "\nrejected " + rejected.get() +
+                    "\nheap budget " + heapBudget.availablePermits() + " / " + heapBudgetMB + " MB\n" +
+                    (cache != null ? cache.getStats() + "\n" : "");
+            sendText(exchange, 200, status);
+        }
+    }
+
+    private void handleConvert(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                sendText(exchange, 405, "Use POST with the image as the request body\n");
+                return;
+            }
+            if (!requests.tryAcquire()) {
+                reject(exchange, "Too many requests");
+                return;
+            }
+            try {
+                convert(exchange);
+            } finally {
+                requests.release();
+            }
+        }
+    }
+
+    private void convert(HttpExchange exchange) throws IOException {
+        long startTime = System.nanoTime();
+        File upload = Files.createTempFile("convert-", ".img").toFile();
+        try {
+            long uploaded = receive(exchange.getRequestBody(), upload);
+            if (uploaded < 0) {
+                sendText(exchange, 413, "Image larger than " + MAX_UPLOAD_BYTES / MB + " MB\n");
+                return;
+            }
+            if (uploaded == 0) {
+                sendText(exchange, 400, "Missing image in request body\n");
+                return;
+            }
+
+            STLExportSettings settings;
+            Dimension size;
+            try {
+                size = SubsampledImageReader.readDimensions(upload);
+                settings = parseSettings(parseQuery(exchange.getRequestURI().getRawQuery()), size);
+            } catch (IOException ex) {
+                sendText(exchange, 400, "Unsupported or corrupt image\n");
+                return;
+            } catch (IllegalArgumentException ex) {
+                sendText(exchange, 400, ex.getMessage() + "\n");
+                return;
+            }
+
+            String cacheKey = cache != null ? settings.cacheKey(ResultCache.fileKey(upload), true) : null;
+            boolean gzip = acceptsGzip(exchange);
+            boolean cached = cacheKey != null && cache.readFile(cacheKey, file -> {
+                sendSTLHeaders(exchange, file.length(), gzip);
+                try (OutputStream body = responseBody(exchange, gzip)) {
+                    Files.copy(file.toPath(), body);
+                }
+            });
+            if (!cached) {
+                int permits = estimateMB(size, settings);
+                if (!heapBudget.tryAcquire(permits, QUEUE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    reject(exchange, "Server busy");
+                    return;
+                }
+                try {
+                    BufferedImage image = SubsampledImageReader.read(upload, settings.getPixelClipping(),
+                            settings.getPixelClipping());
+                    List<Triangle> triangles = settings.mesh(image, ConversionListener.NONE);
+                    image = null;
+
+                    // The length is known from the triangle count, so the STL streams straight out
+                    sendSTLHeaders(exchange, STLWriter.binarySize(triangles.size()), gzip);
+                    try (OutputStream body = responseBody(exchange, gzip)) {
+                        STLWriter.writeBinary(triangles, body, ConversionListener.NONE);
+                    }
+                    if (cacheKey != null) {
+                        cache.putFile(cacheKey, target -> STLWriter.writeBinary(triangles, target.getPath()));
+                    }
+                } finally {
+                    heapBudget.release(permits);
+                }
+            }
+            converted.incrementAndGet();
+
+            long time = (System.nanoTime() - startTime) / 1_000_000;
+            System.out.println("[TIMING] Served " + size.width + "x" + size.height + " " + settings + ": " + time +
+                    " ms");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            if (!headersSent(exchange)) {
+                reject(exchange, "Server stopping");
+            }
+        } catch (RuntimeException | OutOfMemoryError ex) {
+            System.out.println("Conversion failed: " + ex);
+            if (!headersSent(exchange)) {
+                sendText(exchange, 500, "Conversion failed: " + ex.getMessage() + "\n");
+            } // Otherwise the client sees a truncated body when handleConvert closes the exchange
+        } finally {
+            upload.delete();
+        }
+    }
+
+    // ===== Helpers =====
+
+    /**
+     * Copy the request body to a file.
+     *
+     * @return the number of bytes, or -1 if the body exceeds MAX_UPLOAD_BYTES
+     */
+    private static long receive(InputStream body, File file) throws IOException {
+        byte[] buffer = new byte[1 << 16];
+        long total = 0;
+        try (OutputStream out = new FileOutputStream(file)) {
+            int read;
+            while ((read = body.read(buffer)) > 0) {
+                total += read;
+                if (total > MAX_UPLOAD_BYTES) {
+                    return -1;
+                }
+                out.write(buffer, 0, read);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Settings from query parameters, with the dimension dialog's defaults and validation.
+     */
+    static STLExportSettings parseSettings(Map<String, String> query, Dimension size) {
+        double scale = doubleParameter(query, "scale", 100.0) / 100.0;
+        double width = doubleParameter(query, "width", size.width) * scale;
+        double height = doubleParameter(query, "height", size.height) * scale;
+        double thickness = doubleParameter(query, "thickness", DEFAULT_THICKNESS) * scale;
+        int clipping = (int) doubleParameter(query, "clipping", DEFAULT_CLIPPING);
+        int zLayers = (int) doubleParameter(query, "zLayers", 0);
+        double plinth = doubleParameter(query, "plinth", 0) * scale;
+
+        if (width <= 0 || height <= 0 || thickness <= 0) {
+            throw new IllegalArgumentException("All dimensions must be positive values");
+        }
+        if (scale < 0.01 || scale > 3) {
+            throw new IllegalArgumentException("Scale percentage must be between 1 and 300");
+        }
+        if (clipping < 1 || clipping > MAX_CLIPPING) {
+            throw new IllegalArgumentException("Clipping must be between 1 and " + MAX_CLIPPING);
+        }
+        if (zLayers < 0 || zLayers > HeightMap.MAX_16_BIT) {
+            throw new IllegalArgumentException("Z layers must be between 0 and " + HeightMap.MAX_16_BIT);
+        }
+        if (plinth < 0) {
+            throw new IllegalArgumentException("Base plinth cannot be negative");
+        }
+        BaseMode baseMode;
+        try {
+            baseMode = BaseMode.valueOf(query.getOrDefault("base", BaseMode.DEFAULT.name()).trim().toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Base must be MERGED or PER_QUAD");
+        }
+        return new STLExportSettings(width, height, thickness,
+                Boolean.parseBoolean(query.getOrDefault("invert", "false")),
+                Boolean.parseBoolean(query.getOrDefault("flip", "false")),
+                Orientation.rotation((int) doubleParameter(query, "rotation", 0)),
+                clipping, zLayers, baseMode, plinth);
+    }
+
+    /**
+     * Heap to reserve for a conversion, in MB: the height map grid times a per-point estimate.
+     */
+    private int estimateMB(Dimension size, STLExportSettings settings) {
+        double fit = Math.min(1.0, (double) settings.getPixelClipping() / Math.max(size.width, size.height));
+        long gridPoints = (long) Math.ceil(size.width * fit) * (long) Math.ceil(size.height * fit);
+        long mb = Math.max(1, gridPoints * BYTES_PER_GRID_POINT / MB);
+        return (int) Math.min(heapBudgetMB, mb);
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+            String value = equals < 0 ? "true" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            query.put(name, value);
+        }
+        return query;
+    }
+
+    private static double doubleParameter(Map<String, String> query, String name, double defaultValue) {
+        String value = query.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    private static boolean acceptsGzip(HttpExchange exchange) {
+        String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        return accepted != null && accepted.toLowerCase().contains("gzip");
+    }
+
+    /**
+     * STL response headers; a gzip-encoded response has no known length and is sent chunked.
+     */
+    private static void sendSTLHeaders(HttpExchange exchange, long length, boolean gzip) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "model/stl");
+        exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"output.stl\"");
+        if (gzip) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(200, gzip ? 0 : length);
+    }
+
+    private static boolean headersSent(HttpExchange exchange) {
+        return exchange.getResponseCode() != -1;
+    }
+
+    private static OutputStream responseBody(HttpExchange exchange, boolean gzip) {
+        return gzip ? new ParallelGzipOutputStream(exchange.getResponseBody()) : exchange.getResponseBody();
+    }
+
+    private void reject(HttpExchange exchange, String message) throws IOException {
+        rejected.incrementAndGet();
+        exchange.getResponseHeaders().set("Retry-After", "5");
+        sendText(exchange, 503, message + "\n");
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(bytes);
+        }
+    }
+}
@@ -1,86 +1,102 @@
 package imageManipulation;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Manages the function log that tracks all operations.
+ * Records are kept in log order (one line each in the log view) and indexed by the
+ * sequence number of the image they created, so lineage lookups don't scan the log.
  */
 public class FunctionLog {
-    private List<String> entries;
-    
+    private final List<LogEntry> entries;
+    private final Map<Integer, LogEntry> entriesBySequence;
+
     public FunctionLog() {
         this.entries = new ArrayList<>();
+        this.entriesBySequence = new HashMap<>();
     }
-    
+
     public void clear() {
         entries.clear();
+        entriesBySequence.clear();
     }
-    
-    public void addEntry(String entry) {
+
+    public void addEntry(LogEntry entry) {
         entries.add(entry);
+        if (entry.createsImage()) {
+            entriesBySequence.put(entry.getSequence(), entry);
+        }
     }
-    
-    public String getEntry(int index) {
+
+    /**
+     * Record at a log line, or null.
+     */
+    public LogEntry getEntry(int index) {
         if (index >= 0 && index < entries.size()) {
             return entries.get(index);
         }
         return null;
     }
-    
+
     public int size() {
         return entries.size();
     }
-    
-//    public List<String> getAllEntries() {
-//        return new ArrayList<>(entries);
-//    }
-//
+
+    public List<LogEntry> getAllEntries() {
+        return Collections.unmodifiableList(new ArrayList<>(entries));
+    }
+
+    /**
+     * The record that created the given image sequence number, or null.
+     */
+    public LogEntry getEntryForSequence(int seqNum) {
+        return entriesBySequence.get(seqNum);
+    }
+
     /**
-     * Extracts the sequence number from a log entry.
-     * Format: "FunctionName - N" or "FunctionName - N (from M)"
+     * Records from the input image down to seqNum, following source sequences.
+     * Empty if seqNum is unknown or its chain is broken.
      */
-    public int extractSequenceNumber(String logEntry) {
-        String[] parts = logEntry.split(" - ");
-        if (parts.length >= 2) {
-            String seqPart = parts[1].split(" ")[0];
-            try {
-                return Integer.parseInt(seqPart);
-            } catch (NumberFormatException e) {
-                return -1;
+    public List<LogEntry> getLineage(int seqNum) {
+        List<LogEntry> lineage = new ArrayList<>();
+        LogEntry entry = entriesBySequence.get(seqNum);
+        while (entry != null) {
+            lineage.add(entry);
+            if (entry.getKind() == LogEntry.Kind.INPUT) {
+                Collections.reverse(lineage);
+                return lineage;
             }
+            entry = entriesBySequence.get(entry.getSourceSequence());
         }
-        return -1;
+        return Collections.emptyList();
     }
-    
+
     /**
-     * Extracts the function name from a log entry.
-     * Format: "FunctionName - N" or "FunctionName - N (from M)"
+     * Most recent event with the given operation name on image seqNum, or null.
      */
-    public String extractFunctionName(String logEntry) {
-        String[] parts = logEntry.split(" - ");
-        if (parts.length >= 1) {
-            return parts[0];
+    public LogEntry findLastEvent(String operation, int seqNum) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            LogEntry entry = entries.get(i);
+            if (entry.getKind() == LogEntry.Kind.EVENT && entry.getSourceSequence() == seqNum
+                    && entry.getOperation().equals(operation)) {
+                return entry;
+            }
         }
-        return "Unknown";
+        return null;
     }
-    
+
     /**
-     * Extracts the source sequence number from a log entry.
-     * Format: "FunctionName - N (from M)" - returns M, or 0 if no source
+     * Rendered log text, one record per line.
      */
-    public int extractSourceSequence(String logEntry) {
-        if (logEntry.contains("(from ")) {
-            try {
-                int fromIndex = logEntry.indexOf("(from ") + 6;
-                int endIndex = logEntry.indexOf(")", fromIndex);
-                if (endIndex > fromIndex) {
-                    return Integer.parseInt(logEntry.substring(fromIndex, endIndex));
-                }
-            } catch (Exception e) {
-                return 0;
-            }
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        for (LogEntry entry : entries) {
+            text.append(entry.toText()).append('\n');
         }
-        return 0;
+        return text.toString();
     }
 }
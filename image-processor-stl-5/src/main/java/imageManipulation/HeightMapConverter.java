@@ -0,0 +1,138 @@
+package imageManipulation;
+
+import toSTL.HeightMap;
+import toSTL.Orientation;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Converts images to height maps for STL export.
+ * Heights keep the image's full brightness precision (256 levels for 8-bit images,
+ * 65536 for 16-bit grayscale); memory is 2 bytes per grid point no matter how many
+ * Z layers are requested.
+ */
+public class HeightMapConverter {
+
+    /**
+     * Convert a 2D RGB image to a height map.
+     * The brightness of each pixel determines its height.
+     *
+     * @param workImage     source image (any size - clipped to pixelClipping first)
+     * @param invertHeights If true, white=tallest and black=shortest; if false,
+     *                      black=tallest and white=shortest
+     * @param flipLeftRight If true, keep image orientation; if false, mirror left-right
+     * @param pixelClipping Max width/height of the height grid in pixels
+     * @param zLayers       Number of height steps, or 0 for full precision
+     * @return height map [x][y] with x along the STL X axis
+     */
+    public static HeightMap fromImage(BufferedImage workImage, boolean invertHeights, boolean flipLeftRight,
+                                      int pixelClipping, int zLayers) {
+        return fromImage(workImage, invertHeights, flipLeftRight, pixelClipping, zLayers, Orientation.IDENTITY);
+    }
+
+    /**
+     * Convert as above, rotating the image by the given orientation before the left-right mirror.
+     */
+    public static HeightMap fromImage(BufferedImage workImage, boolean invertHeights, boolean flipLeftRight,
+                                      int pixelClipping, int zLayers, Orientation rotation) {
+        long conversionStart = System.nanoTime();
+
+        // Images already at the clipping size (e.g. from SubsampledImageReader) are read as is
+        BufferedImage rgbImage = isClipped(workImage, pixelClipping) ? workImage
+                : ImageProcessingFunctions.scaleClipping(workImage, pixelClipping, pixelClipping);
+        int imgHeight = rgbImage.getHeight();
+        int imgWidth = rgbImage.getWidth();
+
+        System.out.println("Converting " + imgWidth + " x " + imgHeight + " image to height map (" +
+                (zLayers > 0 ? zLayers + " layers" : "full precision") + ")");
+        System.out.println("Height mapping: " + (invertHeights ? "White = Highest" : "Black = Highest (default)"));
+        System.out.println("Horizontal flip: " + (flipLeftRight ? "Enabled" : "Disabled (mirrored by default)"));
+
+        // STL X runs opposite to image X unless the user asks to keep the image orientation
+        Orientation orientation = rotation.then(flipLeftRight ? Orientation.IDENTITY : Orientation.FLIP_HORIZONTAL);
+        if (rotation != Orientation.IDENTITY) {
+            System.out.println("Rotation: " + rotation);
+        }
+
+        long processStart = System.nanoTime();
+        HeightMap heights = ImageProcessingFunctions.isGray16(rgbImage)
+                ? fromGray16(rgbImage, invertHeights)
+                : fromRGB(rgbImage, invertHeights);
+        long processTime = (System.nanoTime() - processStart) / 1_000_000;
+
+        HeightMap result = heights.quantized(zLayers).oriented(orientation);
+
+        long totalTime = (System.nanoTime() - conversionStart) / 1_000_000;
+        System.out.println("  Pixel processing: " + processTime + " ms");
+        System.out.println("  Height map: " + (2L * imgWidth * imgHeight / 1024) + " KB");
+        System.out.println("  Total conversion time: " + totalTime + " ms");
+
+        return result;
+    }
+
+    /**
+     * True if scaleClipping would return an image of the same size.
+     */
+    private static boolean isClipped(BufferedImage image, int pixelClipping) {
+        double scaleFactor = Math.min((double) pixelClipping / image.getWidth(),
+                (double) pixelClipping / image.getHeight());
+        return (int) (image.getWidth() * scaleFactor) == image.getWidth()
+                && (int) (image.getHeight() * scaleFactor) == image.getHeight();
+    }
+
+    /**
+     * 16-bit grayscale: samples are used directly as levels (0-65535).
+     */
+    private static HeightMap fromGray16(BufferedImage image, boolean invertHeights) {
+        int imgWidth = image.getWidth();
+        int imgHeight = image.getHeight();
+        short[] samples = ImageProcessingFunctions.gray16Samples(image);
+        HeightMap heights = new HeightMap(imgWidth, imgHeight, HeightMap.MAX_16_BIT);
+
+        System.out.println("  16-bit grayscale input (65536 height levels)");
+        for (int y = 0; y < imgHeight; y++) {
+            int rowOffset = y * imgWidth;
+            for (int x = 0; x < imgWidth; x++) {
+                int level = samples[rowOffset + x] & 0xFFFF;
+                if (!invertHeights) {
+                    level = HeightMap.MAX_16_BIT - level;
+                }
+                heights.set(x, y, level);
+            }
+        }
+        return heights;
+    }
+
+    /**
+     * 8-bit color/gray: brightness (average of R, G, B) gives 256 levels.
+     */
+    private static HeightMap fromRGB(BufferedImage rgbImage, boolean invertHeights) {
+        int imgWidth = rgbImage.getWidth();
+        int imgHeight = rgbImage.getHeight();
+        HeightMap heights = new HeightMap(imgWidth, imgHeight, 255);
+
+        int[] row = new int[imgWidth];
+        for (int y = 0; y < imgHeight; y++) {
+            rgbImage.getRGB(0, y, imgWidth, 1, row, 0, imgWidth);
+            for (int x = 0; x < imgWidth; x++) {
+                int rgb = row[x];
+
+                int r = (rgb >> 16) & 0xFF;
+                int g = (rgb >> 8) & 0xFF;
+                int b = rgb & 0xFF;
+
+                // Calculate brightness (0-255)
+                int brightness = (r + g + b) / 3;
+
+                // By default, invert so black = highest (255 - brightness)
+                // If invertHeights is checked, keep original (white = highest)
+                if (!invertHeights) {
+                    brightness = 255 - brightness;
+                }
+
+                heights.set(x, y, brightness);
+            }
+        }
+        return heights;
+    }
+}
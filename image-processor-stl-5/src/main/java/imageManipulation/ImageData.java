@@ -1,43 +1,91 @@
 package imageManipulation;
 
 import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Manages image data, history, and current state.
- * Uses byte[][][] for 4x memory reduction (86 MB vs 343 MB for 6000x5000 images)
+ * History entries are stored as TiledImages that share unchanged tiles with the image they
+ * were derived from; a few recently used entries are kept materialized as BufferedImages.
+ * Undo moves to the current image's source, redo walks back down the undone steps.
  */
 public class ImageData {
-    private BufferedImage currentImage; // [height][width][RGB]
+    private static final int MATERIALIZED_CACHE_SIZE = 2;
+
+    private BufferedImage currentImage;
     private int currentSequenceNumber;
-    private List<BufferedImage> imageHistory;
+    private List<TiledImage> imageHistory;
+    private List<Integer> sourceSequences;
+    private final Map<Integer, BufferedImage> materialized;
+    private final Deque<Integer> redoStack;
+    private final Map<Integer, String> contentKeys;
 
     public ImageData() {
         this.currentSequenceNumber = 0;
         this.imageHistory = new ArrayList<>();
+        this.sourceSequences = new ArrayList<>();
+        this.materialized = new LinkedHashMap<Integer, BufferedImage>(8, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, BufferedImage> eldest) {
+                return size() > MATERIALIZED_CACHE_SIZE;
+            }
+        };
+        this.redoStack = new ArrayDeque<>();
+        this.contentKeys = new HashMap<>();
         imageHistory.add(null); // Index 0 unused
+        sourceSequences.add(0);
     }
 
     public void reset() {
         currentImage = null;
         imageHistory.clear();
         imageHistory.add(null); // Index 0 unused
+        sourceSequences.clear();
+        sourceSequences.add(0);
+        materialized.clear();
+        redoStack.clear();
+        contentKeys.clear();
         currentSequenceNumber = 0;
         System.gc(); // Suggest garbage collection after reset
     }
 
     public void setInitialImage(BufferedImage image) {
+        setInitialImage(image, TiledImage.fromImage(image, null));
+    }
+
+    /**
+     * Start a new history with an image whose tiles were already built (e.g. off the EDT).
+     */
+    public void setInitialImage(BufferedImage image, TiledImage tiles) {
         reset();
-        addProcessedImage(image);
+        addProcessedImage(image, tiles, 0);
         currentSequenceNumber = 1;
         logMemory("After loading image : <" + currentSequenceNumber + "> ");
     }
 
     public void addProcessedImage(BufferedImage image) {
+        addProcessedImage(image, TiledImage.fromImage(image, getTiles(currentSequenceNumber)),
+                currentSequenceNumber);
+    }
+
+    /**
+     * Append a result derived from sourceSeq; tiles should share unchanged tiles with the
+     * source's tiles. Clears the redo stack.
+     */
+    public void addProcessedImage(BufferedImage image, TiledImage tiles, int sourceSeq) {
         currentImage = image;
-        imageHistory.add(image);
+        imageHistory.add(tiles);
+        sourceSequences.add(sourceSeq);
         currentSequenceNumber = getNextSequenceNumber() - 1;
+        materialized.put(currentSequenceNumber, image);
+        redoStack.clear();
         logMemory("After adding image : <" + currentSequenceNumber + "> ");
 
     }
@@ -50,29 +98,155 @@ public class ImageData {
         return currentSequenceNumber;
     }
 
+    /**
+     * Select an image as the source for the next operation (e.g. from the log). Clears redo.
+     */
     public void setCurrentSequenceNumber(int seqNum) {
-
-        if (seqNum > 0 && seqNum < imageHistory.size()) {
-            this.currentSequenceNumber = seqNum;
-            currentImage = imageHistory.get(seqNum);
+        if (seqNum > 0 && seqNum < imageHistory.size() && seqNum != currentSequenceNumber) {
+            select(seqNum);
+            redoStack.clear();
         }
     }
 
+    private void select(int seqNum) {
+        this.currentSequenceNumber = seqNum;
+        currentImage = getImageBySequence(seqNum);
+    }
+
     public int getNextSequenceNumber() {
         return imageHistory.size();
     }
 
     public BufferedImage getImageBySequence(int seqNum) {
+        if (seqNum > 0 && seqNum < imageHistory.size()) {
+            BufferedImage image = materialized.get(seqNum);
+            if (image == null) {
+                image = imageHistory.get(seqNum).toImage();
+                materialized.put(seqNum, image);
+            }
+            return image;
+        }
+        return null;
+    }
+
+    /**
+     * Tiled history entry for a sequence number, or null.
+     */
+    public TiledImage getTiles(int seqNum) {
         if (seqNum > 0 && seqNum < imageHistory.size()) {
             return imageHistory.get(seqNum);
         }
         return null;
     }
 
+    /**
+     * Sequence number the given image was derived from, or 0 for the input image.
+     */
+    public int getSourceSequence(int seqNum) {
+        if (seqNum > 0 && seqNum < sourceSequences.size()) {
+            return sourceSequences.get(seqNum);
+        }
+        return 0;
+    }
+
+    /**
+     * Result cache key of an image (see ResultCache), or null if unknown.
+     */
+    public String getContentKey(int seqNum) {
+        return contentKeys.get(seqNum);
+    }
+
+    public void setContentKey(int seqNum, String key) {
+        if (key != null) {
+            contentKeys.put(seqNum, key);
+        }
+    }
+
     public boolean hasImage() {
         return currentImage != null;
     }
 
+    public boolean canUndo() {
+        return getSourceSequence(currentSequenceNumber) > 0;
+    }
+
+    public boolean canRedo() {
+        return !redoStack.isEmpty();
+    }
+
+    /**
+     * Step back to the current image's source.
+     *
+     * @return the new current sequence number, or -1 if there is nothing to undo
+     */
+    public int undo() {
+        if (!canUndo()) {
+            return -1;
+        }
+        redoStack.push(currentSequenceNumber);
+        select(getSourceSequence(currentSequenceNumber));
+        return currentSequenceNumber;
+    }
+
+    /**
+     * Re-apply the most recently undone step.
+     *
+     * @return the new current sequence number, or -1 if there is nothing to redo
+     */
+    public int redo() {
+        if (!canRedo()) {
+            return -1;
+        }
+        select(redoStack.pop());
+        return currentSequenceNumber;
+    }
+
+    /**
+     * Replace the history with entries restored from a session (typically lazily loaded).
+     *
+     * @param history       tiled images for sequences 1..n (index 0 is ignored)
+     * @param sources       source sequence for each entry (index 0 is ignored)
+     * @param keys          result cache key for each entry, null where unknown (index 0 is ignored)
+     * @param currentSeqNum sequence to select
+     * @param currentImage  already materialized current image, or null
+     */
+    public void restore(List<TiledImage> history, List<Integer> sources, List<String> keys, int currentSeqNum,
+                        BufferedImage currentImage) {
+        reset();
+        for (int seq = 1; seq < history.size(); seq++) {
+            imageHistory.add(history.get(seq));
+            sourceSequences.add(sources.get(seq));
+            setContentKey(seq, keys.get(seq));
+        }
+        int seq = currentSeqNum > 0 && currentSeqNum < imageHistory.size() ? currentSeqNum : 1;
+        if (currentImage != null) {
+            materialized.put(seq, currentImage);
+        }
+        select(seq);
+        logMemory("After restoring session : <" + currentSequenceNumber + "> ");
+    }
+
+    /**
+     * Bytes of pixel data held by the history, counting each shared tile once.
+     * Tiles of a restored session that were never loaded are not counted.
+     */
+    public long getHistoryBytes() {
+        Map<Object, Boolean> seen = new IdentityHashMap<>();
+        long total = 0;
+        for (TiledImage tiles : imageHistory) {
+            if (tiles == null) {
+                continue;
+            }
+            for (int i = 0; i < tiles.getTileCount(); i++) {
+                Object tile = tiles.peekTile(i);
+                if (tile != null && seen.put(tile, Boolean.TRUE) == null) {
+                    total += TiledImage.tileBytes(tile);
+                }
+            }
+        }
+        return total;
+    }
+
     /**
      * Log current memory usage to help diagnose issues.
      */
@@ -81,7 +255,7 @@ public class ImageData {
         long usedMB = (runtime.totalMemory() - runtime.freeMemory()) / 1024 / 1024;
         long maxMB = runtime.maxMemory() / 1024 / 1024;
         long percentUsed = (usedMB * 100) / maxMB;
-        System.out.println(String.format("[MEMORY] %s: %d MB / %d MB (%d%%) - %d images in history\n",
-                context, usedMB, maxMB, percentUsed, imageHistory.size() - 1));
+        System.out.println(String.format("[MEMORY] %s: %d MB / %d MB (%d%%) - %d images in history (%d MB of tiles)\n",
+                context, usedMB, maxMB, percentUsed, imageHistory.size() - 1, getHistoryBytes() / 1024 / 1024));
     }
 }
@@ -6,53 +6,40 @@ import java.awt.image.BufferedImage;
 
 /**
  * Window for displaying an image with automatic scaling and aspect ratio preservation.
- * Stores a SCALED COPY (max 1000x1000) separate from history to minimize memory usage.
+ * Draws from a cached MIP PYRAMID (separate from history) to minimize memory usage and
+ * keep window creation and resizing cheap for large images.
  */
 public class ImageDisplayWindow extends JFrame {
     private static final int MAX_DISPLAY_SIZE = 2000;
     private static final int MIN_DISPLAY_SIZE = 500;
-    private static final int MAX_DISPLAY_RESOLUTION = 1000; // Max resolution for display copy
+    private static final int MAX_DISPLAY_RESOLUTION = 1000; // Max resolution for initial window size
 
-    private final BufferedImage scaledImageArray;  // Scaled copy for display only
+    private final MipPyramid pyramid;  // Display levels only - no reference to history
 
-    public ImageDisplayWindow(BufferedImage imageArray, String functionName, int seqNum, int sourceSeqNum, String fileName) {
+    public ImageDisplayWindow(BufferedImage imageArray, MipPyramid pyramid, String functionName, int seqNum,
+                              int sourceSeqNum, String fileName) {
         super(buildTitle(functionName, seqNum, sourceSeqNum, imageArray, fileName));
 
-        // Create scaled copy immediately - breaks reference to full-resolution history
-        this.scaledImageArray = createScaledCopy(imageArray);
+        this.pyramid = pyramid;
 
-        ImageDisplayPanel panel = new ImageDisplayPanel(scaledImageArray);
+        ImageDisplayPanel panel = new ImageDisplayPanel(pyramid);
         add(panel);
 
         setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 
-        // Calculate initial window size based on scaled image
-        int width = scaledImageArray.getWidth();
-        int height = scaledImageArray.getHeight();
-        Dimension displaySize = calculateDisplaySize(width, height);
+        // Calculate initial window size from the image fitted to the display resolution
+        int width = pyramid.getSourceWidth();
+        int height = pyramid.getSourceHeight();
+        double fit = Math.min(1.0, Math.min((double) MAX_DISPLAY_RESOLUTION / width,
+                (double) MAX_DISPLAY_RESOLUTION / height));
+        Dimension displaySize = calculateDisplaySize(Math.max(1, (int) (width * fit)),
+                Math.max(1, (int) (height * fit)));
         setSize(displaySize);
         setLocationRelativeTo(null);
 
-        System.out.println("Display window created with " + height + "x" + width +
-                " scaled copy (original: " + imageArray.getHeight() + "x" + imageArray.getWidth() + ")" );
-    }
-
-    /**
-     * Create a scaled-down copy of the image for display only.
-     * This breaks the reference to the full-resolution version in history.
-     * Scales the byte[][][] directly without creating intermediate BufferedImage.
-     */
-    private BufferedImage createScaledCopy(BufferedImage original) {
-        int origHeight = original.getHeight();
-        int origWidth = original.getWidth();
-
-        // If already small enough, make a copy to break reference
-        if (origWidth <= MAX_DISPLAY_RESOLUTION && origHeight <= MAX_DISPLAY_RESOLUTION) {
-            return ImageProcessingFunctions.copyBufferedImage(original);
-        }
-
-        // Direct scaling on BufferedImage - NO BufferedImage intermediate
-        return ImageProcessingFunctions.scaleClipping(original, MAX_DISPLAY_RESOLUTION, MAX_DISPLAY_RESOLUTION);
+        BufferedImage top = pyramid.getLevel(0);
+        System.out.println("Display window created with " + top.getHeight() + "x" + top.getWidth() +
+                " top level, " + pyramid.getLevelCount() + " levels (original: " + height + "x" + width + ")");
     }
 
     private static String buildTitle(String functionName, int seqNum, int sourceSeqNum, BufferedImage imageArray, String fileName) {
@@ -94,14 +81,13 @@ public class ImageDisplayWindow extends JFrame {
     }
 
     /**
-     * Panel that displays the scaled image copy.
-     * Much simpler now - just converts byte[][][] to BufferedImage and displays.
+     * Panel that displays the pyramid level closest to the current panel size.
      */
     private static class ImageDisplayPanel extends JPanel {
-        private final BufferedImage scaledImageArray;
+        private final MipPyramid pyramid;
 
-        public ImageDisplayPanel(BufferedImage scaledImageArray) {
-            this.scaledImageArray = scaledImageArray;
+        public ImageDisplayPanel(MipPyramid pyramid) {
+            this.pyramid = pyramid;
             setBackground(Color.LIGHT_GRAY);
         }
 
@@ -109,12 +95,12 @@ public class ImageDisplayWindow extends JFrame {
         protected void paintComponent(Graphics g) {
             super.paintComponent(g);
 
-            if (scaledImageArray != null) {
+            if (pyramid != null) {
 
                 int panelWidth = getWidth();
                 int panelHeight = getHeight();
-                int imgWidth = scaledImageArray.getWidth();
-                int imgHeight = scaledImageArray.getHeight();
+                int imgWidth = pyramid.getSourceWidth();
+                int imgHeight = pyramid.getSourceHeight();
 
                 // Calculate scaling to maintain aspect ratio
                 double scaleX = (double) panelWidth / imgWidth;
@@ -128,10 +114,13 @@ public class ImageDisplayWindow extends JFrame {
                 int x = (panelWidth - scaledWidth) / 2;
                 int y = (panelHeight - scaledHeight) / 2;
 
+                // Nearest level is at most 2x larger, so bilinear is enough
+                BufferedImage level = pyramid.levelFor(scaledWidth, scaledHeight);
+
                 Graphics2D g2d = (Graphics2D) g;
                 g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
                         RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-                g2d.drawImage(scaledImageArray, x, y, scaledWidth, scaledHeight, null);
+                g2d.drawImage(level, x, y, scaledWidth, scaledHeight, null);
             }
         }
     }
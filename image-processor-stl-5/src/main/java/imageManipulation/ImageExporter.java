@@ -0,0 +1,160 @@
+package imageManipulation;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Saves images as PNG or JPEG, synchronously or on a dedicated background thread
+ * (separate from the processing queue, so saving never blocks queued operations).
+ */
+public class ImageExporter {
+
+    /**
+     * Encoding settings for one save.
+     */
+    public static class Options {
+        private final String format;
+        private final int pngCompressionLevel;
+        private final float jpegQuality;
+        private final boolean parallelPng;
+
+        /**
+         * @param format              "PNG" or "JPG"
+         * @param pngCompressionLevel deflate level 0-9 (PNG only)
+         * @param jpegQuality         0.0-1.0 (JPG only)
+         * @param parallelPng         use ParallelPngEncoder instead of the ImageIO PNG writer
+         */
+        public Options(String format, int pngCompressionLevel, float jpegQuality, boolean parallelPng) {
+            this.format = format;
+            this.pngCompressionLevel = pngCompressionLevel;
+            this.jpegQuality = jpegQuality;
+            this.parallelPng = parallelPng;
+        }
+
+        public String getFormat() {
+            return format;
+        }
+
+        public int getPngCompressionLevel() {
+            return pngCompressionLevel;
+        }
+
+        public float getJpegQuality() {
+            return jpegQuality;
+        }
+
+        public boolean isParallelPng() {
+            return parallelPng;
+        }
+
+        public boolean isPng() {
+            return format.equalsIgnoreCase("PNG");
+        }
+    }
+
+    /**
+     * Receives the outcome of an asynchronous save on the EDT; error is null on success.
+     */
+    public interface SaveCallback {
+        void saveFinished(File file, Exception error);
+    }
+
+    private final ExecutorService executor;
+
+    public ImageExporter() {
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "image-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Save in the background; the callback runs on the EDT when done.
+     */
+    public void saveAsync(BufferedImage image, File file, Options options, SaveCallback callback) {
+        executor.execute(() -> {
+            Exception error = null;
+            try {
+                save(image, file, options);
+            } catch (Exception ex) {
+                error = ex;
+            }
+            Exception finalError = error;
+            SwingUtilities.invokeLater(() -> callback.saveFinished(file, finalError));
+        });
+    }
+
+    /**
+     * Save on the calling thread.
+     */
+    public static void save(BufferedImage image, File file, Options options) throws IOException {
+        long startTime = System.nanoTime();
+
+        if (options.isPng()) {
+            if (options.isParallelPng()) {
+                ParallelPngEncoder.write(image, file, options.getPngCompressionLevel());
+            } else {
+                // ImageIO maps quality 1.0 to no compression and 0.0 to best compression
+                float quality = 1.0f - options.getPngCompressionLevel() / 9.0f;
+                writeWithParam(image, file, "png", quality);
+            }
+        } else {
+            writeWithParam(toRGB(image), file, "jpg", options.getJpegQuality());
+        }
+
+        long time = (System.nanoTime() - startTime) / 1_000_000;
+        System.out.println("[TIMING] Save " + options.getFormat() + " " + file.getName() + ": " + time + " ms");
+    }
+
+    private static void writeWithParam(BufferedImage image, File file, String formatName, float quality)
+            throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(formatName);
+        if (!writers.hasNext()) {
+            throw new IOException("No image writer for " + formatName);
+        }
+        ImageWriter writer = writers.next();
+
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot overwrite " + file.getName());
+        }
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(file)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(Math.max(0f, Math.min(1f, quality)));
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * JPEG has no alpha channel; flatten anything else to TYPE_INT_RGB.
+     */
+    private static BufferedImage toRGB(BufferedImage image) {
+        if (!image.getColorModel().hasAlpha()) {
+            return image;
+        }
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgb.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return rgb;
+    }
+}
@@ -0,0 +1,15 @@
+package imageManipulation;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A single image processing operation run by the processing queue.
+ */
+@FunctionalInterface
+public interface ImageOperation {
+
+    /**
+     * Produce a new image from the source. Runs off the EDT; must not touch Swing components.
+     */
+    BufferedImage apply(BufferedImage source, TaskProgress progress) throws Exception;
+}
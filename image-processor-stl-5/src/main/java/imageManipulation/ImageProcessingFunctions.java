@@ -1,38 +1,64 @@
 package imageManipulation;
 
+import toSTL.Orientation;
+
 import java.awt.*;
 import java.awt.image.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 /**
  * Contains all image processing algorithms.
  * All functions use byte[][][] for memory efficiency with proper masking (& 0xFF).
+ * 16-bit grayscale height maps (TYPE_USHORT_GRAY) are processed on their short[] samples
+ * (masked with & 0xFFFF) and stay 16-bit, so all 65536 levels survive.
  */
 public class ImageProcessingFunctions {
 
+    private static final int BAND_ROWS = 64; // Rows per progress/cancellation step
+    private static final int MAX_16 = 65535;
+
     /**
      * Posterize an image to 4 color levels: 0, 85, 170, 255
      */
     public static BufferedImage posterize(BufferedImage source) {
+        return posterize(source, TaskProgress.NONE);
+    }
+
+    /**
+     * Posterize in row bands, reporting progress and checking for cancellation per band.
+     */
+    public static BufferedImage posterize(BufferedImage source, TaskProgress progress) {
+        if (isGray16(source)) {
+            return posterizeGray16(source, progress);
+        }
 
         int height = source.getHeight();
         int width = source.getWidth();
 
-        int[] srcPixels = new int[width * height];
-        source.getRGB(0, 0, width, height, srcPixels, 0, width);
         BufferedImage dst = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] srcPixels = new int[width * Math.min(height, BAND_ROWS)];
 
-        for (int i = 0; i < srcPixels.length; i++) {
-            int p = srcPixels[i];
+        for (int y0 = 0; y0 < height; y0 += BAND_ROWS) {
+            progress.checkCancelled();
+            int rows = Math.min(BAND_ROWS, height - y0);
+            source.getRGB(0, y0, width, rows, srcPixels, 0, width);
 
-            // Example: posterize 'autotune' color
-            int a = (p >>> 24) & 0xFF;
-            int r = limit4parts(((p >>> 16) & 0xFF));
-            int g = limit4parts(((p >>> 8) & 0xFF));
-            int b = limit4parts((p & 0xFF));
+            for (int i = 0; i < width * rows; i++) {
+                int p = srcPixels[i];
 
-            srcPixels[i] = (a << 24) | (r << 16) | (g << 8) | b;
+                // Example: posterize 'autotune' color
+                int a = (p >>> 24) & 0xFF;
+                int r = limit4parts(((p >>> 16) & 0xFF));
+                int g = limit4parts(((p >>> 8) & 0xFF));
+                int b = limit4parts((p & 0xFF));
+
+                srcPixels[i] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
+            dst.setRGB(0, y0, width, rows, srcPixels, 0, width);
+            progress.setProgress((y0 + rows) * 100 / height);
         }
-        dst.setRGB(0, 0, width, height, srcPixels, 0, width);
         return dst;
     }
 
@@ -55,28 +81,44 @@ public class ImageProcessingFunctions {
      * Convert image to monochrome by averaging RGB components.
      */
     public static BufferedImage monochrome(BufferedImage source) {
+        return monochrome(source, TaskProgress.NONE);
+    }
+
+    /**
+     * Monochrome in row bands, reporting progress and checking for cancellation per band.
+     */
+    public static BufferedImage monochrome(BufferedImage source, TaskProgress progress) {
+        if (isGray16(source)) {
+            // Already monochrome - keep all 16 bits
+            return copyBufferedImage(source);
+        }
+
         int height = source.getHeight();
         int width = source.getWidth();
 
         BufferedImage dst = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
 
-        int[] srcPixels = new int[width * height];
-        int[] dstPixels = new int[width * height];
+        int[] pixels = new int[width * Math.min(height, BAND_ROWS)];
 
-        source.getRGB(0, 0, width, height, srcPixels, 0, width);
+        for (int y0 = 0; y0 < height; y0 += BAND_ROWS) {
+            progress.checkCancelled();
+            int rows = Math.min(BAND_ROWS, height - y0);
+            source.getRGB(0, y0, width, rows, pixels, 0, width);
 
-        for (int i = 0; i < srcPixels.length; i++) {
-            int p = srcPixels[i];
+            for (int i = 0; i < width * rows; i++) {
+                int p = pixels[i];
 
-            // Example: monochrome color
-            int a = (p >>> 24) & 0xFF;
-            int r = ((p >>> 16) & 0xFF);
-            int g = ((p >>> 8) & 0xFF);
-            int b = (p & 0xFF);
-            int average = (r + g + b) / 3;
-            dstPixels[i] = (a << 24) | (average << 16) | (average << 8) | average;
+                // Example: monochrome color
+                int a = (p >>> 24) & 0xFF;
+                int r = ((p >>> 16) & 0xFF);
+                int g = ((p >>> 8) & 0xFF);
+                int b = (p & 0xFF);
+                int average = (r + g + b) / 3;
+                pixels[i] = (a << 24) | (average << 16) | (average << 8) | average;
+            }
+            dst.setRGB(0, y0, width, rows, pixels, 0, width);
+            progress.setProgress((y0 + rows) * 100 / height);
         }
-        dst.setRGB(0, 0, width, height, dstPixels, 0, width);
         return dst;
     }
 
@@ -99,6 +141,9 @@ public class ImageProcessingFunctions {
 
     // scale image to given dimensions
     public static BufferedImage copyAndScale(BufferedImage source, int newWidth, int newHeight) {
+        if (isGray16(source)) {
+            return scaleGray16(source, newWidth, newHeight);
+        }
         BufferedImage scaled = new BufferedImage(newWidth, newHeight, source.getType());
         Graphics2D g = scaled.createGraphics();
 
@@ -118,4 +163,1015 @@ public class ImageProcessingFunctions {
         WritableRaster raster = source.copyData(null);
         return new BufferedImage(cm, raster, isAlphaPremultiplied, null);
     }
+
+    // ===== 16-bit grayscale height maps =====
+
+    /**
+     * True for single-band images with 16-bit unsigned samples (16-bit PNG/TIFF grayscale).
+     */
+    public static boolean isGray16(BufferedImage image) {
+        Raster raster = image.getRaster();
+        return raster.getNumBands() == 1 && raster.getDataBuffer() instanceof DataBufferUShort;
+    }
+
+    /**
+     * Samples of a 16-bit grayscale image as a row-major short[] (width * height).
+     * Returns the image's own array when the layout allows it; otherwise a packed copy.
+     */
+    public static short[] gray16Samples(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        WritableRaster raster = image.getRaster();
+
+        if (raster.getSampleModel() instanceof ComponentSampleModel) {
+            ComponentSampleModel model = (ComponentSampleModel) raster.getSampleModel();
+            DataBufferUShort buffer = (DataBufferUShort) raster.getDataBuffer();
+            if (model.getPixelStride() == 1 && model.getScanlineStride() == width
+                    && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0
+                    && buffer.getNumBanks() == 1 && buffer.getOffset() == 0
+                    && buffer.getData().length == width * height) {
+                return buffer.getData();
+            }
+        }
+
+        short[] samples = new short[width * height];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            raster.getSamples(0, y, width, 1, 0, row);
+            for (int x = 0; x < width; x++) {
+                samples[y * width + x] = (short) row[x];
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Copy row-major 16-bit samples into a new TYPE_USHORT_GRAY image.
+     */
+    public static BufferedImage gray16Image(int width, int height, short[] samples) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_USHORT_GRAY);
+        short[] target = ((DataBufferUShort) image.getRaster().getDataBuffer()).getData();
+        System.arraycopy(samples, 0, target, 0, samples.length);
+        return image;
+    }
+
+    /**
+     * Posterize 16-bit heights to 4 levels (0, 1/3, 2/3, full) with the same rounding as limit4parts.
+     */
+    private static BufferedImage posterizeGray16(BufferedImage source, TaskProgress progress) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        short[] src = gray16Samples(source);
+        BufferedImage dst = new BufferedImage(width, height, BufferedImage.TYPE_USHORT_GRAY);
+        short[] out = ((DataBufferUShort) dst.getRaster().getDataBuffer()).getData();
+
+        for (int y0 = 0; y0 < height; y0 += BAND_ROWS) {
+            progress.checkCancelled();
+            int end = Math.min(height, y0 + BAND_ROWS) * width;
+            for (int i = y0 * width; i < end; i++) {
+                // Thresholds 43/128/213 of 255 scaled to 16 bits
+                int v = src[i] & 0xFFFF;
+                int level = v < 43 * 257 ? 0 : v < 128 * 257 ? 1 : v < 213 * 257 ? 2 : 3;
+                out[i] = (short) (level * MAX_16 / 3);
+            }
+            progress.setProgress(Math.min(height, y0 + BAND_ROWS) * 100 / height);
+        }
+        return dst;
+    }
+
+    /**
+     * Resample 16-bit heights: area averaging (box filter) when shrinking an axis,
+     * bilinear interpolation when enlarging it. Separable, on float rows.
+     */
+    static BufferedImage scaleGray16(BufferedImage source, int newWidth, int newHeight) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        short[] src = gray16Samples(source);
+
+        ResampleWeights xWeights = new ResampleWeights(width, newWidth);
+        ResampleWeights yWeights = new ResampleWeights(height, newHeight);
+
+        // Horizontal pass: height x newWidth floats
+        float[] tmp = new float[height * newWidth];
+        for (int y = 0; y < height; y++) {
+            int rowOffset = y * width;
+            int outOffset = y * newWidth;
+            for (int x = 0; x < newWidth; x++) {
+                float sum = 0;
+                int start = xWeights.start[x];
+                float[] w = xWeights.weights[x];
+                for (int k = 0; k < w.length; k++) {
+                    sum += w[k] * (src[rowOffset + start + k] & 0xFFFF);
+                }
+                tmp[outOffset + x] = sum;
+            }
+        }
+
+        // Vertical pass into the 16-bit destination
+        BufferedImage dst = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_USHORT_GRAY);
+        short[] out = ((DataBufferUShort) dst.getRaster().getDataBuffer()).getData();
+        float[] column = new float[newWidth];
+        for (int y = 0; y < newHeight; y++) {
+            java.util.Arrays.fill(column, 0f);
+            int start = yWeights.start[y];
+            float[] w = yWeights.weights[y];
+            for (int k = 0; k < w.length; k++) {
+                int rowOffset = (start + k) * newWidth;
+                float weight = w[k];
+                for (int x = 0; x < newWidth; x++) {
+                    column[x] += weight * tmp[rowOffset + x];
+                }
+            }
+            int outOffset = y * newWidth;
+            for (int x = 0; x < newWidth; x++) {
+                out[outOffset + x] = (short) Math.max(0, Math.min(MAX_16, Math.round(column[x])));
+            }
+        }
+        return dst;
+    }
+
+    /**
+     * Per-output-sample source ranges and weights for one axis of a separable resample.
+     */
+    private static class ResampleWeights {
+        final int[] start;
+        final float[][] weights;
+
+        ResampleWeights(int srcLength, int dstLength) {
+            start = new int[dstLength];
+            weights = new float[dstLength][];
+            double ratio = (double) srcLength / dstLength;
+
+            for (int i = 0; i < dstLength; i++) {
+                if (ratio > 1.0) {
+                    // Area average: weight each source pixel by its overlap with [i, i+1) * ratio
+                    double from = i * ratio;
+                    double to = Math.min(srcLength, (i + 1) * ratio);
+                    int first = (int) Math.floor(from);
+                    int last = Math.min(srcLength - 1, (int) Math.ceil(to) - 1);
+                    float[] w = new float[last - first + 1];
+                    for (int s = first; s <= last; s++) {
+                        double overlap = Math.min(to, s + 1) - Math.max(from, s);
+                        w[s - first] = (float) (overlap / (to - from));
+                    }
+                    start[i] = first;
+                    weights[i] = w;
+                } else {
+                    // Bilinear: sample at pixel centers
+                    double center = (i + 0.5) * ratio - 0.5;
+                    int left = (int) Math.floor(center);
+                    double frac = center - left;
+                    if (left < 0) {
+                        left = 0;
+                        frac = 0;
+                    }
+                    if (left >= srcLength - 1) {
+                        start[i] = srcLength - 1;
+                        weights[i] = new float[] {1f};
+                    } else {
+                        start[i] = left;
+                        weights[i] = new float[] {(float) (1 - frac), (float) frac};
+                    }
+                }
+            }
+        }
+    }
+
+    // ===== Smoothing and denoising =====
+    // All filters run in parallel row (or column) bands, replicate edge pixels, and return
+    // TYPE_INT_RGB for 8-bit images or TYPE_USHORT_GRAY for 16-bit height maps.
+
+    private static final double EXACT_KERNEL_MAX_SIGMA = 2.0;
+    private static final int FILTER_BAND_ROWS = 32;
+    private static final int FILTER_BAND_COLUMNS = 256;
+
+    /**
+     * Gaussian blur. Small sigmas use an exact separable kernel; larger ones use three
+     * iterated box blurs, which cost O(1) per pixel regardless of radius.
+     */
+    public static BufferedImage gaussianBlur(BufferedImage source, double sigma, TaskProgress progress) {
+        if (sigma <= EXACT_KERNEL_MAX_SIGMA) {
+            return convolveSeparable(source, gaussianKernel(sigma), progress);
+        }
+        int[] radii = boxRadiiForGaussian(sigma, 3);
+        return boxBlur(source, radii, progress);
+    }
+
+    /**
+     * Box blur with the given radius, repeated iterations times (3 iterations approximate a Gaussian).
+     */
+    public static BufferedImage boxBlur(BufferedImage source, int radius, int iterations, TaskProgress progress) {
+        int[] radii = new int[iterations];
+        java.util.Arrays.fill(radii, radius);
+        return boxBlur(source, radii, progress);
+    }
+
+    /**
+     * Normalized 1D Gaussian kernel covering +-3 sigma.
+     */
+    public static float[] gaussianKernel(double sigma) {
+        int radius = Math.max(1, (int) Math.ceil(3 * sigma));
+        float[] kernel = new float[2 * radius + 1];
+        double sum = 0;
+        for (int i = -radius; i <= radius; i++) {
+            double v = Math.exp(-(i * i) / (2 * sigma * sigma));
+            kernel[i + radius] = (float) v;
+            sum += v;
+        }
+        for (int i = 0; i < kernel.length; i++) {
+            kernel[i] /= (float) sum;
+        }
+        return kernel;
+    }
+
+    /**
+     * Box sizes whose three-pass convolution best matches a Gaussian of the given sigma
+     * (widths wl and wl+2, mixed so the total variance matches).
+     */
+    static int[] boxRadiiForGaussian(double sigma, int passes) {
+        double wIdeal = Math.sqrt(12 * sigma * sigma / passes + 1);
+        int wl = (int) Math.floor(wIdeal);
+        if (wl % 2 == 0) {
+            wl--;
+        }
+        int wu = wl + 2;
+        double mIdeal = (12 * sigma * sigma - passes * wl * wl - 4.0 * passes * wl - 3.0 * passes) / (-4.0 * wl - 4);
+        long m = Math.round(mIdeal);
+
+        int[] radii = new int[passes];
+        for (int i = 0; i < passes; i++) {
+            radii[i] = ((i < m ? wl : wu) - 1) / 2;
+        }
+        return radii;
+    }
+
+    /**
+     * Symmetric separable convolution on float rows. Each row band convolves its rows plus a
+     * kernel-radius margin horizontally into a band-local float buffer, then vertically into
+     * the output - no full-size float intermediate.
+     */
+    public static BufferedImage convolveSeparable(BufferedImage source, float[] kernel, TaskProgress progress) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int radius = kernel.length / 2;
+        boolean gray16 = isGray16(source);
+        int channels = gray16 ? 1 : 3;
+
+        int[] srcPixels = gray16 ? null : readPixels(source);
+        short[] srcSamples = gray16 ? gray16Samples(source) : null;
+
+        BufferedImage dst = newFilterTarget(source);
+        int[] dstPixels = gray16 ? null : ((DataBufferInt) dst.getRaster().getDataBuffer()).getData();
+        short[] dstSamples = gray16 ? ((DataBufferUShort) dst.getRaster().getDataBuffer()).getData() : null;
+
+        runBands(height, FILTER_BAND_ROWS, progress, (y0, y1) -> {
+            int first = y0 - radius;
+            int rows = (y1 - y0) + 2 * radius;
+            float[] hbuf = new float[rows * width * channels];
+            float[] line = new float[(width + 2 * radius) * channels];
+
+            // Horizontal pass over the band plus margins (edge rows and columns replicated)
+            for (int r = 0; r < rows; r++) {
+                int sy = clamp(first + r, height);
+                unpackRow(srcPixels, srcSamples, sy, width, channels, radius, line);
+                int base = r * width * channels;
+                for (int i = 0; i < width * channels; i++) {
+                    float sum = 0;
+                    for (int k = 0; k < kernel.length; k++) {
+                        sum += kernel[k] * line[i + k * channels];
+                    }
+                    hbuf[base + i] = sum;
+                }
+            }
+
+            // Vertical pass into the output rows
+            float[] acc = new float[width * channels];
+            for (int y = y0; y < y1; y++) {
+                java.util.Arrays.fill(acc, 0f);
+                for (int k = 0; k < kernel.length; k++) {
+                    float weight = kernel[k];
+                    int base = (y - y0 + k) * width * channels;
+                    for (int i = 0; i < acc.length; i++) {
+                        acc[i] += weight * hbuf[base + i];
+                    }
+                }
+                packRow(acc, y, width, channels, dstPixels, dstSamples);
+            }
+        });
+        return dst;
+    }
+
+    /**
+     * Iterated box blur using running sums: each pass adds the entering pixel and subtracts
+     * the leaving one, so cost is independent of radius. Horizontal passes run in row bands,
+     * vertical passes in column bands (walking rows, so memory access stays sequential).
+     * 8-bit RGB is summed three channels at a time in 21-bit lanes of one long.
+     */
+    private static BufferedImage boxBlur(BufferedImage source, int[] radii, TaskProgress progress) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        boolean gray16 = isGray16(source);
+
+        int[] a = gray16 ? toIntSamples(gray16Samples(source)) : readPixels(source);
+        int[] b = new int[a.length];
+        int totalPasses = radii.length * 2;
+        int pass = 0;
+
+        for (int radius : radii) {
+            int r = radius;
+            runBands(height, FILTER_BAND_ROWS, TaskProgress.NONE, (y0, y1) -> {
+                for (int y = y0; y < y1; y++) {
+                    boxRow(a, b, y * width, 1, width, r, gray16);
+                }
+            });
+            progress.checkCancelled();
+            progress.setProgress(++pass * 100 / totalPasses);
+
+            runBands(width, FILTER_BAND_COLUMNS, TaskProgress.NONE, (x0, x1) ->
+                    boxColumns(b, a, x0, x1, width, height, r, gray16));
+            progress.checkCancelled();
+            progress.setProgress(++pass * 100 / totalPasses);
+        }
+
+        BufferedImage dst = newFilterTarget(source);
+        if (gray16) {
+            short[] out = ((DataBufferUShort) dst.getRaster().getDataBuffer()).getData();
+            for (int i = 0; i < a.length; i++) {
+                out[i] = (short) a[i];
+            }
+        } else {
+            int[] out = ((DataBufferInt) dst.getRaster().getDataBuffer()).getData();
+            System.arraycopy(a, 0, out, 0, a.length);
+        }
+        return dst;
+    }
+
+    private static final int LANE_BITS = 21;
+    private static final long LANE_MASK = (1L << LANE_BITS) - 1;
+
+    private static long toLanes(int rgb) {
+        return ((long) ((rgb >>> 16) & 0xFF) << (2 * LANE_BITS))
+                | ((long) ((rgb >>> 8) & 0xFF) << LANE_BITS)
+                | (rgb & 0xFF);
+    }
+
+    private static int fromLanes(long sum, int count) {
+        int half = count / 2;
+        int r = (int) ((((sum >>> (2 * LANE_BITS)) & LANE_MASK) + half) / count);
+        int g = (int) ((((sum >>> LANE_BITS) & LANE_MASK) + half) / count);
+        int b = (int) (((sum & LANE_MASK) + half) / count);
+        return (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * One horizontal running-sum pass over a row starting at offset (stride 1).
+     */
+    private static void boxRow(int[] src, int[] dst, int offset, int stride, int length, int radius,
+                               boolean gray16) {
+        int count = 2 * radius + 1;
+        long sum = 0;
+        for (int k = -radius; k <= radius; k++) {
+            int v = src[offset + clamp(k, length) * stride];
+            sum += gray16 ? v : toLanes(v);
+        }
+        for (int i = 0; i < length; i++) {
+            dst[offset + i * stride] = gray16 ? (int) ((sum + count / 2) / count) : fromLanes(sum, count);
+            int enter = src[offset + clamp(i + radius + 1, length) * stride];
+            int leave = src[offset + clamp(i - radius, length) * stride];
+            sum += gray16 ? enter - leave : toLanes(enter) - toLanes(leave);
+        }
+    }
+
+    /**
+     * Vertical running-sum pass for columns x0..x1-1, walking down the rows.
+     */
+    private static void boxColumns(int[] src, int[] dst, int x0, int x1, int width, int height, int radius,
+                                   boolean gray16) {
+        int count = 2 * radius + 1;
+        int span = x1 - x0;
+        long[] sums = new long[span];
+        for (int k = -radius; k <= radius; k++) {
+            int row = clamp(k, height) * width;
+            for (int i = 0; i < span; i++) {
+                int v = src[row + x0 + i];
+                sums[i] += gray16 ? v : toLanes(v);
+            }
+        }
+        for (int y = 0; y < height; y++) {
+            int out = y * width + x0;
+            int enterRow = clamp(y + radius + 1, height) * width + x0;
+            int leaveRow = clamp(y - radius, height) * width + x0;
+            for (int i = 0; i < span; i++) {
+                long sum = sums[i];
+                dst[out + i] = gray16 ? (int) ((sum + count / 2) / count) : fromLanes(sum, count);
+                int enter = src[enterRow + i];
+                int leave = src[leaveRow + i];
+                sums[i] = sum + (gray16 ? enter - leave : toLanes(enter) - toLanes(leave));
+            }
+        }
+    }
+
+    /**
+     * Median filter over a (2r+1)x(2r+1) window.
+     * 8-bit channels use the constant-time algorithm of Perreault and Hebert: per-column
+     * histograms slide down the rows, the window histogram slides along each row by adding
+     * one column histogram and removing another, and a 16-bin coarse level with lazily
+     * updated 256-bin fine histograms keeps each step at a few dozen operations for any radius.
+     * 16-bit heights use a sliding window over a two-level (256 x 256) histogram.
+     */
+    public static BufferedImage medianFilter(BufferedImage source, int radius, TaskProgress progress) {
+        if (isGray16(source)) {
+            return medianGray16(source, radius, progress);
+        }
+
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int[] src = readPixels(source);
+        BufferedImage dst = newFilterTarget(source);
+        int[] out = ((DataBufferInt) dst.getRaster().getDataBuffer()).getData();
+
+        // The column histograms (width x 272 ints per channel) are allocated once per worker
+        Supplier<ChannelMedian[]> workerState = () -> {
+            ChannelMedian[] medians = new ChannelMedian[3];
+            for (int c = 0; c < 3; c++) {
+                medians[c] = new ChannelMedian(src, width, height, radius, 16 - 8 * c);
+            }
+            return medians;
+        };
+        runBands(height, FILTER_BAND_ROWS, progress, workerState, (medians, y0, y1) -> {
+            for (int c = 0; c < 3; c++) {
+                medians[c].startBand(y0);
+            }
+            int[] row = new int[width];
+            for (int y = y0; y < y1; y++) {
+                java.util.Arrays.fill(row, 0);
+                for (int c = 0; c < 3; c++) {
+                    if (y > y0) {
+                        medians[c].advanceRow(y);
+                    }
+                    medians[c].filterRow(row);
+                }
+                System.arraycopy(row, 0, out, y * width, width);
+            }
+        });
+        return dst;
+    }
+
+    /**
+     * Constant-time median state for one 8-bit channel (at bit offset shift) of a row band.
+     */
+    private static class ChannelMedian {
+        private final int[] src;
+        private final int width;
+        private final int height;
+        private final int radius;
+        private final int shift;
+        private final int rank; // Index of the median in the sorted window
+        private final int[] columnCoarse; // [x * 16 + bin]
+        private final int[] columnFine;   // [x * 256 + value]
+        private final int[] kernelCoarse = new int[16];
+        private final int[] kernelFine = new int[256];
+        private final int[] lastUpdated = new int[16]; // Next column each fine bin still has to add
+
+        ChannelMedian(int[] src, int width, int height, int radius, int shift) {
+            this.src = src;
+            this.width = width;
+            this.height = height;
+            this.radius = radius;
+            this.shift = shift;
+            int size = 2 * radius + 1;
+            this.rank = size * size / 2;
+            this.columnCoarse = new int[width * 16];
+            this.columnFine = new int[width * 256];
+        }
+
+        private int value(int x, int y) {
+            return (src[clamp(y, height) * width + x] >>> shift) & 0xFF;
+        }
+
+        /**
+         * Reset the column histograms to the window around row y0.
+         */
+        void startBand(int y0) {
+            java.util.Arrays.fill(columnCoarse, 0);
+            java.util.Arrays.fill(columnFine, 0);
+            for (int dy = -radius; dy <= radius; dy++) {
+                for (int x = 0; x < width; x++) {
+                    add(x, value(x, y0 + dy), 1);
+                }
+            }
+        }
+
+        void advanceRow(int y) {
+            for (int x = 0; x < width; x++) {
+                add(x, value(x, y - radius - 1), -1);
+                add(x, value(x, y + radius), 1);
+            }
+        }
+
+        private void add(int x, int v, int delta) {
+            columnCoarse[x * 16 + (v >>> 4)] += delta;
+            columnFine[x * 256 + v] += delta;
+        }
+
+        void filterRow(int[] row) {
+            java.util.Arrays.fill(kernelCoarse, 0);
+            java.util.Arrays.fill(lastUpdated, Integer.MIN_VALUE);
+            for (int j = -radius; j <= radius; j++) {
+                int base = clamp(j, width) * 16;
+                for (int b = 0; b < 16; b++) {
+                    kernelCoarse[b] += columnCoarse[base + b];
+                }
+            }
+
+            for (int x = 0; x < width; x++) {
+                if (x > 0) {
+                    int enter = clamp(x + radius, width) * 16;
+                    int leave = clamp(x - radius - 1, width) * 16;
+                    for (int b = 0; b < 16; b++) {
+                        kernelCoarse[b] += columnCoarse[enter + b] - columnCoarse[leave + b];
+                    }
+                }
+
+                // Coarse search, then bring only that bin's fine histogram up to date
+                int count = 0;
+                int bin = 0;
+                while (count + kernelCoarse[bin] <= rank) {
+                    count += kernelCoarse[bin];
+                    bin++;
+                }
+                updateFine(bin, x);
+
+                int value = bin * 16;
+                while (count + kernelFine[value] <= rank) {
+                    count += kernelFine[value];
+                    value++;
+                }
+                row[x] |= value << shift;
+            }
+        }
+
+        private void updateFine(int bin, int x) {
+            int from = bin * 16;
+            int next = lastUpdated[bin];
+            if (next <= x - radius) {
+                // Stale: rebuild this bin over the whole window
+                java.util.Arrays.fill(kernelFine, from, from + 16, 0);
+                for (int j = x - radius; j <= x + radius; j++) {
+                    int base = clamp(j, width) * 256 + from;
+                    for (int v = 0; v < 16; v++) {
+                        kernelFine[from + v] += columnFine[base + v];
+                    }
+                }
+            } else {
+                for (int j = next; j <= x + radius; j++) {
+                    int enter = clamp(j, width) * 256 + from;
+                    int leave = clamp(j - 2 * radius - 1, width) * 256 + from;
+                    for (int v = 0; v < 16; v++) {
+                        kernelFine[from + v] += columnFine[enter + v] - columnFine[leave + v];
+                    }
+                }
+            }
+            lastUpdated[bin] = x + radius + 1;
+        }
+    }
+
+    /**
+     * Sliding-window median for 16-bit heights with a 256-bin coarse (high byte) and
+     * 65536-bin fine histogram; each step moves one window column in and one out.
+     */
+    private static BufferedImage medianGray16(BufferedImage source, int radius, TaskProgress progress) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        short[] src = gray16Samples(source);
+        BufferedImage dst = newFilterTarget(source);
+        short[] out = ((DataBufferUShort) dst.getRaster().getDataBuffer()).getData();
+        int size = 2 * radius + 1;
+        int rank = size * size / 2;
+
+        // Histograms per worker; every row leaves them empty again
+        runBands(height, FILTER_BAND_ROWS, progress, () -> new int[][]{new int[256], new int[65536]},
+                (histograms, y0, y1) -> {
+            int[] coarse = histograms[0];
+            int[] fine = histograms[1];
+            for (int y = y0; y < y1; y++) {
+                for (int dy = -radius; dy <= radius; dy++) {
+                    int row = clamp(y + dy, height) * width;
+                    for (int dx = -radius; dx <= radius; dx++) {
+                        int v = src[row + clamp(dx, width)] & 0xFFFF;
+                        coarse[v >>> 8]++;
+                        fine[v]++;
+                    }
+                }
+                for (int x = 0; x < width; x++) {
+                    if (x > 0) {
+                        int enter = clamp(x + radius, width);
+                        int leave = clamp(x - radius - 1, width);
+                        for (int dy = -radius; dy <= radius; dy++) {
+                            int row = clamp(y + dy, height) * width;
+                            int vIn = src[row + enter] & 0xFFFF;
+                            int vOut = src[row + leave] & 0xFFFF;
+                            coarse[vIn >>> 8]++;
+                            fine[vIn]++;
+                            coarse[vOut >>> 8]--;
+                            fine[vOut]--;
+                        }
+                    }
+                    int count = 0;
+                    int bin = 0;
+                    while (count + coarse[bin] <= rank) {
+                        count += coarse[bin];
+                        bin++;
+                    }
+                    int value = bin << 8;
+                    while (count + fine[value] <= rank) {
+                        count += fine[value];
+                        value++;
+                    }
+                    out[y * width + x] = (short) value;
+                }
+                // Empty the histograms by removing the last window of the row
+                for (int dy = -radius; dy <= radius; dy++) {
+                    int row = clamp(y + dy, height) * width;
+                    for (int dx = width - 1 - radius; dx <= width - 1 + radius; dx++) {
+                        int v = src[row + clamp(dx, width)] & 0xFFFF;
+                        coarse[v >>> 8]--;
+                        fine[v]--;
+                    }
+                }
+            }
+        });
+        return dst;
+    }
+
+    // ===== Histogram and tone curves =====
+    // Two streaming passes: a parallel histogram (one private histogram per worker, merged
+    // in the reduction), then a parallel lookup-table pass. 8-bit images pool the R, G and B
+    // samples into one 256-bin histogram and apply the same curve to each channel;
+    // 16-bit height maps use 65536 bins.
+
+    private static final double DEFAULT_STRETCH_CLIP = 0.005;
+
+    /**
+     * Histogram equalization: map each level through the normalized cumulative histogram.
+     */
+    public static BufferedImage equalize(BufferedImage source, TaskProgress progress) {
+        long[] histogram = histogram(source, progress.range(0, 50));
+        int maxValue = histogram.length - 1;
+
+        long total = 0;
+        long cdfMin = -1;
+        int[] lut = new int[histogram.length];
+        long[] cdf = new long[histogram.length];
+        for (int v = 0; v <= maxValue; v++) {
+            total += histogram[v];
+            cdf[v] = total;
+            if (cdfMin < 0 && histogram[v] > 0) {
+                cdfMin = histogram[v];
+            }
+        }
+        for (int v = 0; v <= maxValue; v++) {
+            lut[v] = total > cdfMin
+                    ? (int) Math.round((double) Math.max(0, cdf[v] - cdfMin) * maxValue / (total - cdfMin))
+                    : v;
+        }
+        return applyLut(source, lut, progress.range(50, 100));
+    }
+
+    /**
+     * Contrast stretch with the default 0.5% clip at each end.
+     */
+    public static BufferedImage contrastStretch(BufferedImage source, TaskProgress progress) {
+        return contrastStretch(source, DEFAULT_STRETCH_CLIP, progress);
+    }
+
+    /**
+     * Linear contrast stretch: the levels below the clip fraction and above 1 - clip map to
+     * black and white, and everything between is spread over the full range.
+     */
+    public static BufferedImage contrastStretch(BufferedImage source, double clip, TaskProgress progress) {
+        long[] histogram = histogram(source, progress.range(0, 50));
+        int maxValue = histogram.length - 1;
+
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+        long lowCount = (long) (total * clip);
+        long highCount = (long) Math.ceil(total * (1.0 - clip));
+        int low = 0;
+        int high = maxValue;
+        long cdf = 0;
+        boolean lowFound = false;
+        for (int v = 0; v <= maxValue; v++) {
+            cdf += histogram[v];
+            if (!lowFound && cdf > lowCount) {
+                low = v;
+                lowFound = true;
+            }
+            if (cdf >= highCount) {
+                high = v;
+                break;
+            }
+        }
+
+        int[] lut = new int[histogram.length];
+        for (int v = 0; v <= maxValue; v++) {
+            lut[v] = high > low
+                    ? (int) Math.max(0, Math.min(maxValue, Math.round((double) (v - low) * maxValue / (high - low))))
+                    : v;
+        }
+        System.out.println("Contrast stretch: levels " + low + "-" + high + " -> 0-" + maxValue);
+        return applyLut(source, lut, progress.range(50, 100));
+    }
+
+    /**
+     * Brightness and contrast adjustment, both in percent (-100 to 100). Contrast scales
+     * levels around mid-gray (-100 flattens to gray, 100 doubles the slope); brightness then
+     * shifts them by that percentage of the full range.
+     */
+    public static BufferedImage brightnessContrast(BufferedImage source, int brightness, int contrast,
+                                                   TaskProgress progress) {
+        return applyLut(source, brightnessContrastLut(maxLevel(source), brightness, contrast), progress);
+    }
+
+    /**
+     * The brightness/contrast mapping as a lookup table for levels 0..maxValue.
+     */
+    public static int[] brightnessContrastLut(int maxValue, int brightness, int contrast) {
+        double factor = (100.0 + contrast) / 100.0;
+        double offset = brightness * maxValue / 100.0;
+        double mid = maxValue / 2.0;
+
+        int[] lut = new int[maxValue + 1];
+        for (int v = 0; v <= maxValue; v++) {
+            long mapped = Math.round((v - mid) * factor + mid + offset);
+            lut[v] = (int) Math.max(0, Math.min(maxValue, mapped));
+        }
+        return lut;
+    }
+
+    /**
+     * The posterize mapping as a lookup table for levels 0..maxValue (255 or 65535); gives
+     * the same result through applyLut as posterize().
+     */
+    public static int[] posterizeLut(int maxValue) {
+        int[] lut = new int[maxValue + 1];
+        for (int v = 0; v <= maxValue; v++) {
+            lut[v] = maxValue == MAX_16
+                    ? (v < 43 * 257 ? 0 : v < 128 * 257 ? 1 : v < 213 * 257 ? 2 : 3) * MAX_16 / 3
+                    : limit4parts(v);
+        }
+        return lut;
+    }
+
+    /**
+     * Highest level of the image's samples: 65535 for 16-bit gray, otherwise 255.
+     */
+    public static int maxLevel(BufferedImage image) {
+        return isGray16(image) ? MAX_16 : 255;
+    }
+
+    /**
+     * Level histogram (256 bins, pooled over R/G/B, or 65536 bins for 16-bit gray).
+     * Each parallel worker fills its own histogram and the partial histograms are summed
+     * when the reduction merges them, so there are no shared counters.
+     */
+    public static long[] histogram(BufferedImage source, TaskProgress progress) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        boolean gray16 = isGray16(source);
+        int bins = gray16 ? MAX_16 + 1 : 256;
+        short[] samples = gray16 ? gray16Samples(source) : null;
+        int bands = (height + BAND_ROWS - 1) / BAND_ROWS;
+        AtomicInteger done = new AtomicInteger();
+
+        return IntStream.range(0, bands).parallel().collect(
+                () -> new long[bins],
+                (histogram, band) -> {
+                    progress.checkCancelled();
+                    int y0 = band * BAND_ROWS;
+                    int y1 = Math.min(height, y0 + BAND_ROWS);
+                    if (gray16) {
+                        for (int i = y0 * width; i < y1 * width; i++) {
+                            histogram[samples[i] & 0xFFFF]++;
+                        }
+                    } else {
+                        int[] pixels = new int[(y1 - y0) * width];
+                        source.getRGB(0, y0, width, y1 - y0, pixels, 0, width);
+                        for (int p : pixels) {
+                            histogram[(p >>> 16) & 0xFF]++;
+                            histogram[(p >>> 8) & 0xFF]++;
+                            histogram[p & 0xFF]++;
+                        }
+                    }
+                    progress.setProgress(done.incrementAndGet() * 100 / bands);
+                },
+                (a, b) -> {
+                    for (int i = 0; i < bins; i++) {
+                        a[i] += b[i];
+                    }
+                });
+    }
+
+    /**
+     * Map every level through lut (256 or 65536 entries) in parallel row bands.
+     */
+    public static BufferedImage applyLut(BufferedImage source, int[] lut, TaskProgress progress) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        boolean gray16 = isGray16(source);
+        BufferedImage dst = newFilterTarget(source);
+
+        if (gray16) {
+            short[] src = gray16Samples(source);
+            short[] out = ((DataBufferUShort) dst.getRaster().getDataBuffer()).getData();
+            runBands(height, BAND_ROWS, progress, (y0, y1) -> {
+                for (int i = y0 * width; i < y1 * width; i++) {
+                    out[i] = (short) lut[src[i] & 0xFFFF];
+                }
+            });
+        } else {
+            int[] out = ((DataBufferInt) dst.getRaster().getDataBuffer()).getData();
+            runBands(height, BAND_ROWS, progress, (y0, y1) -> {
+                int offset = y0 * width;
+                source.getRGB(0, y0, width, y1 - y0, out, offset, width);
+                for (int i = offset; i < y1 * width; i++) {
+                    int p = out[i];
+                    out[i] = (lut[(p >>> 16) & 0xFF] << 16) | (lut[(p >>> 8) & 0xFF] << 8) | lut[p & 0xFF];
+                }
+            });
+        }
+        return dst;
+    }
+
+    // ===== Rotation and flips =====
+
+    private static final int TRANSPOSE_TILE = 64; // 64x64 ints = 16 KB per tile, fits in L1
+
+    /**
+     * Materialize a rotation or flip. The output is written tile by tile: each 64x64 output
+     * tile reads a 64x64 source tile, so a 90 degree turn touches a few cache lines per
+     * source row instead of striding through the whole image for every output pixel.
+     * Alpha is kept; 16-bit gray stays 16-bit.
+     */
+    public static BufferedImage orient(BufferedImage source, Orientation orientation, TaskProgress progress) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int outWidth = orientation.outputWidth(width, height);
+        int outHeight = orientation.outputHeight(width, height);
+        long startTime = System.nanoTime();
+
+        BufferedImage dst;
+        if (isGray16(source)) {
+            short[] src = gray16Samples(source);
+            dst = new BufferedImage(outWidth, outHeight, BufferedImage.TYPE_USHORT_GRAY);
+            short[] out = ((DataBufferUShort) dst.getRaster().getDataBuffer()).getData();
+            runBands(outHeight, TRANSPOSE_TILE, progress, (y0, y1) -> {
+                for (int tx = 0; tx < outWidth; tx += TRANSPOSE_TILE) {
+                    int x1 = Math.min(outWidth, tx + TRANSPOSE_TILE);
+                    int step = orientation.sourceStepX(width);
+                    for (int y = y0; y < y1; y++) {
+                        int s = orientation.sourceIndex(tx, y, width, height);
+                        int o = y * outWidth + tx;
+                        for (int x = tx; x < x1; x++, s += step) {
+                            out[o++] = src[s];
+                        }
+                    }
+                }
+            });
+        } else {
+            int[] src = readPixels(source);
+            boolean alpha = source.getColorModel().hasAlpha();
+            dst = new BufferedImage(outWidth, outHeight,
+                    alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            int[] out = ((DataBufferInt) dst.getRaster().getDataBuffer()).getData();
+            runBands(outHeight, TRANSPOSE_TILE, progress, (y0, y1) -> {
+                for (int tx = 0; tx < outWidth; tx += TRANSPOSE_TILE) {
+                    int x1 = Math.min(outWidth, tx + TRANSPOSE_TILE);
+                    int step = orientation.sourceStepX(width);
+                    for (int y = y0; y < y1; y++) {
+                        int s = orientation.sourceIndex(tx, y, width, height);
+                        int o = y * outWidth + tx;
+                        for (int x = tx; x < x1; x++, s += step) {
+                            out[o++] = src[s];
+                        }
+                    }
+                }
+            });
+        }
+
+        long time = (System.nanoTime() - startTime) / 1_000_000;
+        System.out.println("[TIMING] " + orientation + " " + width + "x" + height + ": " + time + " ms");
+        return dst;
+    }
+
+    // ===== Band helpers =====
+
+    private interface BandTask {
+        void run(int start, int end);
+    }
+
+    private interface WorkerBandTask<S> {
+        void run(S state, int start, int end);
+    }
+
+    /**
+     * Like runBands, for tasks with large scratch state: one task per core takes bands in
+     * turn, each with its own state from workerState (created once and reused for every
+     * band the worker runs).
+     */
+    private static <S> void runBands(int length, int bandSize, TaskProgress progress, Supplier<S> workerState,
+                                     WorkerBandTask<S> task) {
+        int bands = (length + bandSize - 1) / bandSize;
+        int workers = Math.min(bands, Runtime.getRuntime().availableProcessors());
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+        IntStream.range(0, workers).parallel().forEach(worker -> {
+            S state = workerState.get();
+            int band;
+            while ((band = next.getAndIncrement()) < bands) {
+                progress.checkCancelled();
+                int start = band * bandSize;
+                task.run(state, start, Math.min(length, start + bandSize));
+                progress.setProgress(done.incrementAndGet() * 100 / bands);
+            }
+        });
+    }
+
+    /**
+     * Split [0, length) into bands and run them in parallel, reporting progress and checking
+     * for cancellation as bands complete.
+     */
+    private static void runBands(int length, int bandSize, TaskProgress progress, BandTask task) {
+        int bands = (length + bandSize - 1) / bandSize;
+        AtomicInteger done = new AtomicInteger();
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            progress.checkCancelled();
+            int start = band * bandSize;
+            task.run(start, Math.min(length, start + bandSize));
+            progress.setProgress(done.incrementAndGet() * 100 / bands);
+        });
+    }
+
+    private static int clamp(int i, int length) {
+        return i < 0 ? 0 : (i >= length ? length - 1 : i);
+    }
+
+    private static int[] readPixels(BufferedImage source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int[] pixels = new int[width * height];
+        source.getRGB(0, 0, width, height, pixels, 0, width);
+        return pixels;
+    }
+
+    private static int[] toIntSamples(short[] samples) {
+        int[] values = new int[samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            values[i] = samples[i] & 0xFFFF;
+        }
+        return values;
+    }
+
+    private static BufferedImage newFilterTarget(BufferedImage source) {
+        return new BufferedImage(source.getWidth(), source.getHeight(),
+                isGray16(source) ? BufferedImage.TYPE_USHORT_GRAY : BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * Unpack one row into line as interleaved floats, padded by pad replicated pixels per side.
+     */
+    private static void unpackRow(int[] pixels, short[] samples, int y, int width, int channels, int pad,
+                                  float[] line) {
+        int offset = y * width;
+        for (int x = -pad; x < width + pad; x++) {
+            int sx = offset + clamp(x, width);
+            int i = (x + pad) * channels;
+            if (channels == 1) {
+                line[i] = samples[sx] & 0xFFFF;
+            } else {
+                int p = pixels[sx];
+                line[i] = (p >>> 16) & 0xFF;
+                line[i + 1] = (p >>> 8) & 0xFF;
+                line[i + 2] = p & 0xFF;
+            }
+        }
+    }
+
+    private static void packRow(float[] values, int y, int width, int channels, int[] pixels, short[] samples) {
+        int offset = y * width;
+        if (channels == 1) {
+            for (int x = 0; x < width; x++) {
+                samples[offset + x] = (short) Math.max(0, Math.min(MAX_16, Math.round(values[x])));
+            }
+            return;
+        }
+        for (int x = 0; x < width; x++) {
+            int r = Math.max(0, Math.min(255, Math.round(values[3 * x])));
+            int g = Math.max(0, Math.min(255, Math.round(values[3 * x + 1])));
+            int b = Math.max(0, Math.min(255, Math.round(values[3 * x + 2])));
+            pixels[offset + x] = (r << 16) | (g << 8) | b;
+        }
+    }
 }
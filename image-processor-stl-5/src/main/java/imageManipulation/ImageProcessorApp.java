@@ -1,7 +1,12 @@
 package imageManipulation;
 
 import org.openjdk.jol.info.GraphLayout;
+import toSTL.ConversionListener;
 import toSTL.DimensionDialog;
+import toSTL.HeightMap;
+import toSTL.MeshValidator;
+import toSTL.Orientation;
+import toSTL.RunLengthToSTL;
 import toSTL.STLWriter;
 import toSTL.Triangle;
 import toSTL.VoxelToSTL;
@@ -12,7 +17,11 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Main application coordinator that manages all components.
@@ -20,20 +29,34 @@ import java.util.List;
 public class ImageProcessorApp {
     private static final int MAX_IMAGE_DIM = 5000;
     private static final int MIN_IMAGE_DIM = 16;
+    private static final long MIN_CACHED_MILLIS = 100;
+    private static final double MIN_BLUR_SIGMA = 0.5;
+    private static final double MAX_BLUR_SIGMA = 100.0;
+    private static final int MAX_MEDIAN_RADIUS = 50;
+    private static final String SESSION_EXTENSION = "imgsession";
 
     private ImageData imageData;
     private FunctionLog functionLog;
     private WindowManager windowManager;
     private ControlPanel controlPanel;
+    private ProcessingQueue processingQueue;
+    private ImageExporter imageExporter;
+    private SessionWriter sessionWriter; // Open while a saved session records new images
+    private SessionReader sessionReader; // Backs the lazily loaded history of an opened session
+    private final ResultCache resultCache; // Null if the cache directory is unavailable
 
     public ImageProcessorApp() {
         this.imageData = new ImageData();
         this.functionLog = new FunctionLog();
         this.windowManager = new WindowManager();
+        this.processingQueue = new ProcessingQueue();
+        this.imageExporter = new ImageExporter();
+        this.resultCache = ResultCache.getDefault();
     }
 
     public void start() {
         controlPanel = new ControlPanel(this);
+        processingQueue.setStatusListener(controlPanel::showTaskStatus);
         controlPanel.setVisible(true);
     }
 
@@ -42,46 +65,389 @@ public class ImageProcessorApp {
     public void loadImage(JFrame parent) {
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setFileFilter(new FileNameExtensionFilter(
-                "Image Files", "jpg", "jpeg", "png", "gif", "bmp"));
+                "Image Files", "jpg", "jpeg", "png", "gif", "bmp", "tif", "tiff"));
 
         int result = fileChooser.showOpenDialog(parent);
         if (result == JFileChooser.APPROVE_OPTION) {
             File selectedFile = fileChooser.getSelectedFile();
-            try {
-                BufferedImage img = ImageIO.read(selectedFile);
+            processingQueue.submit("Load " + selectedFile.getName(), new LoadWorker(parent, selectedFile));
+        }
+    }
+
+    /**
+     * Reads an image file in the background and replaces the current session with it on the EDT.
+     */
+    private class LoadWorker extends SwingWorker<BufferedImage, Void> {
+        private final JFrame parent;
+        private final File selectedFile;
+        private MipPyramid pyramid;
+        private TiledImage tiles;
+        private String contentKey;
+
+        LoadWorker(JFrame parent, File selectedFile) {
+            this.parent = parent;
+            this.selectedFile = selectedFile;
+        }
+
+        @Override
+        protected BufferedImage doInBackground() throws Exception {
+            BufferedImage img = ImageIO.read(selectedFile);
+            if (img != null && !isCancelled()) {
                 long size = GraphLayout.parseInstance(img).totalSize();
                 System.out.println("img size: " + size + " bytes");
+                pyramid = MipPyramid.build(img);
+                tiles = TiledImage.fromImage(img, null);
+                if (resultCache != null) {
+                    contentKey = ResultCache.fileKey(selectedFile);
+                }
+            }
+            return img;
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                System.out.println("Load cancelled: " + selectedFile.getName());
+                return;
+            }
+            try {
+                BufferedImage img = get();
                 if (img != null) {
-                    size = GraphLayout.parseInstance(img).totalSize();
-                    System.out.println("imageArray size: " + size + " bytes");
-                    int height = img.getHeight(); // Correct: imageArray is [height][width][3]
-                    int width = img.getWidth(); // Correct: width is columns
-
-                    imageData.setInitialImage(img);
-
-                    functionLog.clear();
-                    windowManager.clear();
-                    controlPanel.clearLog();
-                    String fileName = selectedFile.getName();
-                    controlPanel.setFilename(fileName);
-                    controlPanel.resetSourceImage();
-
-                    windowManager.createAndShowWindow(img, "Input", 1, 0, fileName);
-                    logFunction("Input - " + imageData.getCurrentSequenceNumber() + " ( " + fileName + " ) - " + width
-                            + " x " + height);
-
-                    // Force GC after loading
-                    System.gc();
+                    closeSession(parent, () -> showLoadedImage(img));
                 } else {
                     showError(parent, "Failed to load image", "Error");
                 }
-            } catch (IOException ex) {
-                showError(parent, "Error reading file: " + ex.getMessage(), "Error");
+            } catch (ExecutionException ex) {
+                showError(parent, "Error reading file: " + ex.getCause().getMessage(), "Error");
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
             }
+        }
+
+        private void showLoadedImage(BufferedImage img) {
+            int height = img.getHeight(); // Correct: imageArray is [height][width][3]
+            int width = img.getWidth(); // Correct: width is columns
+
+            imageData.setInitialImage(img, tiles);
+            imageData.setContentKey(1, contentKey);
+
+            functionLog.clear();
+            windowManager.clear();
+            controlPanel.clearLog();
+            String fileName = selectedFile.getName();
+            controlPanel.setFilename(fileName);
+            controlPanel.resetSourceImage();
 
+            windowManager.getPyramidCache().put(1, pyramid);
+            windowManager.createAndShowWindow(img, "Input", 1, 0, fileName);
+            logEntry(LogEntry.input(imageData.getCurrentSequenceNumber(), fileName, width, height));
         }
     }
 
+    // ===== Sessions =====
+
+    public void saveSession(JFrame parent) {
+        if (!imageData.hasImage()) {
+            showWarning(parent, "Please load an image first", "No Image");
+            return;
+        }
+
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setFileFilter(new FileNameExtensionFilter("Image Sessions", SESSION_EXTENSION));
+        if (fileChooser.showSaveDialog(parent) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = fileChooser.getSelectedFile();
+        if (!file.getName().toLowerCase().endsWith("." + SESSION_EXTENSION)) {
+            file = new File(file.getAbsolutePath() + "." + SESSION_EXTENSION);
+        }
+        if (sessionReader != null && sessionReader.getFile().getAbsoluteFile().equals(file.getAbsoluteFile())) {
+            showError(parent, "The open session is read from this file.\nPlease choose a different file.",
+                    "Save Session");
+            return;
+        }
+
+        File sessionFile = file;
+        closeSession(parent, () -> startSession(parent, sessionFile));
+    }
+
+    private void startSession(JFrame parent, File file) {
+        try {
+            sessionWriter = SessionWriter.create(file);
+        } catch (IOException ex) {
+            showError(parent, "Cannot create session file: " + ex.getMessage(), "Save Session");
+            return;
+        }
+        // Existing history is written in the background; later images are appended as they are created
+        for (int seq = 1; seq < imageData.getNextSequenceNumber(); seq++) {
+            sessionWriter.addImage(seq, imageData.getSourceSequence(seq), imageData.getContentKey(seq),
+                    imageData.getTiles(seq));
+        }
+        logEntry(LogEntry.event("Save Session", file.getName()));
+    }
+
+    public void openSession(JFrame parent) {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setFileFilter(new FileNameExtensionFilter("Image Sessions", SESSION_EXTENSION));
+        if (fileChooser.showOpenDialog(parent) == JFileChooser.APPROVE_OPTION) {
+            File file = fileChooser.getSelectedFile();
+            processingQueue.submit("Open " + file.getName(), new OpenSessionWorker(parent, file));
+        }
+    }
+
+    /**
+     * Opens a session in the background: reads the index and materializes only the current image.
+     */
+    private class OpenSessionWorker extends SwingWorker<SessionReader, Void> {
+        private final JFrame parent;
+        private final File file;
+        private BufferedImage currentImage;
+        private MipPyramid pyramid;
+
+        OpenSessionWorker(JFrame parent, File file) {
+            this.parent = parent;
+            this.file = file;
+        }
+
+        @Override
+        protected SessionReader doInBackground() throws Exception {
+            SessionReader reader = SessionReader.open(file);
+            int current = reader.getCurrentSequence();
+            if (current < 1 || current >= reader.getHistory().size()) {
+                current = 1;
+            }
+            currentImage = reader.getHistory().get(current).toImage();
+            pyramid = MipPyramid.build(currentImage);
+            return reader;
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                return;
+            }
+            try {
+                SessionReader reader = get();
+                closeSession(parent, () -> showSession(reader));
+            } catch (ExecutionException ex) {
+                showError(parent, "Error opening session: " + ex.getCause().getMessage(), "Open Session");
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void showSession(SessionReader reader) {
+            if (sessionReader != null) {
+                try {
+                    sessionReader.close();
+                } catch (IOException ex) {
+                    showError(parent, "Error closing previous session: " + ex.getMessage(), "Open Session");
+                }
+            }
+            sessionReader = reader;
+
+            imageData.restore(reader.getHistory(), reader.getSources(), reader.getContentKeys(),
+                    reader.getCurrentSequence(),
+                    currentImage);
+            functionLog.clear();
+            windowManager.clear();
+            controlPanel.clearLog();
+            controlPanel.setFilename(file.getName());
+            for (LogEntry entry : reader.getLogEntries()) {
+                functionLog.addEntry(entry);
+                controlPanel.appendToLog(entry.toText());
+            }
+
+            int seq = imageData.getCurrentSequenceNumber();
+            windowManager.getPyramidCache().put(seq, pyramid);
+            showSelectedImage(seq);
+        }
+    }
+
+    /**
+     * Finish the session file being recorded, if any, then run next on the EDT. Queued images
+     * and the index are written in the background; the control panel is disabled meanwhile so
+     * nothing new starts before the session is closed.
+     */
+    private void closeSession(JFrame parent, Runnable next) {
+        if (sessionWriter == null) {
+            next.run();
+            return;
+        }
+        SessionWriter writer = sessionWriter;
+        sessionWriter = null;
+
+        JDialog progressDialog = new JDialog(parent, "Saving Session", false);
+        JLabel progressLabel = new JLabel("Saving " + writer.getFile().getName() + "...", JLabel.CENTER);
+        progressLabel.setBorder(BorderFactory.createEmptyBorder(20, 20, 10, 20));
+        JProgressBar progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        JPanel progressPanel = new JPanel(new java.awt.BorderLayout());
+        progressPanel.setBorder(BorderFactory.createEmptyBorder(0, 20, 20, 20));
+        progressPanel.add(progressBar, java.awt.BorderLayout.CENTER);
+        progressDialog.add(progressLabel, java.awt.BorderLayout.NORTH);
+        progressDialog.add(progressPanel, java.awt.BorderLayout.CENTER);
+        progressDialog.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
+        progressDialog.setSize(360, 120);
+        progressDialog.setLocationRelativeTo(parent);
+        controlPanel.setEnabled(false);
+
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws IOException {
+                writer.close();
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                progressDialog.dispose();
+                controlPanel.setEnabled(true);
+                try {
+                    get();
+                } catch (ExecutionException ex) {
+                    showError(parent, "Session " + writer.getFile().getName() + " could not be saved: " +
+                            ex.getCause().getMessage(), "Session Error");
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                next.run();
+            }
+        }.execute();
+        progressDialog.setVisible(true);
+    }
+
+    private void updateSessionIndex() {
+        if (sessionWriter != null) {
+            sessionWriter.setIndex(functionLog.getAllEntries(), imageData.getCurrentSequenceNumber());
+        }
+    }
+
+    public void exit(JFrame parent) {
+        closeSession(parent, () -> System.exit(0));
+    }
+
+    // ===== Recipes =====
+
+    /**
+     * Save the chain that produced the current image as a recipe. The most recent STL export
+     * of the current image, if any, is included so the recipe reproduces it.
+     */
+    public void exportRecipe(JFrame parent) {
+        if (!imageData.hasImage()) {
+            showWarning(parent, "Please load an image first", "No Image");
+            return;
+        }
+
+        int seq = imageData.getCurrentSequenceNumber();
+        List<LogEntry> lineage = functionLog.getLineage(seq);
+        if (lineage.isEmpty()) {
+            showError(parent, "No log history for image " + seq, "Export Recipe");
+            return;
+        }
+        LogEntry export = functionLog.findLastEvent("Export to STL", seq);
+        Recipe recipe;
+        try {
+            recipe = Recipe.fromLineage(lineage,
+                    export != null ? STLExportSettings.fromParameters(export.getParameters()) : null);
+        } catch (IllegalArgumentException ex) {
+            showError(parent, "Cannot build recipe: " + ex.getMessage(), "Export Recipe");
+            return;
+        }
+
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Export Recipe");
+        fileChooser.setFileFilter(new FileNameExtensionFilter("Recipes", Recipe.EXTENSION));
+        if (fileChooser.showSaveDialog(parent) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = fileChooser.getSelectedFile();
+        if (!file.getName().toLowerCase().endsWith("." + Recipe.EXTENSION)) {
+            file = new File(file.getAbsolutePath() + "." + Recipe.EXTENSION);
+        }
+        try {
+            recipe.save(file);
+            System.out.println("Recipe: " + recipe);
+            logEntry(LogEntry.event("Export Recipe", seq, parameters("steps", recipe.getSteps().size(),
+                    "stl", recipe.getStlSettings() != null), file.getName()));
+        } catch (IOException ex) {
+            showError(parent, "Error saving recipe: " + ex.getMessage(), "Export Recipe");
+        }
+    }
+
+    /**
+     * Apply a recipe to a set of image files, writing the results to a folder. Runs in the
+     * background outside the image history (see RecipeRunner).
+     */
+    public void runRecipe(JFrame parent) {
+        JFileChooser recipeChooser = new JFileChooser();
+        recipeChooser.setDialogTitle("Select Recipe");
+        recipeChooser.setFileFilter(new FileNameExtensionFilter("Recipes", Recipe.EXTENSION));
+        if (recipeChooser.showOpenDialog(parent) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Recipe recipe;
+        try {
+            recipe = Recipe.load(recipeChooser.getSelectedFile());
+        } catch (IOException ex) {
+            showError(parent, ex.getMessage(), "Run Recipe");
+            return;
+        }
+
+        JFileChooser inputChooser = new JFileChooser(recipeChooser.getCurrentDirectory());
+        inputChooser.setDialogTitle("Select Images");
+        inputChooser.setMultiSelectionEnabled(true);
+        inputChooser.setFileFilter(new FileNameExtensionFilter(
+                "Image Files", "jpg", "jpeg", "png", "gif", "bmp", "tif", "tiff"));
+        if (inputChooser.showOpenDialog(parent) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        List<File> inputs = List.of(inputChooser.getSelectedFiles());
+
+        JFileChooser outputChooser = new JFileChooser(inputChooser.getCurrentDirectory());
+        outputChooser.setDialogTitle("Select Output Folder");
+        outputChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (outputChooser.showSaveDialog(parent) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File outputDir = outputChooser.getSelectedFile();
+
+        String recipeName = recipeChooser.getSelectedFile().getName();
+        processingQueue.submit("Recipe " + recipeName, new SwingWorker<Integer, Void>() {
+            @Override
+            protected Integer doInBackground() throws Exception {
+                RecipeRunner runner = new RecipeRunner(recipe, Runtime.getRuntime().availableProcessors(),
+                        resultCache, false);
+                return runner.run(inputs, outputDir, (input, output, error, finished, total) -> {
+                    System.out.println("Recipe " + finished + "/" + total + ": " + input.getName() +
+                            (error == null ? " -> " + output.getName() : " FAILED: " + error.getMessage()));
+                    setProgress(finished * 100 / total);
+                });
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    int failed = get();
+                    logEntry(LogEntry.event("Run Recipe", 0, parameters("images", inputs.size(), "failed", failed),
+                            recipeName + " - " + outputDir.getName()));
+                    if (failed > 0) {
+                        showWarning(parent, failed + " of " + inputs.size() + " images failed (see console)",
+                                "Run Recipe");
+                    } else {
+                        showInfo(parent, "Processed " + inputs.size() + " images into:\n" + outputDir.getName(),
+                                "Run Recipe");
+                    }
+                } catch (Exception ex) {
+                    showError(parent, "Error running recipe: " + ex.getMessage(), "Run Recipe");
+                }
+            }
+        });
+    }
+
     public void saveImage(JFrame parent) {
         if (!imageData.hasImage()) {
             showWarning(parent, "Please load an image first", "No Image");
@@ -91,22 +457,36 @@ public class ImageProcessorApp {
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setDialogTitle("Save Image");
 
-        // Format selection panel
-        JPanel formatPanel = new JPanel();
+        // Format and encoding options panel
+        JPanel formatPanel = new JPanel(new java.awt.GridLayout(0, 1, 2, 2));
+        formatPanel.setBorder(BorderFactory.createTitledBorder("Options"));
         formatPanel.add(new JLabel("Format:"));
         JComboBox<String> formatCombo = new JComboBox<>(new String[] { "PNG", "JPG" });
         formatPanel.add(formatCombo);
+        formatPanel.add(new JLabel("PNG compression (0-9):"));
+        JSpinner compressionSpinner = new JSpinner(new SpinnerNumberModel(6, 0, 9, 1));
+        formatPanel.add(compressionSpinner);
+        JCheckBox parallelCheckBox = new JCheckBox("Parallel PNG encoder", true);
+        formatPanel.add(parallelCheckBox);
+        formatPanel.add(new JLabel("JPEG quality (%):"));
+        JSpinner qualitySpinner = new JSpinner(new SpinnerNumberModel(90, 1, 100, 1));
+        qualitySpinner.setEnabled(false);
+        formatPanel.add(qualitySpinner);
         fileChooser.setAccessory(formatPanel);
 
         fileChooser.setSelectedFile(new File("output.png"));
 
-        // Update extension when format changes
+        // Update extension and enabled options when format changes
         formatCombo.addActionListener(e -> {
             String format = (String) formatCombo.getSelectedItem();
             String currentName = fileChooser.getSelectedFile().getName();
             String baseName = currentName.replaceAll("\\.(png|jpg|jpeg)$", "");
             String extension = format.equalsIgnoreCase("PNG") ? ".png" : ".jpg";
             fileChooser.setSelectedFile(new File(fileChooser.getCurrentDirectory(), baseName + extension));
+            boolean png = format.equalsIgnoreCase("PNG");
+            compressionSpinner.setEnabled(png);
+            parallelCheckBox.setEnabled(png);
+            qualitySpinner.setEnabled(!png);
         });
 
         int result = fileChooser.showSaveDialog(parent);
@@ -124,19 +504,21 @@ public class ImageProcessorApp {
                 selectedFile = new File(selectedFile.getParentFile(), filename + ".jpg");
             }
 
-            try {
-                BufferedImage img = imageData.getCurrentImage();
-                boolean success = ImageIO.write(img, format, selectedFile);
+            ImageExporter.Options options = new ImageExporter.Options(format,
+                    (Integer) compressionSpinner.getValue(),
+                    (Integer) qualitySpinner.getValue() / 100.0f,
+                    parallelCheckBox.isSelected());
 
-                if (success) {
+            // Save in the background - the image is never modified after it enters history
+            BufferedImage img = imageData.getCurrentImage();
+            imageExporter.saveAsync(img, selectedFile, options, (file, error) -> {
+                if (error == null) {
                     // Silent success - just log the operation
-                    logFunction("Save - " + format + " - " + selectedFile.getName());
+                    logEntry(LogEntry.event("Save", format + " - " + file.getName()));
                 } else {
-                    showError(parent, "Failed to save image", "Save Error");
+                    showError(parent, "Error saving file: " + error.getMessage(), "Save Error");
                 }
-            } catch (IOException ex) {
-                showError(parent, "Error saving file: " + ex.getMessage(), "Save Error");
-            }
+            });
         }
     }
 
@@ -148,30 +530,7 @@ public class ImageProcessorApp {
             return;
         }
 
-        logMemoryBefore("Posterize");
-
-        // Force GC before operation to ensure clean slate
-        System.gc();
-        Thread.yield(); // Give GC time to run
-
-        BufferedImage currentImage = imageData.getCurrentImage();
-        int sourceSeq = imageData.getCurrentSequenceNumber();
-        int newSeq = imageData.getNextSequenceNumber();
-
-        int height = currentImage.getHeight();
-        int width = currentImage.getWidth();
-
-        BufferedImage result = ImageProcessingFunctions.posterize(currentImage);
-        imageData.addProcessedImage(result);
-
-        logMemoryAfter("Posterize", "before window creation");
-
-        windowManager.createAndShowWindow(result, "Posterize", newSeq, sourceSeq);
-        String logData = "Posterize - " + newSeq + " (from " + sourceSeq + ") - " + width + " x " + height;
-        logFunction(logData);
-        updateSourceLabel(logData);
-
-        logMemoryAfter("Posterize", "after window creation + GC");
+        submitOperation(parent, "Posterize", parameters());
     }
 
     public void applyMonochrome(JFrame parent) {
@@ -180,25 +539,7 @@ public class ImageProcessorApp {
             return;
         }
 
-        logMemoryBefore("Monochrome");
-
-        BufferedImage currentImage = imageData.getCurrentImage();
-        BufferedImage result = ImageProcessingFunctions.monochrome(currentImage);
-        int sourceSeq = imageData.getCurrentSequenceNumber();
-        int newSeq = imageData.getNextSequenceNumber();
-        int height = result.getHeight();
-        int width = result.getWidth();
-
-        imageData.addProcessedImage(result);
-
-        logMemoryAfter("Monochrome", "before window creation");
-
-        windowManager.createAndShowWindow(result, "Monochrome", newSeq, sourceSeq);
-        String logData = "Monochrome - " + newSeq + " (from " + sourceSeq + ") - " + width + " x " + height;
-        logFunction(logData);
-        updateSourceLabel(logData);
-
-        logMemoryAfter("Monochrome", "after window creation");
+        submitOperation(parent, "Monochrome", parameters());
     }
 
     public void applyScale(JFrame parent) {
@@ -235,21 +576,246 @@ public class ImageProcessorApp {
                     return;
                 }
 
-                BufferedImage scaled = ImageProcessingFunctions.copyAndScale(currentImage, newWidth, newHeight);
-                int sourceSeq = imageData.getCurrentSequenceNumber();
-                int newSeq = imageData.getNextSequenceNumber();
-
-                imageData.addProcessedImage(scaled);
-                windowManager.createAndShowWindow(scaled, "Scale", newSeq, sourceSeq);
-                String logData = "Scale - " + newSeq + " (from " + sourceSeq + ") - " + newWidth + " x " + newHeight;
-                logFunction(logData);
-                updateSourceLabel(logData);
+                submitOperation(parent, "Scale", parameters("width", newWidth, "height", newHeight));
             } catch (NumberFormatException ex) {
                 showError(parent, "Please enter valid numbers", "Invalid Input");
             }
         }
     }
 
+    public void applyBlur(JFrame parent) {
+        if (!imageData.hasImage()) {
+            showWarning(parent, "Please load an image first", "No Image");
+            return;
+        }
+
+        String input = JOptionPane.showInputDialog(parent,
+                "Blur sigma in pixels (" + MIN_BLUR_SIGMA + "-" + MAX_BLUR_SIGMA + "):", "2.0");
+        if (input == null) {
+            return;
+        }
+        try {
+            double sigma = Double.parseDouble(input.trim());
+            if (sigma < MIN_BLUR_SIGMA || sigma > MAX_BLUR_SIGMA) {
+                showError(parent, "Sigma must be between " + MIN_BLUR_SIGMA + " and " + MAX_BLUR_SIGMA,
+                        "Invalid Sigma");
+                return;
+            }
+            submitOperation(parent, "Blur", parameters("sigma", sigma));
+        } catch (NumberFormatException ex) {
+            showError(parent, "Please enter a valid number", "Invalid Input");
+        }
+    }
+
+    public void applyMedian(JFrame parent) {
+        if (!imageData.hasImage()) {
+            showWarning(parent, "Please load an image first", "No Image");
+            return;
+        }
+
+        String input = JOptionPane.showInputDialog(parent,
+                "Median radius in pixels (1-" + MAX_MEDIAN_RADIUS + "):", "1");
+        if (input == null) {
+            return;
+        }
+        try {
+            int radius = Integer.parseInt(input.trim());
+            if (radius < 1 || radius > MAX_MEDIAN_RADIUS) {
+                showError(parent, "Radius must be between 1 and " + MAX_MEDIAN_RADIUS, "Invalid Radius");
+                return;
+            }
+            submitOperation(parent, "Median", parameters("radius", radius));
+        } catch (NumberFormatException ex) {
+            showError(parent, "Please enter a valid number", "Invalid Input");
+        }
+    }
+
+    public void applyEqualize(JFrame parent) {
+        if (!imageData.hasImage()) {
+            showWarning(parent, "Please load an image first", "No Image");
+            return;
+        }
+
+        submitOperation(parent, "Equalize", parameters());
+    }
+
+    public void applyContrastStretch(JFrame parent) {
+        if (!imageData.hasImage()) {
+            showWarning(parent, "Please load an image first", "No Image");
+            return;
+        }
+
+        submitOperation(parent, "Auto Contrast", parameters());
+    }
+
+    public void applyBrightnessContrast(JFrame parent) {
+        if (!imageData.hasImage()) {
+            showWarning(parent, "Please load an image first", "No Image");
+            return;
+        }
+
+        JPanel panel = new JPanel(new java.awt.GridLayout(2, 2, 5, 5));
+        JSpinner brightnessSpinner = new JSpinner(new SpinnerNumberModel(0, -100, 100, 5));
+        JSpinner contrastSpinner = new JSpinner(new SpinnerNumberModel(0, -100, 100, 5));
+
+        panel.add(new JLabel("Brightness (-100 to 100):"));
+        panel.add(brightnessSpinner);
+        panel.add(new JLabel("Contrast (-100 to 100):"));
+        panel.add(contrastSpinner);
+
+        int result = JOptionPane.showConfirmDialog(parent, panel,
+                "Brightness/Contrast", JOptionPane.OK_CANCEL_OPTION);
+        if (result != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        int brightness = (Integer) brightnessSpinner.getValue();
+        int contrast = (Integer) contrastSpinner.getValue();
+        submitOperation(parent, "Brightness/Contrast", parameters("brightness", brightness, "contrast", contrast));
+    }
+
+    public void applyOrientation(JFrame parent, Orientation orientation) {
+        if (!imageData.hasImage()) {
+            showWarning(parent, "Please load an image first", "No Image");
+            return;
+        }
+
+        submitOperation(parent, orientation.getDisplayName(), parameters());
+    }
+
+    /**
+     * Queue an operation on the current image. The source is taken when the operation starts,
+     * so several queued operations chain on each other's results. The operation is looked up
+     * by name in Recipe, so whatever is logged (name and parameters, in order) can be replayed.
+     */
+    private void submitOperation(JFrame parent, String functionName, Map<String, String> parameters) {
+        ImageOperation operation = Recipe.operation(functionName, parameters);
+        processingQueue.submit(functionName, new OperationWorker(parent, functionName, parameters, operation));
+    }
+
+    public void cancelProcessing() {
+        processingQueue.cancelCurrent();
+    }
+
+    /**
+     * Runs one ImageOperation off the EDT and adds its result to history on the EDT.
+     */
+    private class OperationWorker extends SwingWorker<BufferedImage, Void> {
+        private final JFrame parent;
+        private final String functionName;
+        private final Map<String, String> parameters;
+        private final ImageOperation operation;
+        private BufferedImage source;
+        private TiledImage sourceTiles;
+        private int sourceSeq;
+        private String sourceKey;
+        private MipPyramid pyramid;
+        private TiledImage tiles;
+        private String contentKey;
+
+        private long timeMillis;
+
+        OperationWorker(JFrame parent, String functionName, Map<String, String> parameters,
+                        ImageOperation operation) {
+            this.parent = parent;
+            this.functionName = functionName;
+            this.parameters = parameters;
+            this.operation = operation;
+        }
+
+        @Override
+        protected BufferedImage doInBackground() throws Exception {
+            // Read the source on the EDT: the previous queued result has been delivered by now
+            SwingUtilities.invokeAndWait(() -> {
+                source = imageData.getCurrentImage();
+                sourceSeq = imageData.getCurrentSequenceNumber();
+                sourceTiles = imageData.getTiles(sourceSeq);
+                sourceKey = imageData.getContentKey(sourceSeq);
+            });
+            if (source == null) {
+                return null;
+            }
+
+            logMemoryBefore(functionName);
+
+            TaskProgress progress = new TaskProgress() {
+                @Override
+                public void setProgress(int percent) {
+                    OperationWorker.this.setProgress(Math.max(0, Math.min(100, percent)));
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return OperationWorker.this.isCancelled();
+                }
+            };
+
+            long startTime = System.nanoTime();
+            BufferedImage result = null;
+            if (resultCache != null && sourceKey != null) {
+                contentKey = ResultCache.chainKey(sourceKey, functionName, parameters);
+                result = resultCache.getImage(contentKey);
+            }
+            if (result == null) {
+                result = operation.apply(source, progress);
+                timeMillis = (System.nanoTime() - startTime) / 1_000_000;
+                // Only results that took longer to compute than to read back are worth the disk space
+                if (contentKey != null && timeMillis >= MIN_CACHED_MILLIS) {
+                    resultCache.putImage(contentKey, result);
+                }
+            } else {
+                timeMillis = (System.nanoTime() - startTime) / 1_000_000;
+            }
+            source = null; // Don't keep the source alive through done()
+            progress.checkCancelled();
+
+            // Prepare the display pyramid and history tiles here so the EDT work is cheap
+            pyramid = MipPyramid.build(result);
+            tiles = TiledImage.fromImage(result, sourceTiles);
+            sourceTiles = null;
+            return result;
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                System.out.println(functionName + " cancelled");
+                return;
+            }
+            try {
+                BufferedImage result = get();
+                if (result == null) {
+                    return;
+                }
+                int newSeq = imageData.getNextSequenceNumber();
+                int height = result.getHeight();
+                int width = result.getWidth();
+
+                imageData.addProcessedImage(result, tiles, sourceSeq);
+                imageData.setContentKey(newSeq, contentKey);
+                if (sessionWriter != null) {
+                    sessionWriter.addImage(newSeq, sourceSeq, contentKey, tiles);
+                }
+
+                logMemoryAfter(functionName, "before window creation");
+
+                windowManager.getPyramidCache().put(newSeq, pyramid);
+                LogEntry entry = LogEntry.operation(functionName, parameters, newSeq, sourceSeq, width, height,
+                        timeMillis);
+                windowManager.createAndShowWindow(result, entry.getDisplayName(), newSeq, sourceSeq);
+                logEntry(entry);
+                updateSourceLabel(entry);
+
+                logMemoryAfter(functionName, "after window creation");
+            } catch (ExecutionException ex) {
+                showError(parent, functionName + " failed: " + ex.getCause().getMessage(), "Processing Error");
+                ex.printStackTrace();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     // ===== Window Management =====
 
     public void gatherWindows(JFrame parent) {
@@ -267,13 +833,106 @@ public class ImageProcessorApp {
 
         // Get current image dimensions
         BufferedImage currentImage = imageData.getCurrentImage();
-        int imageHeight = currentImage.getHeight();
-        int imageWidth = currentImage.getWidth();
+        int seq = imageData.getCurrentSequenceNumber();
+        startSTLExport(parent, currentImage, null, seq, imageData.getContentKey(seq), "Source " + seq,
+                currentImage.getWidth(), currentImage.getHeight(), null, null);
+    }
+
+    /**
+     * Export several history images as one multi-layer print: each image is a height layer
+     * stacked on the one before, meshed together with shared walls (see
+     * STLExportSettings.layeredMesher). The images are converted one at a time in the worker,
+     * so only their height maps are held together.
+     */
+    public void exportLayersToSTL(JFrame parent) {
+        if (!imageData.hasImage()) {
+            showWarning(parent, "Please load an image first", "No Image");
+            return;
+        }
 
+        String input = JOptionPane.showInputDialog(parent,
+                "Image sequence numbers, bottom layer first (e.g. 2, 5, 7):",
+                String.valueOf(imageData.getCurrentSequenceNumber()));
+        if (input == null) {
+            return;
+        }
+        List<Integer> sequences = new ArrayList<>();
+        List<TiledImage> layers = new ArrayList<>();
+        List<String> layerKeys = new ArrayList<>();
+        try {
+            for (String part : input.trim().split("[,\\s]+")) {
+                if (part.isEmpty()) {
+                    continue;
+                }
+                int seq = Integer.parseInt(part);
+                TiledImage tiles = imageData.getTiles(seq);
+                if (tiles == null) {
+                    showError(parent, "There is no image " + seq + " in the history", "Invalid Layers");
+                    return;
+                }
+                if (!layers.isEmpty() && (tiles.getWidth() != layers.get(0).getWidth()
+                        || tiles.getHeight() != layers.get(0).getHeight())) {
+                    showError(parent, "All layers must be the same size: image " + seq + " is " +
+                            tiles.getWidth() + "x" + tiles.getHeight() + ", image " + sequences.get(0) + " is " +
+                            layers.get(0).getWidth() + "x" + layers.get(0).getHeight(), "Invalid Layers");
+                    return;
+                }
+                sequences.add(seq);
+                layers.add(tiles);
+                layerKeys.add(imageData.getContentKey(seq));
+            }
+        } catch (NumberFormatException ex) {
+            showError(parent, "Please enter sequence numbers separated by commas", "Invalid Input");
+            return;
+        }
+        if (layers.isEmpty()) {
+            showError(parent, "Please enter at least one sequence number", "Invalid Input");
+            return;
+        }
+
+        String description = "Layers " + sequences.toString().replaceAll("[\\[\\]]", "");
+        startSTLExport(parent, null, null, sequences.get(sequences.size() - 1), null, description,
+                layers.get(0).getWidth(), layers.get(0).getHeight(), layers, layerKeys);
+    }
+
+    /**
+     * Export an image file straight to STL without loading it into history.
+     * Only the header is read up-front; pixels are decoded already subsampled to the
+     * pixel clipping size in the export worker.
+     */
+    public void exportFileToSTL(JFrame parent) {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Select Image to Export");
+        fileChooser.setFileFilter(new FileNameExtensionFilter(
+                "Image Files", "jpg", "jpeg", "png", "gif", "bmp", "tif", "tiff"));
+
+        if (fileChooser.showOpenDialog(parent) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File imageFile = fileChooser.getSelectedFile();
+        try {
+            java.awt.Dimension size = SubsampledImageReader.readDimensions(imageFile);
+            startSTLExport(parent, null, imageFile, 0, null, "File " + imageFile.getName(), size.width,
+                    size.height, null, null);
+        } catch (IOException ex) {
+            showError(parent, "Error reading file: " + ex.getMessage(), "Error");
+        }
+    }
+
+    /**
+     * Collect export settings and the output file, then queue the export.
+     * Exactly one of sourceImage / sourceFile / layers is non-null; sourceSeq is 0 for a file
+     * and the top layer for layers. sourceKey is the image's result cache key, or null (a file
+     * is hashed by the worker); layerKeys holds the layers' keys (null where unknown).
+     */
+    private void startSTLExport(JFrame parent, BufferedImage sourceImage, File sourceFile, int sourceSeq,
+                                String sourceKey, String sourceDescription, int imageWidth, int imageHeight,
+                                List<TiledImage> layers, List<String> layerKeys) {
         // Prepopulate dimension dialog with image dimensions
         // Width and height match image dimensions in pixels (as millimeters)
         // Thickness defaults to 255 (max RGB brightness value)
         DimensionDialog dimensionDialog = new DimensionDialog(imageWidth, imageHeight, 255.0);
+        dimensionDialog.setBaseModeEnabled(layers == null); // The layered mesher caps every run
 
         if (!dimensionDialog.showDialog()) {
             // User cancelled
@@ -286,16 +945,20 @@ public class ImageProcessorApp {
         double width = dimensionDialog.getWidth() * (scalePercent / 100.0);
         double height = dimensionDialog.getHeight() * (scalePercent / 100.0);
         double thickness = dimensionDialog.getThickness() * (scalePercent / 100.0);
+        double plinth = dimensionDialog.getPlinth() * (scalePercent / 100.0);
         int pixelClipping = dimensionDialog.getPixelClipping();
+        int zLayers = dimensionDialog.getZLayers();
 
         boolean invertHeights = dimensionDialog.isInvertHeights();
         boolean flipLeftRight = dimensionDialog.isFlipLeftRight();
-        final int sourceNumber = imageData.getCurrentSequenceNumber();
+        Orientation rotation = dimensionDialog.getRotation();
+        STLExportSettings settings = new STLExportSettings(width, height, thickness, invertHeights, flipLeftRight,
+                rotation, pixelClipping, zLayers, dimensionDialog.getBaseMode(), plinth);
 
         // Show file chooser
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setDialogTitle("Save STL File");
-        fileChooser.setFileFilter(new FileNameExtensionFilter("STL Files", "stl"));
+        fileChooser.setFileFilter(new FileNameExtensionFilter("STL Files (.stl, .stl.gz)", "stl", "gz"));
         fileChooser.setSelectedFile(new File("output.stl"));
 
         int result = fileChooser.showSaveDialog(parent);
@@ -303,9 +966,9 @@ public class ImageProcessorApp {
         if (result == JFileChooser.APPROVE_OPTION) {
             File selectedFile = fileChooser.getSelectedFile();
 
-            // Ensure .stl extension
+            // Ensure .stl extension (.stl.gz writes a gzipped STL)
             String filename = selectedFile.getName();
-            if (!filename.toLowerCase().endsWith(".stl")) {
+            if (!filename.toLowerCase().endsWith(".stl") && !filename.toLowerCase().endsWith(".stl.gz")) {
                 selectedFile = new File(selectedFile.getParentFile(), filename + ".stl");
             }
 
@@ -313,182 +976,304 @@ public class ImageProcessorApp {
             System.out.println("STARTING STL EXPORT PROCESS");
             System.out.println("========================================");
             System.out.println("Image size: " + imageWidth + " x " + imageHeight + " pixels");
-            System.out.println("Source: Image " + sourceNumber);
+            System.out.println("Source: " + sourceDescription);
             System.out.println("Output file: " + selectedFile.getName());
             System.out.println("Scale: " + scalePercent + "%");
             System.out.println("Final dimensions: " + String.format("%.2f x %.2f x %.2f mm", width, height, thickness));
             System.out.println("Height mapping: " + (invertHeights ? "White = Highest" : "Black = Highest (default)"));
             System.out.println("Flip left-right: " + (flipLeftRight ? "YES" : "NO (mirrored by default)"));
-
-            // Convert 2D RGB image to 3D voxel array
-            System.out.println("\n--- IMAGE TO VOXEL CONVERSION ---");
-            long voxelStart = System.nanoTime();
-            BufferedImage rgbImage = imageData.getCurrentImage();
-            boolean[][][] voxelData = convertImageToVoxels(rgbImage, invertHeights, flipLeftRight, pixelClipping);
-            long voxelTime = (System.nanoTime() - voxelStart) / 1_000_000;
-            System.out.println("[TIMING] Image to voxel conversion: " + voxelTime + " ms");
-
-            // Show progress dialog
-            JDialog progressDialog = new JDialog(parent, "Exporting to STL", true);
-            JLabel progressLabel = new JLabel("Converting image to 3D model...", JLabel.CENTER);
-            progressLabel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
-            progressDialog.add(progressLabel);
-            progressDialog.pack();
+            System.out.println("Rotation: " + rotation);
+
+            // Progress dialog - not modal, so the control panel stays usable
+            JDialog progressDialog = new JDialog(parent, "Exporting to STL", false);
+            JLabel progressLabel = new JLabel("Waiting for queued operations...", JLabel.CENTER);
+            progressLabel.setBorder(BorderFactory.createEmptyBorder(20, 20, 10, 20));
+            JProgressBar progressBar = new JProgressBar(0, 100);
+            progressBar.setStringPainted(true);
+            JButton cancelButton = new JButton("Cancel");
+
+            JPanel progressPanel = new JPanel(new java.awt.BorderLayout(10, 10));
+            progressPanel.setBorder(BorderFactory.createEmptyBorder(0, 20, 20, 20));
+            progressPanel.add(progressBar, java.awt.BorderLayout.CENTER);
+            progressPanel.add(cancelButton, java.awt.BorderLayout.EAST);
+            progressDialog.add(progressLabel, java.awt.BorderLayout.NORTH);
+            progressDialog.add(progressPanel, java.awt.BorderLayout.CENTER);
+            progressDialog.setSize(420, 140);
             progressDialog.setLocationRelativeTo(parent);
 
             // Perform conversion in background thread
-            File finalFile = selectedFile;
-            SwingWorker<Boolean, Void> worker = new SwingWorker<Boolean, Void>() {
-                @Override
-                protected Boolean doInBackground() throws Exception {
-                    long startTime = System.nanoTime();
-
-                    System.out.println("\n========================================");
-                    System.out.println("STARTING STL CONVERSION WITH TIMING");
-                    System.out.println("========================================");
-                    System.out.println("Target dimensions: " + width + " x " + height + " x " + thickness + " mm");
-
-                    // Calculate voxel size based on target dimensions
-                    int xSize = voxelData.length;
-                    int ySize = voxelData[0].length;
-                    int zSize = voxelData[0][0].length;
-
-                    float voxelWidth = (float) (width / xSize);
-                    float voxelHeight = (float) (height / ySize);
-                    float voxelThickness = (float) (thickness / zSize);
+            STLExportWorker worker = new STLExportWorker(parent, sourceImage, sourceFile, sourceSeq, sourceKey,
+                    sourceDescription, selectedFile, settings, progressDialog, layers, layerKeys);
+            worker.addPropertyChangeListener(evt -> {
+                if ("progress".equals(evt.getPropertyName())) {
+                    progressBar.setValue((Integer) evt.getNewValue());
+                }
+            });
+            worker.setStatusLabel(progressLabel);
+            cancelButton.addActionListener(e -> {
+                cancelButton.setEnabled(false);
+                progressLabel.setText("Cancelling...");
+                worker.cancel(false); // Cooperative: mesher and writer poll isCancelled()
+            });
+
+            processingQueue.submit(layers != null ? "Export Layers to STL" : "Export to STL", worker);
+            progressDialog.setVisible(true);
+        }
+    }
 
-                    // Use smallest voxel dimension for uniform cubes
-                    float voxelSize = Math.min(voxelWidth, Math.min(voxelHeight, voxelThickness));
+    /**
+     * Converts an image to a height map, meshes it and writes the binary STL in the background.
+     * Progress is split across the phases: height map 0-10%, meshing 10-60%, writing 60-100%.
+     * A file source is decoded subsampled to the clipping size during the height map phase.
+     * Layers are converted to height maps one image at a time and meshed as a stack.
+     * Only the STL writer deletes the output file, and only the partial file it wrote itself:
+     * a cancel while queued, meshing or copying from the cache leaves an existing file alone.
+     */
+    private class STLExportWorker extends SwingWorker<Boolean, String> implements ConversionListener {
+        private final JFrame parent;
+        private final BufferedImage sourceImage;
+        private final File sourceFile;
+        private final int sourceSeq;
+        private final String sourceKey;
+        private final String sourceDescription;
+        private final File outputFile;
+        private final STLExportSettings settings;
+        private final JDialog progressDialog;
+        private final List<TiledImage> layers;
+        private final List<String> layerKeys;
+        private JLabel statusLabel;
+        private int phaseStart;
+        private int phaseSpan;
+        private long triangleCount;
+        private MeshValidator.Report meshReport;
+
+        STLExportWorker(JFrame parent, BufferedImage sourceImage, File sourceFile, int sourceSeq,
+                        String sourceKey, String sourceDescription, File outputFile, STLExportSettings settings,
+                        JDialog progressDialog, List<TiledImage> layers, List<String> layerKeys) {
+            this.parent = parent;
+            this.sourceImage = sourceImage;
+            this.sourceFile = sourceFile;
+            this.sourceSeq = sourceSeq;
+            this.sourceKey = sourceKey;
+            this.sourceDescription = sourceDescription;
+            this.outputFile = outputFile;
+            this.settings = settings;
+            this.progressDialog = progressDialog;
+            this.layers = layers;
+            this.layerKeys = layerKeys;
+        }
 
-                    System.out.println("Voxel size: " + voxelSize + " mm (uniform cubes)");
+        void setStatusLabel(JLabel statusLabel) {
+            this.statusLabel = statusLabel;
+        }
 
-                    // Convert voxels to mesh
-                    VoxelToSTL converter = new VoxelToSTL(voxelData, voxelSize);
-                    List<Triangle> triangles = converter.convert();
+        @Override
+        protected Boolean doInBackground() throws Exception {
+            String cacheKey = null;
+            if (resultCache != null) {
+                boolean compressed = STLWriter.isCompressed(outputFile.getName());
+                if (layers != null) {
+                    cacheKey = layerKeys.contains(null) ? null : settings.layersCacheKey(layerKeys, compressed);
+                } else {
+                    cacheKey = sourceFile != null
+                            ? settings.cacheKey(ResultCache.fileKey(sourceFile), true, compressed)
+                            : sourceKey != null ? settings.cacheKey(sourceKey, false, compressed) : null;
+                }
+                if (cacheKey != null && resultCache.copyFile(cacheKey, outputFile)) {
+                    setProgress(100);
+                    return true;
+                }
+            }
 
-                    // Write to binary STL file (much smaller than ASCII)
-                    STLWriter.writeBinary(triangles, finalFile.getAbsolutePath());
+            long startTime = System.nanoTime();
+            List<Triangle> triangles = layers != null ? meshLayers() : meshImage();
+            if (triangles == null) {
+                return false;
+            }
 
-                    long totalTime = (System.nanoTime() - startTime) / 1_000_000;
+            // Check the mesh is closed and manifold now rather than in the slicer
+            publish("Checking mesh...");
+            meshReport = MeshValidator.validate(triangles);
 
-                    System.out.println("\n========================================");
-                    System.out.println("CONVERSION COMPLETE - SUMMARY");
-                    System.out.println("========================================");
-                    System.out.println("Total triangles: " + triangles.size());
-                    System.out.println("Total time:      " + totalTime + " ms (" +
-                            String.format("%.2f", totalTime / 1000.0) + " seconds)");
-                    System.out.println("========================================");
+            // Write to binary STL file (much smaller than ASCII); the output file is only
+            // touched from here on
+            if (isCancelled()) {
+                return false;
+            }
+            phaseStart = 60;
+            phaseSpan = 40;
+            STLWriter.writeBinary(triangles, outputFile.getAbsolutePath(), this);
+            if (cacheKey != null) {
+                resultCache.putFile(cacheKey, outputFile);
+            }
 
-                    return true;
-                }
+            long totalTime = (System.nanoTime() - startTime) / 1_000_000;
 
-                @Override
-                protected void done() {
-                    progressDialog.dispose();
-                    try {
-                        boolean success = get();
-                        if (success) {
-                            showInfo(parent, "Successfully exported to:\n" + finalFile.getName(),
-                                    "Export Complete - Clipped to " + pixelClipping + "x" + pixelClipping);
-                            logFunction("Export to STL - Source " + sourceNumber + " - " + finalFile.getName() +
-                                    " (" + width + " x " + height + " x " + thickness + "mm)"
-                                    + " Clipped to " + pixelClipping + "x" + pixelClipping);
-                        } else {
-                            showError(parent, "Failed to export STL file", "Export Error");
-                        }
-                    } catch (Exception ex) {
-                        showError(parent, "Error exporting STL: " + ex.getMessage(), "Export Error");
-                        ex.printStackTrace();
-                    }
-                }
-            };
+            System.out.println("\n========================================");
+            System.out.println("CONVERSION COMPLETE - SUMMARY");
+            System.out.println("========================================");
+            System.out.println("Total triangles: " + triangles.size());
+            System.out.println("Total time:      " + totalTime + " ms (" +
+                    String.format("%.2f", totalTime / 1000.0) + " seconds)");
+            System.out.println("========================================");
 
-            worker.execute();
-            progressDialog.setVisible(true);
+            return true;
         }
-    }
 
-    /**
-     * Convert a 2D RGB image to a 3D boolean voxel array.
-     * The brightness of each pixel determines its height in the Z dimension.
-     *
-     * @param workImage     2D RGB image [height][width][RGB]
-     * @param invertHeights If true, black=tallest and white=shortest; if false,
-     *                      white=tallest and black=shortest
-     * @param flipLeftRight If true, flip the image horizontally (mirror left-right)
-     * @return 3D voxel array [width][height][depth] where false=empty, true=filled
-     */
-    private boolean[][][] convertImageToVoxels(BufferedImage workImage, boolean invertHeights, boolean flipLeftRight,
-            int pixelClipping) {
-        long conversionStart = System.nanoTime();
+        /**
+         * Height map and mesh of the source image or file, or null if cancelled.
+         */
+        private List<Triangle> meshImage() throws IOException {
+            BufferedImage workImage = sourceImage;
+            if (workImage == null) {
+                publish("Decoding " + sourceFile.getName() + "...");
+                workImage = SubsampledImageReader.read(sourceFile, settings.getPixelClipping(),
+                        settings.getPixelClipping());
+            }
 
-        BufferedImage rgbImage = ImageProcessingFunctions.scaleClipping(workImage, pixelClipping, pixelClipping);
-        int imgHeight = rgbImage.getHeight();
-        int imgWidth = rgbImage.getWidth();
+            // Convert 2D RGB image to a height map (2 bytes per pixel at any Z precision)
+            publish("Converting image to height map...");
+            System.out.println("\n--- IMAGE TO HEIGHT MAP CONVERSION ---");
+            long heightStart = System.nanoTime();
+            HeightMap heightMap = settings.toHeightMap(workImage);
+            workImage = null;
+            long heightTime = (System.nanoTime() - heightStart) / 1_000_000;
+            System.out.println("[TIMING] Image to height map conversion: " + heightTime + " ms");
+            setProgress(10);
+            if (isCancelled()) {
+                return null;
+            }
 
-        // Determine max depth based on the brightest pixel
-        int maxDepth = 64; // Default depth for voxel extrusion
+            System.out.println("\n========================================");
+            System.out.println("STARTING STL CONVERSION WITH TIMING");
+            System.out.println("========================================");
+            System.out.println("Target dimensions: " + settings.getWidth() + " x " + settings.getHeight() + " x "
+                    + settings.getThickness() + " mm");
 
-        System.out.println("Converting " + imgWidth + " x " + imgHeight +
-                " image to voxel array (depth: " + maxDepth + ")");
-        System.out.println("Height mapping: " + (invertHeights ? "White = Highest" : "Black = Highest (default)"));
-        System.out.println("Horizontal flip: " + (flipLeftRight ? "Enabled" : "Disabled (mirrored by default)"));
+            // Calculate voxel size based on target dimensions (uniform cubes)
+            float voxelSize = settings.voxelSize(heightMap);
 
-        // Create voxel array [x][y][z]
-        long allocStart = System.nanoTime();
-        boolean[][][] voxels = new boolean[imgWidth][imgHeight][maxDepth];
-        long allocTime = (System.nanoTime() - allocStart) / 1_000_000;
-        System.out.println("  Array allocation: " + allocTime + " ms");
+            System.out.println("Voxel size: " + voxelSize + " mm (uniform cubes)");
 
-        // Convert each pixel to a column of voxels
-        long processStart = System.nanoTime();
-        int totalVoxelsFilled = 0;
+            // Convert height map to mesh - the highest level is one voxel size tall,
+            // the same scale as the classic 64-layer voxel extrusion
+            phaseStart = 10;
+            phaseSpan = 50;
+            VoxelToSTL converter = settings.mesher(heightMap);
+            return converter.convert(this);
+        }
 
-        for (int y = 0; y < imgHeight; y++) {
-            for (int x = 0; x < imgWidth; x++) {
+        /**
+         * Height maps of the layers, converted one image at a time (progress 0-10%), meshed
+         * as a stack; null if cancelled.
+         */
+        private List<Triangle> meshLayers() {
+            System.out.println("\n--- LAYERS TO HEIGHT MAPS CONVERSION ---");
+            long heightStart = System.nanoTime();
+            List<HeightMap> heightMaps = new ArrayList<>();
+            for (int i = 0; i < layers.size(); i++) {
+                publish("Converting layer " + (i + 1) + " of " + layers.size() + " to height map...");
+                heightMaps.add(settings.toHeightMap(layers.get(i).toImage()));
+                setProgress(10 * (i + 1) / layers.size());
+                if (isCancelled()) {
+                    return null;
+                }
+            }
+            long heightTime = (System.nanoTime() - heightStart) / 1_000_000;
+            System.out.println("[TIMING] Layers to height maps conversion: " + heightTime + " ms");
 
-                int rgb = rgbImage.getRGB(x, y);
+            System.out.println("\n========================================");
+            System.out.println("STARTING LAYERED STL CONVERSION WITH TIMING");
+            System.out.println("========================================");
+            System.out.println("Layers: " + layers.size() + ", target dimensions per layer: " + settings.getWidth() +
+                    " x " + settings.getHeight() + " x " + settings.getThickness() + " mm");
 
-                int r = (rgb >> 16) & 0xFF;
-                int g = (rgb >> 8) & 0xFF;
-                int b = rgb & 0xFF;
+            phaseStart = 10;
+            phaseSpan = 50;
+            RunLengthToSTL converter = settings.layeredMesher(heightMaps);
+            return converter.convert(this);
+        }
 
-                // Calculate brightness (0-255)
-                int brightness = (r + g + b) / 3;
+        private String operationName() {
+            return layers != null ? "Export Layers to STL" : "Export to STL";
+        }
 
-                // By default, invert so black = highest (255 - brightness)
-                // If invertHeights is checked, keep original (white = highest)
-                if (!invertHeights) {
-                    brightness = 255 - brightness;
-                }
+        /**
+         * Settings parameters, plus the number of layers for a layered export (the log text
+         * names their sequence numbers).
+         */
+        private Map<String, String> logParameters() {
+            Map<String, String> parameters = settings.toParameters();
+            if (layers != null) {
+                parameters.put("layers", String.valueOf(layers.size()));
+            }
+            return parameters;
+        }
 
-                // Map brightness to voxel depth (0-255 -> 0-maxDepth)
-                int depth = (brightness * maxDepth) / 256;
+        // ===== ConversionListener (called on the worker thread) =====
 
-                // Calculate voxel X coordinate (flip if NOT requested - fixes backwards
-                // behavior)
-                int voxelX = flipLeftRight ? x : (imgWidth - 1 - x);
+        @Override
+        public void rowsProcessed(int rows, int totalRows) {
+            setProgress(phaseStart + (int) ((long) phaseSpan * rows / Math.max(1, totalRows)));
+        }
 
-                // Fill voxels from bottom to depth
-                for (int z = 0; z < depth; z++) {
-                    voxels[voxelX][y][z] = true;
-                    totalVoxelsFilled++;
-                }
+        @Override
+        public void trianglesEmitted(long count) {
+            if (count - triangleCount >= 100_000 || count < triangleCount) {
+                triangleCount = count;
+                publish(String.format("Generating mesh... %,d triangles", count));
             }
         }
-        long processTime = (System.nanoTime() - processStart) / 1_000_000;
 
-        long totalTime = (System.nanoTime() - conversionStart) / 1_000_000;
+        @Override
+        public void bytesWritten(long bytes, long totalBytes) {
+            if (totalBytes > 0) {
+                setProgress(phaseStart + (int) (phaseSpan * bytes / totalBytes));
+                publish(String.format("Writing STL... %.1f / %.1f MB",
+                        bytes / (1024.0 * 1024.0), totalBytes / (1024.0 * 1024.0)));
+            }
+        }
 
-        int totalPossibleVoxels = imgWidth * imgHeight * maxDepth;
-        double fillPercentage = (totalVoxelsFilled * 100.0) / totalPossibleVoxels;
+        // isCancelled() from SwingWorker satisfies ConversionListener.isCancelled()
 
-        System.out.println("  Pixel processing: " + processTime + " ms");
-        System.out.println("  Total voxels filled: " + totalVoxelsFilled + " / " +
-                totalPossibleVoxels + " (" + String.format("%.1f", fillPercentage) + "%)");
-        System.out.println("  Total conversion time: " + totalTime + " ms");
+        @Override
+        protected void process(List<String> messages) {
+            if (statusLabel != null && !isCancelled()) {
+                statusLabel.setText(messages.get(messages.size() - 1));
+            }
+        }
 
-        return voxels;
+        @Override
+        protected void done() {
+            progressDialog.dispose();
+            if (isCancelled()) {
+                // The worker may still be running (cancel(false)); the writer removes its own
+                // partial file when it sees the cancel
+                System.out.println("STL export cancelled");
+                return;
+            }
+            try {
+                boolean success = get();
+                if (success && meshReport != null && !meshReport.isValid()) {
+                    showWarning(parent, "Exported to:\n" + outputFile.getName() + "\n\nThe mesh may not print " +
+                            "correctly: " + meshReport.getProblems(), "Export Complete - Mesh Problems");
+                    logEntry(LogEntry.event(operationName(), sourceSeq, logParameters(),
+                            sourceDescription + " - " + outputFile.getName() + " " + settings + " - " +
+                                    meshReport.getProblems()));
+                } else if (success) {
+                    showInfo(parent, "Successfully exported to:\n" + outputFile.getName(),
+                            "Export Complete - Clipped to " + settings.getPixelClipping() + "x"
+                                    + settings.getPixelClipping());
+                    logEntry(LogEntry.event(operationName(), sourceSeq, logParameters(),
+                            sourceDescription + " - " + outputFile.getName() + " " + settings));
+                } else {
+                    showError(parent, "Failed to export STL file", "Export Error");
+                }
+            } catch (Exception ex) {
+                showError(parent, "Error exporting STL: " + ex.getMessage(), "Export Error");
+                ex.printStackTrace();
+            }
+        }
     }
 
     // ===== Log Management =====
@@ -498,30 +1283,10 @@ public class ImageProcessorApp {
         try {
             int line = logArea.getLineOfOffset(caretPosition);
             if (line < functionLog.size()) {
-                String logEntry = functionLog.getEntry(line);
-                int selectedSeq = functionLog.extractSequenceNumber(logEntry);
-
-                if (selectedSeq > 0) {
-                    BufferedImage image = imageData.getImageBySequence(selectedSeq);
-                    if (image != null) {
-                        imageData.setCurrentSequenceNumber(selectedSeq);
-                        // Update source label to show selection
-                        controlPanel.setSourceText(logEntry);
-
-                        // If window was closed, reopen it
-                        if (!windowManager.isWindowOpen(selectedSeq)) {
-                            String functionName = functionLog.extractFunctionName(logEntry);
-                            int sourceSeq = functionLog.extractSourceSequence(logEntry);
-                            windowManager.createAndShowWindow(image, functionName, selectedSeq, sourceSeq);
-                        } else {
-                            // Window is already open, bring it to front
-                            ImageDisplayWindow window = windowManager.getWindow(selectedSeq);
-                            if (window != null) {
-                                window.toFront();
-                                window.requestFocus();
-                            }
-                        }
-                    }
+                LogEntry entry = functionLog.getEntry(line);
+                if (entry != null && entry.createsImage() && imageData.getTiles(entry.getSequence()) != null) {
+                    imageData.setCurrentSequenceNumber(entry.getSequence());
+                    showSelectedImage(entry.getSequence());
                 }
             }
         } catch (Exception e) {
@@ -529,13 +1294,66 @@ public class ImageProcessorApp {
         }
     }
 
-    private void logFunction(String entry) {
+    // ===== Undo/Redo =====
+
+    public void undo(JFrame parent) {
+        int seq = imageData.undo();
+        if (seq > 0) {
+            showSelectedImage(seq);
+        }
+    }
+
+    public void redo(JFrame parent) {
+        int seq = imageData.redo();
+        if (seq > 0) {
+            showSelectedImage(seq);
+        }
+    }
+
+    /**
+     * Show the now-current image as the source: update the label and bring its window to
+     * front, reopening it if it was closed.
+     */
+    private void showSelectedImage(int seq) {
+        LogEntry entry = functionLog.getEntryForSequence(seq);
+        if (entry == null) {
+            return;
+        }
+        updateSourceLabel(entry);
+        updateSessionIndex();
+
+        if (!windowManager.isWindowOpen(seq)) {
+            windowManager.createAndShowWindow(imageData.getImageBySequence(seq), entry.getDisplayName(), seq,
+                    entry.getSourceSequence());
+        } else {
+            // Window is already open, bring it to front
+            ImageDisplayWindow window = windowManager.getWindow(seq);
+            if (window != null) {
+                window.toFront();
+                window.requestFocus();
+            }
+        }
+    }
+
+    private void logEntry(LogEntry entry) {
         functionLog.addEntry(entry);
-        controlPanel.appendToLog(entry);
+        controlPanel.appendToLog(entry.toText());
+        updateSessionIndex();
     }
 
-    private void updateSourceLabel(String logData) {
-        controlPanel.setSourceText(logData);
+    private void updateSourceLabel(LogEntry entry) {
+        controlPanel.setSourceText(entry.toText());
+    }
+
+    /**
+     * Ordered parameter map from name/value pairs, e.g. parameters("width", 640, "height", 480).
+     */
+    private static Map<String, String> parameters(Object... namesAndValues) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < namesAndValues.length; i += 2) {
+            parameters.put(String.valueOf(namesAndValues[i]), String.valueOf(namesAndValues[i + 1]));
+        }
+        return parameters;
     }
 
     // ===== Dialog Helpers =====
@@ -1,14 +1,32 @@
 package imageManipulation;
 
 import javax.swing.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Main entry point for the Image Processor application.
- * Launches the imageManipulation.ImageProcessorApp on the Event Dispatch Thread.
+ * Launches the imageManipulation.ImageProcessorApp on the Event Dispatch Thread, or runs
+ * headlessly: --recipe applies a recipe to image files, --serve starts the local
+ * conversion service (see ConversionServer).
+ * <pre>
+ *   --recipe FILE.recipe --output DIR [--threads N] [--no-cache] [--gzip] IMAGE...
+ *   --serve [PORT]
+ * </pre>
  */
 public class ImageProcessorMain {
     
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--recipe")) {
+            System.exit(runRecipe(args));
+        }
+        if (args.length > 0 && args[0].equals("--serve")) {
+            serve(args);
+            return;
+        }
+
         SwingUtilities.invokeLater(() -> {
             try {
                 // Set system look and feel for better integration
@@ -22,4 +40,87 @@ public class ImageProcessorMain {
             app.start();
         });
     }
+
+    /**
+     * Start the conversion server; it runs until the process is stopped.
+     */
+    private static void serve(String[] args) {
+        try {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : ConversionServer.DEFAULT_PORT;
+            new ConversionServer(port, ResultCache.getDefault()).start();
+        } catch (NumberFormatException ex) {
+            System.err.println("Usage: --serve [PORT]");
+            System.exit(2);
+        } catch (IOException ex) {
+            System.err.println("Cannot start server: " + ex.getMessage());
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Headless recipe run; returns the process exit code (0 if every image succeeded).
+     */
+    private static int runRecipe(String[] args) {
+        File recipeFile = null;
+        File outputDir = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean useCache = true;
+        boolean gzip = false;
+        List<File> inputs = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--recipe":
+                        recipeFile = new File(args[++i]);
+                        break;
+                    case "--output":
+                        outputDir = new File(args[++i]);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--no-cache":
+                        useCache = false;
+                        break;
+                    case "--gzip":
+                        gzip = true;
+                        break;
+                    default:
+                        inputs.add(new File(args[i]));
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException ex) {
+            recipeFile = null;
+        }
+        if (recipeFile == null || outputDir == null || inputs.isEmpty()) {
+            System.err.println("Usage: --recipe FILE.recipe --output DIR [--threads N] [--no-cache] [--gzip] " +
+                    "IMAGE...");
+            return 2;
+        }
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            System.err.println("Cannot create output directory " + outputDir);
+            return 2;
+        }
+
+        try {
+            Recipe recipe = Recipe.load(recipeFile);
+            System.out.println("Recipe: " + recipe);
+            ResultCache cache = useCache ? ResultCache.getDefault() : null;
+            int failed = new RecipeRunner(recipe, threads, cache, gzip).run(inputs, outputDir,
+                    (input, output, error, finished, total) -> System.out.println(finished + "/" + total + " " +
+                            input.getName() + (error == null ? " -> " + output.getName()
+                            : " FAILED: " + error.getMessage())));
+            System.out.println((inputs.size() - failed) + " of " + inputs.size() + " images processed");
+            if (cache != null) {
+                System.out.println(cache.getStats());
+            }
+            return failed == 0 ? 0 : 1;
+        } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+            return 2;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
 }
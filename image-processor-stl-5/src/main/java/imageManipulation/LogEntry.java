@@ -0,0 +1,162 @@
+package imageManipulation;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One function log record. INPUT and OPERATION records create a history image (they have a
+ * sequence number); EVENT records (save, export) do not. Parameters are kept as ordered
+ * name/value strings so an operation can be replayed from its record.
+ */
+public class LogEntry {
+
+    public enum Kind {
+        INPUT, OPERATION, EVENT
+    }
+
+    private final Kind kind;
+    private final String operation;
+    private final int sequence;
+    private final int sourceSequence;
+    private final int width;
+    private final int height;
+    private final Map<String, String> parameters;
+    private final long timeMillis;
+    private final String detail;
+
+    public LogEntry(Kind kind, String operation, int sequence, int sourceSequence, int width, int height,
+                    Map<String, String> parameters, long timeMillis, String detail) {
+        this.kind = kind;
+        this.operation = operation;
+        this.sequence = sequence;
+        this.sourceSequence = sourceSequence;
+        this.width = width;
+        this.height = height;
+        this.parameters = Collections.unmodifiableMap(new LinkedHashMap<>(parameters));
+        this.timeMillis = timeMillis;
+        this.detail = detail;
+    }
+
+    /**
+     * The loaded image, always sequence 1.
+     */
+    public static LogEntry input(int sequence, String fileName, int width, int height) {
+        return new LogEntry(Kind.INPUT, "Input", sequence, 0, width, height, Collections.emptyMap(), -1, fileName);
+    }
+
+    /**
+     * An operation that produced image sequence from sourceSequence.
+     *
+     * @param timeMillis processing time, or -1 if unknown
+     */
+    public static LogEntry operation(String operation, Map<String, String> parameters, int sequence,
+                                     int sourceSequence, int width, int height, long timeMillis) {
+        return new LogEntry(Kind.OPERATION, operation, sequence, sourceSequence, width, height, parameters,
+                timeMillis, null);
+    }
+
+    /**
+     * Something that happened without creating an image (save, export).
+     */
+    public static LogEntry event(String operation, String detail) {
+        return event(operation, 0, Collections.emptyMap(), detail);
+    }
+
+    /**
+     * An event on image sourceSequence (0 if none) with recorded parameters, e.g. an STL export.
+     */
+    public static LogEntry event(String operation, int sourceSequence, Map<String, String> parameters,
+                                 String detail) {
+        return new LogEntry(Kind.EVENT, operation, -1, sourceSequence, 0, 0, parameters, -1, detail);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * Sequence number of the image this record created, or -1 for events.
+     */
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Sequence number of the source image, or 0 for input and events without one.
+     */
+    public int getSourceSequence() {
+        return sourceSequence;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public Map<String, String> getParameters() {
+        return parameters;
+    }
+
+    public String getParameter(String name) {
+        return parameters.get(name);
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public String getDetail() {
+        return detail;
+    }
+
+    public boolean createsImage() {
+        return kind != Kind.EVENT;
+    }
+
+    /**
+     * Operation name with its parameters, e.g. "Blur (sigma 2.0)"; used as window title.
+     */
+    public String getDisplayName() {
+        if (parameters.isEmpty()) {
+            return operation;
+        }
+        StringBuilder name = new StringBuilder(operation).append(" (");
+        boolean first = true;
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            if (!first) {
+                name.append(", ");
+            }
+            name.append(parameter.getKey()).append(' ').append(parameter.getValue());
+            first = false;
+        }
+        return name.append(')').toString();
+    }
+
+    /**
+     * One-line text for the log view, e.g. "Posterize - 3 (from 2) - 500 x 400 - 85 ms".
+     */
+    public String toText() {
+        switch (kind) {
+            case INPUT:
+                return operation + " - " + sequence + " ( " + detail + " ) - " + width + " x " + height;
+            case OPERATION:
+                return getDisplayName() + " - " + sequence + " (from " + sourceSequence + ") - " + width + " x "
+                        + height + (timeMillis >= 0 ? " - " + timeMillis + " ms" : "");
+            default:
+                return operation + " - " + detail;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toText();
+    }
+}
@@ -0,0 +1,153 @@
+package imageManipulation;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Display-only mip pyramid for one history image.
+ * Level 0 is the first halving of the source that fits MAX_LEVEL_RESOLUTION (or a plain copy
+ * when the source already fits); every following level halves the previous one with a
+ * 2x2 box filter down to MIN_LEVEL_RESOLUTION. Levels never reference the history image.
+ */
+public class MipPyramid {
+    static final int MAX_LEVEL_RESOLUTION = 2000; // Matches the largest display window
+    static final int MIN_LEVEL_RESOLUTION = 64;
+    private static final int BAND_ROWS = 32;
+
+    private final BufferedImage[] levels;
+    private final int sourceWidth;
+    private final int sourceHeight;
+    private final long sizeBytes;
+
+    private MipPyramid(BufferedImage[] levels, int sourceWidth, int sourceHeight) {
+        this.levels = levels;
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+
+        long bytes = 0;
+        for (BufferedImage level : levels) {
+            bytes += (long) level.getWidth() * level.getHeight() * 4;
+        }
+        this.sizeBytes = bytes;
+    }
+
+    /**
+     * Build all levels for the given source image.
+     */
+    public static MipPyramid build(BufferedImage source) {
+        long start = System.nanoTime();
+        List<BufferedImage> levels = new ArrayList<>();
+
+        BufferedImage level;
+        if (source.getWidth() <= MAX_LEVEL_RESOLUTION && source.getHeight() <= MAX_LEVEL_RESOLUTION) {
+            // Copy to break the reference to the full-resolution history image
+            level = ImageProcessingFunctions.copyBufferedImage(source);
+        } else {
+            level = halve(source);
+            while (level.getWidth() > MAX_LEVEL_RESOLUTION || level.getHeight() > MAX_LEVEL_RESOLUTION) {
+                level = halve(level);
+            }
+        }
+        levels.add(level);
+
+        while (level.getWidth() > MIN_LEVEL_RESOLUTION && level.getHeight() > MIN_LEVEL_RESOLUTION) {
+            level = halve(level);
+            levels.add(level);
+        }
+
+        long time = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("[TIMING] Mip pyramid (" + levels.size() + " levels, level 0 " +
+                levels.get(0).getWidth() + "x" + levels.get(0).getHeight() + "): " + time + " ms");
+
+        return new MipPyramid(levels.toArray(new BufferedImage[0]), source.getWidth(), source.getHeight());
+    }
+
+    /**
+     * Pick the smallest level that still covers the target size, so drawing only ever
+     * scales down by less than 2x. Falls back to level 0 when the target is larger.
+     */
+    public BufferedImage levelFor(int targetWidth, int targetHeight) {
+        for (int i = levels.length - 1; i > 0; i--) {
+            BufferedImage level = levels[i];
+            if (level.getWidth() >= targetWidth && level.getHeight() >= targetHeight) {
+                return level;
+            }
+        }
+        return levels[0];
+    }
+
+    public BufferedImage getLevel(int index) {
+        return levels[index];
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public int getSourceWidth() {
+        return sourceWidth;
+    }
+
+    public int getSourceHeight() {
+        return sourceHeight;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    /**
+     * Halve an image with a 2x2 box filter, processing row bands in parallel.
+     * Odd trailing rows/columns are averaged with themselves.
+     */
+    static BufferedImage halve(BufferedImage source) {
+        int srcWidth = source.getWidth();
+        int srcHeight = source.getHeight();
+        int dstWidth = Math.max(1, (srcWidth + 1) / 2);
+        int dstHeight = Math.max(1, (srcHeight + 1) / 2);
+
+        boolean alpha = source.getColorModel().hasAlpha();
+        BufferedImage dst = new BufferedImage(dstWidth, dstHeight,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        int[] dstPixels = ((DataBufferInt) dst.getRaster().getDataBuffer()).getData();
+
+        int bands = (dstHeight + BAND_ROWS - 1) / BAND_ROWS;
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            int[] row0 = new int[srcWidth];
+            int[] row1 = new int[srcWidth];
+            int yEnd = Math.min(dstHeight, (band + 1) * BAND_ROWS);
+
+            for (int y = band * BAND_ROWS; y < yEnd; y++) {
+                int sy0 = 2 * y;
+                int sy1 = Math.min(sy0 + 1, srcHeight - 1);
+                source.getRGB(0, sy0, srcWidth, 1, row0, 0, srcWidth);
+                source.getRGB(0, sy1, srcWidth, 1, row1, 0, srcWidth);
+
+                int out = y * dstWidth;
+                for (int x = 0; x < dstWidth; x++) {
+                    int sx0 = 2 * x;
+                    int sx1 = Math.min(sx0 + 1, srcWidth - 1);
+                    dstPixels[out + x] = average4(row0[sx0], row0[sx1], row1[sx0], row1[sx1]);
+                }
+            }
+        });
+
+        return dst;
+    }
+
+    /**
+     * Rounded per-channel average of four ARGB pixels. Red/blue and alpha/green are summed
+     * two channels at a time; each 10-bit sum stays inside its 16-bit lane.
+     */
+    private static int average4(int p0, int p1, int p2, int p3) {
+        int rb = (p0 & 0x00FF00FF) + (p1 & 0x00FF00FF) + (p2 & 0x00FF00FF) + (p3 & 0x00FF00FF);
+        int ag = ((p0 >>> 8) & 0x00FF00FF) + ((p1 >>> 8) & 0x00FF00FF)
+                + ((p2 >>> 8) & 0x00FF00FF) + ((p3 >>> 8) & 0x00FF00FF);
+        rb = ((rb + 0x00020002) >>> 2) & 0x00FF00FF;
+        ag = ((ag + 0x00020002) >>> 2) & 0x00FF00FF;
+        return (ag << 8) | rb;
+    }
+}
@@ -0,0 +1,145 @@
+package imageManipulation;
+
+import java.awt.image.BufferedImage;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-sequence cache of display mip pyramids with a total size budget.
+ * Least recently used pyramids are evicted first. Open windows pin their pyramid
+ * (acquire / release): pinned pyramids are never evicted and still count against the
+ * budget, also once they have left the cache (replaced or cleared), so the budget bounds
+ * all display memory rather than just the unused part.
+ */
+public class MipPyramidCache {
+    private static final long MAX_BUDGET_BYTES = 256L * 1024 * 1024;
+
+    private final LinkedHashMap<Integer, MipPyramid> pyramids;
+    private final IdentityHashMap<MipPyramid, Integer> pins; // Open windows per pyramid
+    private final long budgetBytes;
+    private long totalBytes;    // Pyramids in the cache
+    private long detachedBytes; // Pinned pyramids no longer in the cache
+
+    public MipPyramidCache() {
+        // Never let display copies take more than an eighth of the heap
+        this(Math.min(MAX_BUDGET_BYTES, Runtime.getRuntime().maxMemory() / 8));
+    }
+
+    public MipPyramidCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        this.pyramids = new LinkedHashMap<>(16, 0.75f, true); // Access order for LRU
+        this.pins = new IdentityHashMap<>();
+    }
+
+    /**
+     * Get or build the pyramid for a sequence number and pin it until release().
+     */
+    public MipPyramid acquire(int seqNum, BufferedImage image) {
+        MipPyramid pyramid = getOrBuild(seqNum, image);
+        synchronized (this) {
+            Integer count = pins.get(pyramid);
+            if (count == null && pyramids.get(seqNum) != pyramid) {
+                detachedBytes += pyramid.getSizeBytes(); // Evicted in the meantime
+            }
+            pins.put(pyramid, count == null ? 1 : count + 1);
+            if (totalBytes + detachedBytes > budgetBytes) {
+                System.out.println("[MIP CACHE] Open windows use " + (totalBytes + detachedBytes) / (1024 * 1024) +
+                        " MB of display pyramids, over the " + budgetBytes / (1024 * 1024) + " MB budget");
+            }
+        }
+        return pyramid;
+    }
+
+    /**
+     * Unpin a pyramid from acquire(); it becomes evictable when no window uses it.
+     */
+    public synchronized void release(int seqNum, MipPyramid pyramid) {
+        Integer count = pins.get(pyramid);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            pins.put(pyramid, count - 1);
+            return;
+        }
+        pins.remove(pyramid);
+        if (pyramids.get(seqNum) != pyramid) {
+            detachedBytes -= pyramid.getSizeBytes();
+        }
+        evictOverBudget(-1);
+    }
+
+    /**
+     * Get the pyramid for a sequence number, building it from the image if not cached.
+     * Building happens outside the lock so callers on other threads are not blocked.
+     */
+    public MipPyramid getOrBuild(int seqNum, BufferedImage image) {
+        MipPyramid pyramid = get(seqNum);
+        if (pyramid != null) {
+            return pyramid;
+        }
+
+        MipPyramid built = MipPyramid.build(image);
+        synchronized (this) {
+            MipPyramid existing = pyramids.get(seqNum);
+            if (existing != null) {
+                return existing;
+            }
+            pyramids.put(seqNum, built);
+            totalBytes += built.getSizeBytes();
+            evictOverBudget(seqNum);
+        }
+        return built;
+    }
+
+    /**
+     * Store a pyramid that was built ahead of time (e.g. on a worker thread).
+     */
+    public synchronized void put(int seqNum, MipPyramid pyramid) {
+        MipPyramid previous = pyramids.put(seqNum, pyramid);
+        if (previous != null) {
+            totalBytes -= previous.getSizeBytes();
+            if (pins.containsKey(previous)) {
+                detachedBytes += previous.getSizeBytes();
+            }
+        }
+        totalBytes += pyramid.getSizeBytes();
+        evictOverBudget(seqNum);
+    }
+
+    public synchronized MipPyramid get(int seqNum) {
+        return pyramids.get(seqNum);
+    }
+
+    public synchronized void clear() {
+        for (MipPyramid pyramid : pyramids.values()) {
+            if (pins.containsKey(pyramid)) {
+                detachedBytes += pyramid.getSizeBytes();
+            }
+        }
+        pyramids.clear();
+        totalBytes = 0;
+    }
+
+    /**
+     * Bytes of all cached and pinned pyramids.
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes + detachedBytes;
+    }
+
+    private void evictOverBudget(int keepSeqNum) {
+        Iterator<Map.Entry<Integer, MipPyramid>> it = pyramids.entrySet().iterator();
+        while (totalBytes + detachedBytes > budgetBytes && it.hasNext()) {
+            Map.Entry<Integer, MipPyramid> eldest = it.next();
+            if (eldest.getKey() == keepSeqNum || pins.containsKey(eldest.getValue())) {
+                continue;
+            }
+            totalBytes -= eldest.getValue().getSizeBytes();
+            it.remove();
+            System.out.println("[MIP CACHE] Evicted pyramid for image " + eldest.getKey());
+        }
+    }
+}
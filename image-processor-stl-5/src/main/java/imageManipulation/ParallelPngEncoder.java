@@ -0,0 +1,337 @@
+package imageManipulation;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * PNG encoder that filters and deflates independent row bands in parallel.
+ * Each band gets its own raw Deflater ending in a SYNC_FLUSH (the last one in a final block),
+ * so the concatenated bands form one valid zlib stream; per-band Adler-32 checksums are
+ * combined for the stream trailer. Compression is slightly worse than a single deflate
+ * stream (no dictionary across bands) but throughput scales with cores.
+ */
+public class ParallelPngEncoder {
+    private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+    private static final int TARGET_BAND_BYTES = 512 * 1024; // Raw bytes per band before deflate
+    private static final int ADLER_BASE = 65521;
+
+    private static final int COLOR_GRAY = 0;
+    private static final int COLOR_RGB = 2;
+    private static final int COLOR_RGBA = 6;
+
+    /**
+     * Write the image as PNG with the given deflate level (0-9).
+     */
+    public static void write(BufferedImage image, File file, int compressionLevel) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+            write(image, out, compressionLevel);
+        }
+    }
+
+    /**
+     * Write the image as PNG to a stream. The stream is not closed.
+     */
+    public static void write(BufferedImage image, OutputStream out, int compressionLevel) throws IOException {
+        long startTime = System.nanoTime();
+        int level = Math.max(Deflater.NO_COMPRESSION, Math.min(Deflater.BEST_COMPRESSION, compressionLevel));
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int colorType = colorTypeOf(image);
+        boolean gray16 = ImageProcessingFunctions.isGray16(image);
+        int bytesPerPixel = gray16 ? 2 : colorType == COLOR_GRAY ? 1 : colorType == COLOR_RGB ? 3 : 4;
+        int rowBytes = width * bytesPerPixel;
+
+        int bandRows = Math.max(1, TARGET_BAND_BYTES / (rowBytes + 1));
+        int bandCount = (height + bandRows - 1) / bandRows;
+
+        List<CompletableFuture<Band>> futures = new ArrayList<>(bandCount);
+        for (int band = 0; band < bandCount; band++) {
+            int y0 = band * bandRows;
+            int y1 = Math.min(height, y0 + bandRows);
+            boolean last = band == bandCount - 1;
+            futures.add(CompletableFuture.supplyAsync(
+                    () -> encodeBand(image, colorType, bytesPerPixel, y0, y1, level, last)));
+        }
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(SIGNATURE);
+
+        ByteArrayOutputStream ihdr = new ByteArrayOutputStream(13);
+        DataOutputStream ihdrData = new DataOutputStream(ihdr);
+        ihdrData.writeInt(width);
+        ihdrData.writeInt(height);
+        ihdrData.writeByte(gray16 ? 16 : 8); // Bit depth
+        ihdrData.writeByte(colorType);
+        ihdrData.writeByte(0);          // Deflate
+        ihdrData.writeByte(0);          // Adaptive filtering
+        ihdrData.writeByte(0);          // No interlace
+        writeChunk(data, "IHDR", ihdr.toByteArray(), 0, ihdr.size());
+
+        // Bands are written in order as they complete; later bands keep compressing meanwhile
+        long adler = 1;
+        long compressedBytes = 0;
+        for (int band = 0; band < bandCount; band++) {
+            Band encoded = join(futures.get(band));
+            adler = band == 0 ? encoded.adler : adler32Combine(adler, encoded.adler, encoded.rawLength);
+
+            byte[] payload = encoded.compressed;
+            int length = encoded.compressedLength;
+            if (band == 0) {
+                byte[] withHeader = new byte[length + 2];
+                withHeader[0] = 0x78;
+                withHeader[1] = zlibFlags(level);
+                System.arraycopy(payload, 0, withHeader, 2, length);
+                payload = withHeader;
+                length += 2;
+            }
+            if (band == bandCount - 1) {
+                byte[] withTrailer = new byte[length + 4];
+                System.arraycopy(payload, 0, withTrailer, 0, length);
+                withTrailer[length] = (byte) (adler >>> 24);
+                withTrailer[length + 1] = (byte) (adler >>> 16);
+                withTrailer[length + 2] = (byte) (adler >>> 8);
+                withTrailer[length + 3] = (byte) adler;
+                payload = withTrailer;
+                length += 4;
+            }
+            writeChunk(data, "IDAT", payload, 0, length);
+            compressedBytes += length;
+        }
+
+        writeChunk(data, "IEND", new byte[0], 0, 0);
+        data.flush();
+
+        long time = (System.nanoTime() - startTime) / 1_000_000;
+        System.out.println("[TIMING] Parallel PNG encode (" + width + "x" + height + ", " + bandCount +
+                " bands, level " + level + ", " + compressedBytes / 1024 + " KB): " + time + " ms");
+    }
+
+    private static class Band {
+        final byte[] compressed;
+        final int compressedLength;
+        final long adler;
+        final long rawLength;
+
+        Band(byte[] compressed, int compressedLength, long adler, long rawLength) {
+            this.compressed = compressed;
+            this.compressedLength = compressedLength;
+            this.adler = adler;
+            this.rawLength = rawLength;
+        }
+    }
+
+    /**
+     * Filter rows y0..y1-1 (using row y0-1 as the "previous" row) and deflate them.
+     */
+    private static Band encodeBand(BufferedImage image, int colorType, int bytesPerPixel,
+                                   int y0, int y1, int level, boolean last) {
+        int width = image.getWidth();
+        int rowBytes = width * bytesPerPixel;
+        int[] pixels = new int[width];
+
+        byte[] prior = new byte[rowBytes];
+        byte[] current = new byte[rowBytes];
+        if (y0 > 0) {
+            readRow(image, colorType, y0 - 1, pixels, prior);
+        }
+
+        byte[] raw = new byte[(y1 - y0) * (rowBytes + 1)];
+        byte[][] candidates = new byte[5][rowBytes];
+        int pos = 0;
+        for (int y = y0; y < y1; y++) {
+            readRow(image, colorType, y, pixels, current);
+            int filter = level == Deflater.NO_COMPRESSION ? 0
+                    : chooseFilter(current, prior, bytesPerPixel, candidates);
+            raw[pos++] = (byte) filter;
+            System.arraycopy(filter == 0 ? current : candidates[filter], 0, raw, pos, rowBytes);
+            pos += rowBytes;
+
+            byte[] swap = prior;
+            prior = current;
+            current = swap;
+        }
+
+        Adler32 adler = new Adler32();
+        adler.update(raw, 0, raw.length);
+
+        Deflater deflater = new Deflater(level, true);
+        deflater.setInput(raw);
+        if (last) {
+            deflater.finish();
+        }
+        byte[] out = new byte[Math.max(64, raw.length / 2)];
+        int length = 0;
+        while (true) {
+            if (length == out.length) {
+                byte[] grown = new byte[out.length * 2];
+                System.arraycopy(out, 0, grown, 0, length);
+                out = grown;
+            }
+            int n = last ? deflater.deflate(out, length, out.length - length)
+                    : deflater.deflate(out, length, out.length - length, Deflater.SYNC_FLUSH);
+            length += n;
+            // A flush is complete once deflate leaves part of the output buffer unused
+            if (last ? deflater.finished() : length < out.length) {
+                break;
+            }
+        }
+        deflater.end();
+
+        return new Band(out, length, adler.getValue(), raw.length);
+    }
+
+    private static void readRow(BufferedImage image, int colorType, int y, int[] pixels, byte[] row) {
+        int width = image.getWidth();
+        if (colorType == COLOR_GRAY) {
+            Raster raster = image.getRaster();
+            raster.getSamples(0, y, width, 1, 0, pixels);
+            if (row.length == width * 2) {
+                // 16-bit samples, big-endian as PNG requires
+                for (int x = 0; x < width; x++) {
+                    row[2 * x] = (byte) (pixels[x] >>> 8);
+                    row[2 * x + 1] = (byte) pixels[x];
+                }
+            } else {
+                for (int x = 0; x < width; x++) {
+                    row[x] = (byte) pixels[x];
+                }
+            }
+            return;
+        }
+
+        image.getRGB(0, y, width, 1, pixels, 0, width);
+        int i = 0;
+        for (int x = 0; x < width; x++) {
+            int p = pixels[x];
+            row[i++] = (byte) (p >>> 16);
+            row[i++] = (byte) (p >>> 8);
+            row[i++] = (byte) p;
+            if (colorType == COLOR_RGBA) {
+                row[i++] = (byte) (p >>> 24);
+            }
+        }
+    }
+
+    /**
+     * Compute all four non-trivial filters into candidates[1..4] and pick the one with the
+     * smallest sum of absolute (signed) values - the standard libpng heuristic.
+     */
+    private static int chooseFilter(byte[] row, byte[] prior, int bpp, byte[][] candidates) {
+        int length = row.length;
+        byte[] sub = candidates[1];
+        byte[] up = candidates[2];
+        byte[] avg = candidates[3];
+        byte[] paeth = candidates[4];
+        long sumNone = 0, sumSub = 0, sumUp = 0, sumAvg = 0, sumPaeth = 0;
+
+        for (int i = 0; i < length; i++) {
+            int x = row[i] & 0xFF;
+            int a = i >= bpp ? row[i - bpp] & 0xFF : 0;
+            int b = prior[i] & 0xFF;
+            int c = i >= bpp ? prior[i - bpp] & 0xFF : 0;
+
+            sub[i] = (byte) (x - a);
+            up[i] = (byte) (x - b);
+            avg[i] = (byte) (x - ((a + b) >>> 1));
+            paeth[i] = (byte) (x - paethPredictor(a, b, c));
+
+            sumNone += Math.abs((byte) x);
+            sumSub += Math.abs(sub[i]);
+            sumUp += Math.abs(up[i]);
+            sumAvg += Math.abs(avg[i]);
+            sumPaeth += Math.abs(paeth[i]);
+        }
+
+        int best = 0;
+        long bestSum = sumNone;
+        if (sumSub < bestSum) { best = 1; bestSum = sumSub; }
+        if (sumUp < bestSum) { best = 2; bestSum = sumUp; }
+        if (sumAvg < bestSum) { best = 3; bestSum = sumAvg; }
+        if (sumPaeth < bestSum) { best = 4; }
+        return best;
+    }
+
+    private static int paethPredictor(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    private static int colorTypeOf(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_BYTE_GRAY || ImageProcessingFunctions.isGray16(image)) {
+            return COLOR_GRAY;
+        }
+        return image.getColorModel().hasAlpha() ? COLOR_RGBA : COLOR_RGB;
+    }
+
+    /**
+     * zlib FLG byte for CMF 0x78, with FLEVEL matching the deflate level and a valid FCHECK.
+     */
+    private static byte zlibFlags(int level) {
+        if (level <= 1) {
+            return 0x01;
+        } else if (level <= 5) {
+            return 0x5E;
+        } else if (level == 6) {
+            return (byte) 0x9C;
+        }
+        return (byte) 0xDA;
+    }
+
+    /**
+     * Adler-32 of the concatenation of two blocks, given each block's checksum (as in zlib).
+     */
+    static long adler32Combine(long adler1, long adler2, long length2) {
+        long rem = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (rem * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + ADLER_BASE - rem;
+        if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+        if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+        if (sum2 >= ((long) ADLER_BASE << 1)) sum2 -= ((long) ADLER_BASE << 1);
+        if (sum2 >= ADLER_BASE) sum2 -= ADLER_BASE;
+        return sum1 | (sum2 << 16);
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data, int offset, int length)
+            throws IOException {
+        byte[] typeBytes = type.getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, offset, length);
+
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, offset, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static Band join(CompletableFuture<Band> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            throw new IOException("PNG band encoding failed", ex.getCause());
+        }
+    }
+}
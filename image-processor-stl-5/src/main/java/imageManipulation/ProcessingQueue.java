@@ -0,0 +1,106 @@
+package imageManipulation;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs queued SwingWorkers one at a time on a single background thread, in submission order.
+ * Progress and results are delivered on the EDT by the workers themselves; this class only
+ * tracks the queue and reports its status. All methods must be called on the EDT.
+ */
+public class ProcessingQueue {
+
+    /**
+     * Receives queue status updates on the EDT.
+     */
+    public interface StatusListener {
+        /**
+         * @param runningName name of the running task, or null when idle
+         * @param progress    progress of the running task (0-100)
+         * @param queued      number of tasks waiting behind the running one
+         */
+        void statusChanged(String runningName, int progress, int queued);
+    }
+
+    private static class QueuedTask {
+        final String name;
+        final SwingWorker<?, ?> worker;
+
+        QueuedTask(String name, SwingWorker<?, ?> worker) {
+            this.name = name;
+            this.worker = worker;
+        }
+    }
+
+    private final ExecutorService executor;
+    private final List<QueuedTask> tasks; // Running task first, then waiting tasks
+    private StatusListener statusListener;
+
+    public ProcessingQueue() {
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "image-processing");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.tasks = new ArrayList<>();
+    }
+
+    public void setStatusListener(StatusListener statusListener) {
+        this.statusListener = statusListener;
+    }
+
+    /**
+     * Queue a worker behind any running or waiting tasks.
+     */
+    public void submit(String name, SwingWorker<?, ?> worker) {
+        QueuedTask task = new QueuedTask(name, worker);
+        tasks.add(task);
+
+        worker.addPropertyChangeListener(evt -> {
+            if ("state".equals(evt.getPropertyName()) && evt.getNewValue() == SwingWorker.StateValue.DONE) {
+                tasks.remove(task);
+            }
+            fireStatus();
+        });
+
+        executor.execute(worker);
+        fireStatus();
+    }
+
+    /**
+     * Cancel the running task; waiting tasks still run.
+     */
+    public void cancelCurrent() {
+        if (!tasks.isEmpty()) {
+            tasks.get(0).worker.cancel(true);
+        }
+    }
+
+    /**
+     * Cancel the running task and everything waiting behind it.
+     */
+    public void cancelAll() {
+        for (QueuedTask task : new ArrayList<>(tasks)) {
+            task.worker.cancel(true);
+        }
+    }
+
+    public boolean isBusy() {
+        return !tasks.isEmpty();
+    }
+
+    private void fireStatus() {
+        if (statusListener == null) {
+            return;
+        }
+        if (tasks.isEmpty()) {
+            statusListener.statusChanged(null, 0, 0);
+        } else {
+            QueuedTask running = tasks.get(0);
+            statusListener.statusChanged(running.name, running.worker.getProgress(), tasks.size() - 1);
+        }
+    }
+}
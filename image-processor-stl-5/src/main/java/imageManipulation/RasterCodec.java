@@ -0,0 +1,125 @@
+package imageManipulation;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Raw binary encoding of tile arrays (the packed primitive arrays held by TiledImage).
+ * Layout: one type byte, the element count as a big-endian int, then the elements in
+ * big-endian order. Compression is left to the container (zip entries, gzip).
+ */
+public class RasterCodec {
+    private static final byte TYPE_BYTE = 'B';
+    private static final byte TYPE_SHORT = 'S';
+    private static final byte TYPE_INT = 'I';
+    private static final byte TYPE_FLOAT = 'F';
+    private static final byte TYPE_DOUBLE = 'D';
+
+    /**
+     * Encode a tile array (byte[], short[], int[], float[] or double[]).
+     */
+    public static byte[] encode(Object tile) {
+        ByteBuffer buffer;
+        if (tile instanceof byte[]) {
+            byte[] data = (byte[]) tile;
+            buffer = header(TYPE_BYTE, data.length, 1);
+            buffer.put(data);
+        } else if (tile instanceof short[]) {
+            short[] data = (short[]) tile;
+            buffer = header(TYPE_SHORT, data.length, 2);
+            buffer.asShortBuffer().put(data);
+        } else if (tile instanceof int[]) {
+            int[] data = (int[]) tile;
+            buffer = header(TYPE_INT, data.length, 4);
+            buffer.asIntBuffer().put(data);
+        } else if (tile instanceof float[]) {
+            float[] data = (float[]) tile;
+            buffer = header(TYPE_FLOAT, data.length, 4);
+            buffer.asFloatBuffer().put(data);
+        } else if (tile instanceof double[]) {
+            double[] data = (double[]) tile;
+            buffer = header(TYPE_DOUBLE, data.length, 8);
+            buffer.asDoubleBuffer().put(data);
+        } else {
+            throw new IllegalArgumentException("Unsupported tile type: " +
+                    (tile == null ? "null" : tile.getClass().getSimpleName()));
+        }
+        return buffer.array();
+    }
+
+    public static void write(Object tile, OutputStream output) throws IOException {
+        output.write(encode(tile));
+    }
+
+    /**
+     * Read one tile written by write(); the stream is positioned after it.
+     */
+    public static Object read(InputStream input) throws IOException {
+        DataInputStream data = new DataInputStream(input);
+        byte type = data.readByte();
+        int length = data.readInt();
+        if (length < 0) {
+            throw new IOException("Corrupt tile length " + length);
+        }
+
+        int elementSize = elementSize(type);
+        byte[] bytes = new byte[length * elementSize];
+        data.readFully(bytes);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+        switch (type) {
+            case TYPE_BYTE:
+                return bytes;
+            case TYPE_SHORT: {
+                short[] tile = new short[length];
+                buffer.asShortBuffer().get(tile);
+                return tile;
+            }
+            case TYPE_INT: {
+                int[] tile = new int[length];
+                buffer.asIntBuffer().get(tile);
+                return tile;
+            }
+            case TYPE_FLOAT: {
+                float[] tile = new float[length];
+                buffer.asFloatBuffer().get(tile);
+                return tile;
+            }
+            default: {
+                double[] tile = new double[length];
+                buffer.asDoubleBuffer().get(tile);
+                return tile;
+            }
+        }
+    }
+
+    private static int elementSize(byte type) throws IOException {
+        switch (type) {
+            case TYPE_BYTE:
+                return 1;
+            case TYPE_SHORT:
+                return 2;
+            case TYPE_INT:
+            case TYPE_FLOAT:
+                return 4;
+            case TYPE_DOUBLE:
+                return 8;
+            default:
+                throw new IOException("Unknown tile type " + type);
+        }
+    }
+
+    /**
+     * Buffer for the whole tile with the header written; typed views created from it start
+     * after the header.
+     */
+    private static ByteBuffer header(byte type, int length, int elementSize) {
+        ByteBuffer buffer = ByteBuffer.allocate(5 + length * elementSize);
+        buffer.put(type);
+        buffer.putInt(length);
+        return buffer;
+    }
+}
@@ -0,0 +1,325 @@
+package imageManipulation;
+
+import toSTL.Orientation;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A replayable processing chain: the operations (with parameters) that led from an input
+ * image to a result, plus optional STL export settings. Saved as a properties file
+ * ("step.N.operation", "step.N.param.NAME", "stl.NAME").
+ *
+ * Operation names and parameters are the ones recorded in the function log; operation()
+ * maps them to the processing functions, and the GUI uses the same mapping so every logged
+ * step can be replayed.
+ */
+public class Recipe {
+    public static final String EXTENSION = "recipe";
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * One operation with its parameters.
+     */
+    public static class Step {
+        private final String operation;
+        private final Map<String, String> parameters;
+
+        public Step(String operation, Map<String, String> parameters) {
+            this.operation = operation;
+            this.parameters = Collections.unmodifiableMap(new LinkedHashMap<>(parameters));
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public Map<String, String> getParameters() {
+            return parameters;
+        }
+    }
+
+    private final List<Step> steps;
+    private final STLExportSettings stlSettings;
+
+    public Recipe(List<Step> steps, STLExportSettings stlSettings) {
+        this.steps = Collections.unmodifiableList(new ArrayList<>(steps));
+        this.stlSettings = stlSettings;
+    }
+
+    /**
+     * Recipe from a log lineage (input first, as returned by FunctionLog.getLineage()).
+     *
+     * @param stlSettings export settings to include, or null for image output
+     */
+    public static Recipe fromLineage(List<LogEntry> lineage, STLExportSettings stlSettings) {
+        List<Step> steps = new ArrayList<>();
+        for (LogEntry entry : lineage) {
+            if (entry.getKind() == LogEntry.Kind.OPERATION) {
+                steps.add(new Step(entry.getOperation(), entry.getParameters()));
+            }
+        }
+        return new Recipe(steps, stlSettings);
+    }
+
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    /**
+     * STL export settings, or null if the recipe produces images.
+     */
+    public STLExportSettings getStlSettings() {
+        return stlSettings;
+    }
+
+    // ===== Operations =====
+
+    /**
+     * The processing function for a logged operation name and its parameters.
+     *
+     * @throws IllegalArgumentException for an unknown operation or a missing/invalid parameter
+     */
+    public static ImageOperation operation(String name, Map<String, String> parameters) {
+        Orientation orientation = Orientation.fromDisplayName(name);
+        if (orientation != null) {
+            return (source, progress) -> ImageProcessingFunctions.orient(source, orientation, progress);
+        }
+        switch (name) {
+            case "Posterize":
+                return ImageProcessingFunctions::posterize;
+            case "Monochrome":
+                return ImageProcessingFunctions::monochrome;
+            case "Scale": {
+                int width = intParameter(parameters, "width");
+                int height = intParameter(parameters, "height");
+                return (source, progress) -> ImageProcessingFunctions.copyAndScale(source, width, height);
+            }
+            case "Blur": {
+                double sigma = doubleParameter(parameters, "sigma");
+                return (source, progress) -> ImageProcessingFunctions.gaussianBlur(source, sigma, progress);
+            }
+            case "Median": {
+                int radius = intParameter(parameters, "radius");
+                return (source, progress) -> ImageProcessingFunctions.medianFilter(source, radius, progress);
+            }
+            case "Equalize":
+                return ImageProcessingFunctions::equalize;
+            case "Auto Contrast":
+                return ImageProcessingFunctions::contrastStretch;
+            case "Brightness/Contrast": {
+                int brightness = intParameter(parameters, "brightness");
+                int contrast = intParameter(parameters, "contrast");
+                return (source, progress) ->
+                        ImageProcessingFunctions.brightnessContrast(source, brightness, contrast, progress);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + name);
+        }
+    }
+
+    /**
+     * Per-level lookup table for operations that map each sample independently, or null.
+     */
+    private static int[] lut(Step step, int maxValue) {
+        switch (step.getOperation()) {
+            case "Posterize":
+                return ImageProcessingFunctions.posterizeLut(maxValue);
+            case "Brightness/Contrast":
+                return ImageProcessingFunctions.brightnessContrastLut(maxValue,
+                        intParameter(step.getParameters(), "brightness"),
+                        intParameter(step.getParameters(), "contrast"));
+            default:
+                return null;
+        }
+    }
+
+    private static boolean isLutStep(Step step) {
+        return lut(step, 255) != null;
+    }
+
+    /**
+     * The whole chain as one operation, fused where possible: runs of level mappings
+     * (posterize, brightness/contrast) become a single composed lookup table pass, and runs
+     * of rotations and flips a single orient pass. Intermediates are plain images, never
+     * history entries.
+     *
+     * @throws IllegalArgumentException if a step is unknown or has invalid parameters
+     */
+    public ImageOperation compile() {
+        List<ImageOperation> stages = new ArrayList<>();
+        int i = 0;
+        while (i < steps.size()) {
+            Step step = steps.get(i);
+            Orientation orientation = Orientation.fromDisplayName(step.getOperation());
+            if (orientation != null) {
+                while (i + 1 < steps.size() && Orientation.fromDisplayName(steps.get(i + 1).getOperation()) != null) {
+                    orientation = orientation.then(Orientation.fromDisplayName(steps.get(++i).getOperation()));
+                }
+                Orientation combined = orientation;
+                if (combined != Orientation.IDENTITY) {
+                    stages.add((source, progress) -> ImageProcessingFunctions.orient(source, combined, progress));
+                }
+            } else if (isLutStep(step)) {
+                List<Step> run = new ArrayList<>();
+                run.add(step);
+                while (i + 1 < steps.size() && isLutStep(steps.get(i + 1))) {
+                    run.add(steps.get(++i));
+                }
+                stages.add((source, progress) -> {
+                    int maxValue = ImageProcessingFunctions.maxLevel(source);
+                    int[] lut = lut(run.get(0), maxValue);
+                    for (int r = 1; r < run.size(); r++) {
+                        int[] next = lut(run.get(r), maxValue);
+                        for (int v = 0; v <= maxValue; v++) {
+                            lut[v] = next[lut[v]];
+                        }
+                    }
+                    return ImageProcessingFunctions.applyLut(source, lut, progress);
+                });
+            } else {
+                stages.add(operation(step.getOperation(), step.getParameters()));
+            }
+            i++;
+        }
+
+        if (stages.size() < steps.size()) {
+            System.out.println("Recipe: " + steps.size() + " steps fused into " + stages.size() + " passes");
+        }
+        return (source, progress) -> {
+            BufferedImage image = source;
+            for (int s = 0; s < stages.size(); s++) {
+                image = stages.get(s).apply(image, progress.range(s * 100 / stages.size(),
+                        (s + 1) * 100 / stages.size()));
+            }
+            return image;
+        };
+    }
+
+    /**
+     * Result cache key of the chain's output for an input with the given key; the same key
+     * the GUI computes when the steps are applied one at a time.
+     */
+    public String resultKey(String inputKey) {
+        String key = inputKey;
+        for (Step step : steps) {
+            key = ResultCache.chainKey(key, step.getOperation(), step.getParameters());
+        }
+        return key;
+    }
+
+    // ===== File format =====
+
+    public void save(File file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("version", String.valueOf(FORMAT_VERSION));
+        properties.setProperty("steps", String.valueOf(steps.size()));
+        for (int i = 0; i < steps.size(); i++) {
+            Step step = steps.get(i);
+            String prefix = "step." + i + ".";
+            properties.setProperty(prefix + "operation", step.getOperation());
+            properties.setProperty(prefix + "params", String.join(",", step.getParameters().keySet()));
+            for (Map.Entry<String, String> parameter : step.getParameters().entrySet()) {
+                properties.setProperty(prefix + "param." + parameter.getKey(), parameter.getValue());
+            }
+        }
+        if (stlSettings != null) {
+            for (Map.Entry<String, String> parameter : stlSettings.toParameters().entrySet()) {
+                properties.setProperty("stl." + parameter.getKey(), parameter.getValue());
+            }
+        }
+
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            properties.store(writer, "Image Processor recipe");
+        }
+    }
+
+    /**
+     * Read and validate a recipe; every step is checked against the known operations.
+     */
+    public static Recipe load(File file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+
+        try {
+            int version = Integer.parseInt(properties.getProperty("version", "0").trim());
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported recipe version " + version);
+            }
+            List<Step> steps = new ArrayList<>();
+            int count = Integer.parseInt(properties.getProperty("steps", "0").trim());
+            for (int i = 0; i < count; i++) {
+                String prefix = "step." + i + ".";
+                String operation = properties.getProperty(prefix + "operation");
+                if (operation == null) {
+                    throw new IOException("Missing operation for step " + i);
+                }
+                Map<String, String> parameters = new LinkedHashMap<>();
+                String names = properties.getProperty(prefix + "params", "");
+                if (!names.isEmpty()) {
+                    for (String name : names.split(",")) {
+                        parameters.put(name, properties.getProperty(prefix + "param." + name, ""));
+                    }
+                }
+                operation(operation, parameters); // Validate
+                steps.add(new Step(operation, parameters));
+            }
+
+            STLExportSettings stlSettings = null;
+            Map<String, String> stl = new LinkedHashMap<>();
+            for (String key : properties.stringPropertyNames()) {
+                if (key.startsWith("stl.")) {
+                    stl.put(key.substring(4), properties.getProperty(key));
+                }
+            }
+            if (!stl.isEmpty()) {
+                stlSettings = STLExportSettings.fromParameters(stl);
+            }
+            return new Recipe(steps, stlSettings);
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Invalid recipe " + file.getName() + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    private static int intParameter(Map<String, String> parameters, String name) {
+        return Integer.parseInt(parameter(parameters, name));
+    }
+
+    private static double doubleParameter(Map<String, String> parameters, String name) {
+        return Double.parseDouble(parameter(parameters, name));
+    }
+
+    private static String parameter(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing parameter " + name);
+        }
+        return value.trim();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (Step step : steps) {
+            text.append(new LogEntry(LogEntry.Kind.OPERATION, step.getOperation(), 0, 0, 0, 0,
+                    step.getParameters(), -1, null).getDisplayName()).append(" -> ");
+        }
+        return text.append(stlSettings != null ? "STL " + stlSettings : "image").toString();
+    }
+}
@@ -0,0 +1,190 @@
+package imageManipulation;
+
+import toSTL.ConversionListener;
+import toSTL.STLWriter;
+import toSTL.Triangle;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Applies a recipe to many image files without the GUI. Images are processed in parallel
+ * on a fixed pool (decoding and STL writing are single-threaded per image, so whole images
+ * are the unit of parallelism); the chain runs as one compiled, fused operation and nothing
+ * is kept between steps except the current image. Each input produces OUTPUT_DIR/NAME.stl
+ * if the recipe has STL settings (NAME.stl.gz when compressing), otherwise OUTPUT_DIR/NAME.png.
+ * With a result cache, an input whose STL (or processed image) is cached skips decoding,
+ * filtering and meshing; the key is derived from the file bytes and the recipe.
+ * Interrupting the thread in run() cancels the batch: queued images are dropped and running
+ * filters, meshing and STL writing stop at their next cancellation check.
+ */
+public class RecipeRunner {
+    private static final int PNG_COMPRESSION_LEVEL = 6;
+
+    /**
+     * Receives each finished image on a worker thread; error is null on success.
+     */
+    public interface Listener {
+        void imageFinished(File input, File output, Exception error, int finished, int total);
+    }
+
+    private final Recipe recipe;
+    private final ImageOperation operation;
+    private final int threads;
+    private final ResultCache cache;
+    private final boolean compressSTL;
+    private volatile boolean cancelled;
+
+    /**
+     * @param cache result cache, or null to always process
+     * @param compressSTL write STL output gzipped
+     */
+    public RecipeRunner(Recipe recipe, int threads, ResultCache cache, boolean compressSTL) {
+        this.recipe = recipe;
+        this.operation = recipe.compile();
+        this.threads = Math.max(1, threads);
+        this.cache = cache;
+        this.compressSTL = compressSTL;
+    }
+
+    /**
+     * Process all inputs, waiting until they are done.
+     *
+     * @return the number of inputs that failed
+     */
+    public int run(List<File> inputs, File outputDir, Listener listener) throws InterruptedException {
+        long startTime = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, inputs.size())), r -> {
+            Thread thread = new Thread(r, "recipe-runner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger finished = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (File input : inputs) {
+            futures.add(executor.submit(() -> {
+                if (cancelled) {
+                    return;
+                }
+                File output = outputFile(input, outputDir);
+                Exception error = null;
+                try {
+                    process(input, output);
+                } catch (Exception | OutOfMemoryError ex) {
+                    if (cancelled) {
+                        return; // Stopped by the cancel, not a failure of this image
+                    }
+                    error = ex instanceof Exception ? (Exception) ex : new IOException("Out of memory", ex);
+                    failed.incrementAndGet();
+                }
+                listener.imageFinished(input, output, error, finished.incrementAndGet(), inputs.size());
+            }));
+        }
+        executor.shutdown();
+        try {
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException ex) {
+                    failed.incrementAndGet(); // Listener failure
+                }
+            }
+        } catch (InterruptedException ex) {
+            // Cancelled: drop queued images and stop the running ones
+            cancelled = true;
+            futures.forEach(future -> future.cancel(true));
+            executor.shutdownNow();
+            System.out.println("Recipe cancelled after " + finished.get() + " of " + inputs.size() + " images");
+            throw ex;
+        }
+
+        long time = (System.nanoTime() - startTime) / 1_000_000;
+        System.out.println("[TIMING] Recipe on " + inputs.size() + " images (" + threads + " threads): " + time +
+                " ms");
+        return failed.get();
+    }
+
+    private void process(File input, File output) throws Exception {
+        TaskProgress progress = new TaskProgress() {
+            @Override
+            public void setProgress(int percent) {
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return cancelled;
+            }
+        };
+        ConversionListener stlListener = new ConversionListener() {
+            @Override
+            public boolean isCancelled() {
+                return cancelled || Thread.currentThread().isInterrupted();
+            }
+        };
+
+        STLExportSettings stl = recipe.getStlSettings();
+        boolean stlFromFile = stl != null && recipe.getSteps().isEmpty();
+        String imageKey = null;
+        String stlKey = null;
+        if (cache != null) {
+            imageKey = recipe.resultKey(ResultCache.fileKey(input));
+            if (stl != null) {
+                stlKey = stl.cacheKey(imageKey, stlFromFile, compressSTL);
+                if (cache.copyFile(stlKey, output)) {
+                    return;
+                }
+            }
+        }
+
+        BufferedImage image = imageKey != null && !recipe.getSteps().isEmpty() ? cache.getImage(imageKey) : null;
+        if (image == null) {
+            if (stlFromFile) {
+                // Straight to STL: decode already subsampled to the height map size
+                image = SubsampledImageReader.read(input, stl.getPixelClipping(), stl.getPixelClipping());
+            } else {
+                image = ImageIO.read(input);
+            }
+            if (image == null) {
+                throw new IOException("Unsupported image format: " + input.getName());
+            }
+            if (!recipe.getSteps().isEmpty()) {
+                image = operation.apply(image, progress);
+                if (imageKey != null) {
+                    cache.putImage(imageKey, image);
+                }
+            }
+        }
+
+        if (stl == null) {
+            ImageExporter.save(image, output,
+                    new ImageExporter.Options("PNG", PNG_COMPRESSION_LEVEL, 0.9f, true));
+            return;
+        }
+        List<Triangle> triangles = stl.mesh(image, stlListener);
+        STLWriter.writeBinary(triangles, output.getAbsolutePath(), stlListener);
+        if (stlKey != null) {
+            cache.putFile(stlKey, output);
+        }
+    }
+
+    private File outputFile(File input, File outputDir) {
+        String name = input.getName();
+        int dot = name.lastIndexOf('.');
+        String baseName = dot > 0 ? name.substring(0, dot) : name;
+        if (recipe.getStlSettings() == null) {
+            return new File(outputDir, baseName + ".png");
+        }
+        return new File(outputDir, baseName + (compressSTL ? ".stl" + STLWriter.GZIP_SUFFIX : ".stl"));
+    }
+}
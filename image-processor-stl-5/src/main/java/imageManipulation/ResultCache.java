@@ -0,0 +1,367 @@
+package imageManipulation;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Content-addressed disk cache for processing results and STL files.
+ *
+ * Keys are SHA-256 hex strings. An input image's key is the hash of its file bytes; each
+ * derived result's key hashes its source key with the operation name and parameters
+ * (chainKey), so identical chains on identical inputs find the same entry without hashing
+ * any pixels. Images are stored raw (RasterCodec data behind a small header), STL files as
+ * written. Entries are evicted least recently used first once the cache exceeds its size
+ * limit; use is tracked by file modification time so the order survives restarts. Entries
+ * being read are pinned and skipped by eviction, so a copy or stream never loses its file.
+ * Images are written on a background thread; every entry goes through a temporary file and
+ * an atomic rename.
+ */
+public class ResultCache {
+    private static final long DEFAULT_MAX_BYTES = 2L << 30; // 2 GB
+    private static final int IMAGE_MAGIC = 0x49504331; // "IPC1"
+    private static final String IMAGE_SUFFIX = ".img";
+    private static final String FILE_SUFFIX = ".stl";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static ResultCache defaultCache;
+
+    private final File directory;
+    private final long maxBytes;
+    private final Map<String, Long> entries; // File name -> size, least recently used first
+    private final Map<String, Integer> pins = new HashMap<>(); // File name -> readers in progress
+    private final ExecutorService writer;
+    private long totalBytes;
+    private long hits;
+    private long misses;
+
+    public ResultCache(File directory, long maxBytes) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create cache directory " + directory);
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.entries = new LinkedHashMap<>(64, 0.75f, true);
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "result-cache");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for (File file : files) {
+                if (file.getName().endsWith(TEMP_SUFFIX)) {
+                    file.delete(); // Left over from an interrupted write
+                } else if (file.isFile()) {
+                    entries.put(file.getName(), file.length());
+                    totalBytes += file.length();
+                }
+            }
+        }
+        System.out.println("Result cache: " + directory + " (" + entries.size() + " entries, " +
+                totalBytes / (1024 * 1024) + " MB)");
+    }
+
+    /**
+     * The shared cache in ~/.image-processor/cache, or null if it cannot be created.
+     */
+    public static synchronized ResultCache getDefault() {
+        if (defaultCache == null) {
+            File directory = new File(System.getProperty("user.home"), ".image-processor" + File.separator + "cache");
+            try {
+                defaultCache = new ResultCache(directory, DEFAULT_MAX_BYTES);
+            } catch (IOException ex) {
+                System.out.println("Result cache disabled: " + ex.getMessage());
+            }
+        }
+        return defaultCache;
+    }
+
+    // ===== Keys =====
+
+    /**
+     * Key of an input file: the hash of its bytes.
+     */
+    public static String fileKey(File file) throws IOException {
+        long startTime = System.nanoTime();
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream input = new FileInputStream(file)) {
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        String key = hex(digest.digest());
+        long time = (System.nanoTime() - startTime) / 1_000_000;
+        System.out.println("[TIMING] Hash " + file.getName() + ": " + time + " ms");
+        return key;
+    }
+
+    /**
+     * Key of the result of an operation with the given (ordered) parameters on sourceKey.
+     */
+    public static String chainKey(String sourceKey, String operation, Map<String, String> parameters) {
+        StringBuilder text = new StringBuilder(sourceKey).append('\n').append(operation);
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            text.append('\n').append(parameter.getKey()).append('=').append(parameter.getValue());
+        }
+        return hex(sha256().digest(text.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // ===== Images =====
+
+    /**
+     * Cached image for a key, or null.
+     */
+    public BufferedImage getImage(String key) {
+        File file = lookup(key + IMAGE_SUFFIX);
+        if (file == null) {
+            return null;
+        }
+        long startTime = System.nanoTime();
+        String name = file.getName();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (input.readInt() != IMAGE_MAGIC) {
+                throw new IOException("Not a cached image");
+            }
+            int width = input.readInt();
+            int height = input.readInt();
+            int type = input.readInt();
+            Object data = RasterCodec.read(input);
+            BufferedImage image = new BufferedImage(width, height, type);
+            image.getRaster().setDataElements(0, 0, width, height, data);
+
+            long time = (System.nanoTime() - startTime) / 1_000_000;
+            System.out.println("[TIMING] Cache hit " + width + "x" + height + ": " + time + " ms");
+            return image;
+        } catch (IOException | RuntimeException ex) {
+            System.out.println("Dropping unreadable cache entry " + name + ": " + ex.getMessage());
+            remove(name);
+            return null;
+        } finally {
+            unpin(name);
+        }
+    }
+
+    /**
+     * Store an image in the background. The image must not be modified afterwards.
+     * Indexed, binary and custom images are not cached (their type alone can't rebuild them).
+     */
+    public void putImage(String key, BufferedImage image) {
+        int type = image.getType();
+        if (type == BufferedImage.TYPE_CUSTOM || type == BufferedImage.TYPE_BYTE_INDEXED
+                || type == BufferedImage.TYPE_BYTE_BINARY) {
+            return;
+        }
+        write(key + IMAGE_SUFFIX, target -> {
+            int width = image.getWidth();
+            int height = image.getHeight();
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(target), 1 << 16))) {
+                output.writeInt(IMAGE_MAGIC);
+                output.writeInt(width);
+                output.writeInt(height);
+                output.writeInt(type);
+                RasterCodec.write(image.getRaster().getDataElements(0, 0, width, height, null), output);
+            }
+        });
+    }
+
+    // ===== Files =====
+
+    /**
+     * Copy a cached file (e.g. an STL) to target.
+     *
+     * @return true on a hit
+     */
+    public boolean copyFile(String key, File target) {
+        try {
+            return readFile(key, file -> {
+                Files.copy(file.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                System.out.println("Cache hit: " + target.getName() + " (" + file.length() / 1024 + " KB)");
+            });
+        } catch (IOException ex) {
+            System.out.println("Cache copy failed: " + ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Pass the cached file for a key to entryReader, to be read directly (e.g. streamed to a
+     * client). The entry is not evicted until entryReader returns.
+     *
+     * @return true on a hit
+     */
+    public boolean readFile(String key, EntryReader entryReader) throws IOException {
+        File file = lookup(key + FILE_SUFFIX);
+        if (file == null) {
+            return false;
+        }
+        try {
+            entryReader.read(file);
+            return true;
+        } finally {
+            unpin(file.getName());
+        }
+    }
+
+    /**
+     * Store a copy of a finished file. Copies on the calling thread, so the source may be
+     * deleted as soon as this returns.
+     */
+    public void putFile(String key, File source) {
+        putFile(key, target -> Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING));
+    }
+
+    /**
+     * Store a file produced by entryWriter, on the calling thread.
+     */
+    public void putFile(String key, EntryWriter entryWriter) {
+        store(key + FILE_SUFFIX, entryWriter);
+    }
+
+    public synchronized String getStats() {
+        return "Result cache: " + entries.size() + " entries, " + totalBytes / (1024 * 1024) + " MB, " +
+                hits + " hits, " + misses + " misses";
+    }
+
+    // ===== Index =====
+
+    /**
+     * Writes a cache entry to the given (temporary) file.
+     */
+    public interface EntryWriter {
+        void write(File target) throws IOException;
+    }
+
+    /**
+     * Reads a cache entry from its file; the entry stays pinned while this runs.
+     */
+    public interface EntryReader {
+        void read(File file) throws IOException;
+    }
+
+    /**
+     * File for an entry, marked as most recently used and pinned, or null on a miss.
+     * A non-null result must be released with unpin.
+     */
+    private File lookup(String name) {
+        synchronized (this) {
+            if (entries.get(name) == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+            pins.merge(name, 1, Integer::sum);
+        }
+        File file = new File(directory, name);
+        if (!file.setLastModified(System.currentTimeMillis()) && !file.exists()) {
+            unpin(name);
+            remove(name); // Deleted behind our back
+            return null;
+        }
+        return file;
+    }
+
+    private synchronized void unpin(String name) {
+        pins.computeIfPresent(name, (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private void write(String name, EntryWriter entryWriter) {
+        writer.execute(() -> store(name, entryWriter));
+    }
+
+    private void store(String name, EntryWriter entryWriter) {
+        synchronized (this) {
+            if (entries.containsKey(name)) {
+                return;
+            }
+        }
+        File temp = new File(directory, name + "." + Thread.currentThread().threadId() + TEMP_SUFFIX);
+        File file = new File(directory, name);
+        try {
+            entryWriter.write(temp);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            added(name, file.length());
+        } catch (IOException | RuntimeException ex) {
+            temp.delete();
+            System.out.println("Cache write failed: " + ex.getMessage());
+        }
+    }
+
+    private void added(String name, long size) {
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            Long previous = entries.put(name, size);
+            totalBytes += size - (previous != null ? previous : 0);
+            for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                if (totalBytes <= maxBytes || entry.getKey().equals(name)) {
+                    break;
+                }
+                if (pins.containsKey(entry.getKey())) {
+                    continue; // Being read; evicted by a later write once released
+                }
+                evicted.add(entry.getKey());
+                totalBytes -= entry.getValue();
+            }
+            evicted.forEach(entries::remove);
+        }
+        for (String evictedName : evicted) {
+            new File(directory, evictedName).delete();
+        }
+        if (!evicted.isEmpty()) {
+            System.out.println("Result cache evicted " + evicted.size() + " entries");
+        }
+    }
+
+    private void remove(String name) {
+        synchronized (this) {
+            Long size = entries.remove(name);
+            if (size != null) {
+                totalBytes -= size;
+            }
+        }
+        new File(directory, name).delete();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not available", ex); // Required by every JRE
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder text = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            text.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,247 @@
+package imageManipulation;
+
+import toSTL.BaseMode;
+import toSTL.ConversionListener;
+import toSTL.HeightMap;
+import toSTL.Orientation;
+import toSTL.RunLengthToSTL;
+import toSTL.RunLengthVolume;
+import toSTL.Triangle;
+import toSTL.VoxelToSTL;
+
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Settings for one height map STL export, as chosen in the dimension dialog (dimensions are
+ * already scaled). Also stored as log parameters and in recipes.
+ */
+public class STLExportSettings {
+    private static final int THICKNESS_LAYERS = 64; // Thickness is split into 64 voxel layers for sizing
+    // Bump when a mesher or the STL format changes its output, so cached STL files aren't reused
+    private static final String MESH_VERSION = "2";
+
+    private final double width;
+    private final double height;
+    private final double thickness;
+    private final boolean invertHeights;
+    private final boolean flipLeftRight;
+    private final Orientation rotation;
+    private final int pixelClipping;
+    private final int zLayers;
+    private final BaseMode baseMode;
+    private final double plinth;
+
+    /**
+     * @param width         model width in mm
+     * @param height        model depth in mm
+     * @param thickness     model thickness in mm
+     * @param invertHeights white = highest instead of black = highest
+     * @param flipLeftRight keep image orientation instead of mirroring left-right
+     * @param rotation      rotation applied before the mirror
+     * @param pixelClipping max width/height of the height grid in pixels
+     * @param zLayers       number of height steps, or 0 for full precision
+     * @param baseMode      how the bottom is built
+     * @param plinth        solid base under the relief in mm, or 0 for none
+     */
+    public STLExportSettings(double width, double height, double thickness, boolean invertHeights,
+                             boolean flipLeftRight, Orientation rotation, int pixelClipping, int zLayers,
+                             BaseMode baseMode, double plinth) {
+        this.width = width;
+        this.height = height;
+        this.thickness = thickness;
+        this.invertHeights = invertHeights;
+        this.flipLeftRight = flipLeftRight;
+        this.rotation = rotation;
+        this.pixelClipping = pixelClipping;
+        this.zLayers = zLayers;
+        this.baseMode = baseMode;
+        this.plinth = plinth;
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
+    public double getThickness() {
+        return thickness;
+    }
+
+    public boolean isInvertHeights() {
+        return invertHeights;
+    }
+
+    public boolean isFlipLeftRight() {
+        return flipLeftRight;
+    }
+
+    public Orientation getRotation() {
+        return rotation;
+    }
+
+    public int getPixelClipping() {
+        return pixelClipping;
+    }
+
+    public int getZLayers() {
+        return zLayers;
+    }
+
+    public BaseMode getBaseMode() {
+        return baseMode;
+    }
+
+    public double getPlinth() {
+        return plinth;
+    }
+
+    /**
+     * Height map for an image at these settings (clipped, quantized and oriented).
+     */
+    public HeightMap toHeightMap(BufferedImage image) {
+        return HeightMapConverter.fromImage(image, invertHeights, flipLeftRight, pixelClipping, zLayers, rotation);
+    }
+
+    /**
+     * Uniform voxel size that fits the height map into the target dimensions; the highest
+     * level is one voxel tall, the same scale as the classic 64-layer voxel extrusion.
+     */
+    public float voxelSize(HeightMap heightMap) {
+        float voxelWidth = (float) (width / heightMap.getWidth());
+        float voxelHeight = (float) (height / heightMap.getHeight());
+        float voxelThickness = (float) (thickness / THICKNESS_LAYERS);
+        return Math.min(voxelWidth, Math.min(voxelHeight, voxelThickness));
+    }
+
+    /**
+     * Height map and mesh for an image in one call (used where no per-phase progress is shown).
+     */
+    public List<Triangle> mesh(BufferedImage image, ConversionListener listener) {
+        HeightMap heightMap = toHeightMap(image);
+        return mesher(heightMap).convert(listener);
+    }
+
+    /**
+     * Mesher for a height map from toHeightMap(), with this export's base construction.
+     */
+    public VoxelToSTL mesher(HeightMap heightMap) {
+        float voxelSize = voxelSize(heightMap);
+        return new VoxelToSTL(heightMap, voxelSize, voxelSize, baseMode, (float) plinth);
+    }
+
+    /**
+     * Streaming mesher for height maps from toHeightMap() stacked as layers, bottom first
+     * (see RunLengthVolume.layerRuns). Each layer is at most as tall as a single-image
+     * export's relief; the plinth becomes a solid base under the first layer. The bottom is
+     * always built per cell, whatever the base mode.
+     *
+     * @throws IllegalArgumentException if the maps differ in size
+     */
+    public RunLengthToSTL layeredMesher(List<HeightMap> layers) {
+        HeightMap first = layers.get(0);
+        float voxelSize = voxelSize(first);
+        int depth = RunLengthVolume.layerDepth(layers, 0);
+        float layerHeight = voxelSize * layers.size() / depth;
+        int baseLevels = (int) Math.round(plinth / layerHeight);
+        return new RunLengthToSTL(first.getWidth(), first.getHeight(), depth + baseLevels,
+                RunLengthVolume.layerRuns(layers, baseLevels), voxelSize, layerHeight);
+    }
+
+    /**
+     * Settings as ordered log/recipe parameters.
+     */
+    public Map<String, String> toParameters() {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("width", String.valueOf(width));
+        parameters.put("height", String.valueOf(height));
+        parameters.put("thickness", String.valueOf(thickness));
+        parameters.put("invert", String.valueOf(invertHeights));
+        parameters.put("flip", String.valueOf(flipLeftRight));
+        parameters.put("rotation", rotation.name());
+        parameters.put("clipping", String.valueOf(pixelClipping));
+        parameters.put("zLayers", String.valueOf(zLayers));
+        parameters.put("base", baseMode.name());
+        parameters.put("plinth", String.valueOf(plinth));
+        return parameters;
+    }
+
+    /**
+     * Result cache key of the STL for these settings on the image with the given key.
+     *
+     * @param fromFile the image is decoded subsampled from a file rather than taken whole,
+     *                 which gives a slightly different height map
+     */
+    public String cacheKey(String sourceKey, boolean fromFile) {
+        return cacheKey(sourceKey, fromFile, false);
+    }
+
+    /**
+     * Result cache key of the STL, or of the gzipped STL if compressed is set.
+     */
+    public String cacheKey(String sourceKey, boolean fromFile, boolean compressed) {
+        String key = ResultCache.chainKey(sourceKey, fromFile ? "Export File to STL" : "Export to STL",
+                cacheParameters());
+        return compressed ? ResultCache.chainKey(key, "Gzip", Collections.emptyMap()) : key;
+    }
+
+    /**
+     * Result cache key of the layered STL for these settings on the images with the given
+     * keys, bottom layer first.
+     */
+    public String layersCacheKey(List<String> sourceKeys, boolean compressed) {
+        String key = ResultCache.chainKey(String.join("\n", sourceKeys), "Export Layers to STL", cacheParameters());
+        return compressed ? ResultCache.chainKey(key, "Gzip", Collections.emptyMap()) : key;
+    }
+
+    private Map<String, String> cacheParameters() {
+        Map<String, String> parameters = toParameters();
+        parameters.put("meshVersion", MESH_VERSION);
+        return parameters;
+    }
+
+    /**
+     * Settings from parameters written by toParameters().
+     *
+     * @throws IllegalArgumentException if a parameter is missing or invalid
+     */
+    public static STLExportSettings fromParameters(Map<String, String> parameters) {
+        return new STLExportSettings(
+                Double.parseDouble(required(parameters, "width")),
+                Double.parseDouble(required(parameters, "height")),
+                Double.parseDouble(required(parameters, "thickness")),
+                Boolean.parseBoolean(required(parameters, "invert")),
+                Boolean.parseBoolean(required(parameters, "flip")),
+                Orientation.valueOf(parameters.getOrDefault("rotation", Orientation.IDENTITY.name())),
+                Integer.parseInt(required(parameters, "clipping")),
+                Integer.parseInt(parameters.getOrDefault("zLayers", "0")),
+                BaseMode.valueOf(parameters.getOrDefault("base", BaseMode.DEFAULT.name())),
+                Double.parseDouble(parameters.getOrDefault("plinth", "0")));
+    }
+
+    private static String required(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing STL parameter " + name);
+        }
+        return value.trim();
+    }
+
+    /**
+     * Summary for the log, e.g. "(100.0 x 80.0 x 5.0mm) Clipped to 1000x1000 Z layers 16".
+     */
+    @Override
+    public String toString() {
+        return "(" + width + " x " + height + " x " + thickness + "mm)"
+                + " Clipped to " + pixelClipping + "x" + pixelClipping
+                + (zLayers > 0 ? " Z layers " + zLayers : "")
+                + (rotation != Orientation.IDENTITY ? " " + rotation : "")
+                + (plinth > 0 ? " plinth " + plinth + "mm" : "");
+    }
+}
@@ -0,0 +1,191 @@
+package imageManipulation;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Opens a session written by SessionWriter. Only the index and the per-image properties are
+ * read up front; tiles are read from the zip when an image is first materialized, so opening
+ * a long history is immediate. Tiles shared between images are loaded once and shared again
+ * in memory. The zip stays open until close().
+ */
+public class SessionReader implements TiledImage.TileLoader, AutoCloseable {
+    private final File file;
+    private final ZipFile zip;
+    private final List<TiledImage> history = new ArrayList<>();
+    private final List<Integer> sources = new ArrayList<>();
+    private final List<String> contentKeys = new ArrayList<>();
+    private final List<LogEntry> logEntries = new ArrayList<>();
+    private final Map<Integer, Object> loadedTiles = new HashMap<>();
+    private final List<Properties> images = new ArrayList<>(); // Per-image properties until open() builds history
+    private final int currentSequence;
+
+    private SessionReader(File file) throws IOException {
+        long startTime = System.nanoTime();
+        this.file = file;
+        this.zip = new ZipFile(file);
+        try {
+            Properties index = readProperties(SessionWriter.SESSION_ENTRY);
+            int version = intProperty(index, "version");
+            if (version != SessionWriter.FORMAT_VERSION) {
+                throw new IOException("Unsupported session version " + version);
+            }
+
+            int imageCount = intProperty(index, "images");
+            for (int seq = 1; seq <= imageCount; seq++) {
+                images.add(readProperties(SessionWriter.IMAGE_ENTRY_PREFIX + seq + ".properties"));
+            }
+
+            int logCount = intProperty(index, "log.count");
+            for (int i = 0; i < logCount; i++) {
+                logEntries.add(readLogEntry(index, "log." + i + "."));
+            }
+            currentSequence = intProperty(index, "current");
+        } catch (IOException | RuntimeException ex) {
+            zip.close();
+            throw ex instanceof IOException ? (IOException) ex
+                    : new IOException("Corrupt session: " + ex.getMessage(), ex);
+        }
+
+        long time = (System.nanoTime() - startTime) / 1_000_000;
+        System.out.println("[TIMING] Read session index " + file.getName() + " (" + images.size() +
+                " images): " + time + " ms");
+    }
+
+    /**
+     * Open a session file: read its index and set up the lazily loaded history, which loads
+     * tiles through the returned reader.
+     */
+    public static SessionReader open(File file) throws IOException {
+        SessionReader reader = new SessionReader(file);
+        try {
+            reader.buildHistory();
+        } catch (IOException | RuntimeException ex) {
+            reader.close();
+            throw ex instanceof IOException ? (IOException) ex
+                    : new IOException("Corrupt session: " + ex.getMessage(), ex);
+        }
+        return reader;
+    }
+
+    private void buildHistory() throws IOException {
+        history.add(null); // Index 0 unused
+        sources.add(0);
+        contentKeys.add(null);
+        for (Properties image : images) {
+            String[] ids = image.getProperty("tiles", "").split(",");
+            int[] tileIds = new int[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                tileIds[i] = Integer.parseInt(ids[i].trim());
+            }
+            history.add(TiledImage.lazy(intProperty(image, "width"), intProperty(image, "height"),
+                    intProperty(image, "type"), this, tileIds));
+            sources.add(intProperty(image, "source"));
+            contentKeys.add(image.getProperty("key"));
+        }
+        images.clear();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Lazily loaded history; index 0 is unused, as in ImageData.
+     */
+    public List<TiledImage> getHistory() {
+        return history;
+    }
+
+    /**
+     * Source sequence of each history entry; index 0 is unused.
+     */
+    public List<Integer> getSources() {
+        return sources;
+    }
+
+    /**
+     * Result cache key of each history entry, null where unknown; index 0 is unused.
+     */
+    public List<String> getContentKeys() {
+        return contentKeys;
+    }
+
+    public List<LogEntry> getLogEntries() {
+        return logEntries;
+    }
+
+    public int getCurrentSequence() {
+        return currentSequence;
+    }
+
+    @Override
+    public synchronized Object loadTile(int tileId) throws IOException {
+        Object tile = loadedTiles.get(tileId);
+        if (tile == null) {
+            ZipEntry entry = zip.getEntry(SessionWriter.TILE_ENTRY_PREFIX + tileId);
+            if (entry == null) {
+                throw new IOException("Missing tile " + tileId + " in " + file.getName());
+            }
+            try (InputStream input = new BufferedInputStream(zip.getInputStream(entry))) {
+                tile = RasterCodec.read(input);
+            }
+            loadedTiles.put(tileId, tile);
+        }
+        return tile;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        loadedTiles.clear();
+        zip.close();
+    }
+
+    private static LogEntry readLogEntry(Properties index, String prefix) throws IOException {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        String names = index.getProperty(prefix + "params", "");
+        if (!names.isEmpty()) {
+            for (String name : names.split(",")) {
+                parameters.put(name, index.getProperty(prefix + "param." + name, ""));
+            }
+        }
+        return new LogEntry(LogEntry.Kind.valueOf(index.getProperty(prefix + "kind", "EVENT")),
+                index.getProperty(prefix + "operation", ""), intProperty(index, prefix + "seq"),
+                intProperty(index, prefix + "source"), intProperty(index, prefix + "width"),
+                intProperty(index, prefix + "height"), parameters,
+                Long.parseLong(index.getProperty(prefix + "time", "-1").trim()),
+                index.getProperty(prefix + "detail"));
+    }
+
+    private Properties readProperties(String name) throws IOException {
+        ZipEntry entry = zip.getEntry(name);
+        if (entry == null) {
+            throw new IOException("Missing " + name + " in " + file.getName());
+        }
+        Properties properties = new Properties();
+        try (InputStreamReader reader = new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return properties;
+    }
+
+    private static int intProperty(Properties properties, String key) throws IOException {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            throw new IOException("Missing session property " + key);
+        }
+        return Integer.parseInt(value.trim());
+    }
+}
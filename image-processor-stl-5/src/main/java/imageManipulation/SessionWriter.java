@@ -0,0 +1,261 @@
+package imageManipulation;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a session file on a background thread as the history grows.
+ * A session is a zip with one deflated entry per distinct tile ("tiles/N", RasterCodec
+ * format), a small properties entry per history image ("images/SEQ.properties": size, type,
+ * source, result cache key and tile ids) and the index ("session.properties": log records
+ * and current image). Tiles shared between history images are stored once. The zip stays
+ * open while the session is active so each new image is compressed and appended as it is
+ * created, which keeps close() short; but the index and the zip directory are only written
+ * by close(), so the file can't be opened until then and a crash loses the session.
+ */
+public class SessionWriter {
+    static final String SESSION_ENTRY = "session.properties";
+    static final String IMAGE_ENTRY_PREFIX = "images/";
+    static final String TILE_ENTRY_PREFIX = "tiles/";
+    static final int FORMAT_VERSION = 2;
+
+    private final File file;
+    private final ZipOutputStream zip;
+    private final ExecutorService executor;
+    private final CountDownLatch finished = new CountDownLatch(1); // Zip closed (or failed to)
+    private final Map<Object, Integer> tileIds = new IdentityHashMap<>(); // Writer thread only
+    private Thread shutdownHook; // Set by create()
+    private volatile List<LogEntry> logEntries = new ArrayList<>();
+    private volatile int currentSequence;
+    private volatile IOException error;
+    private int imageCount;
+    private boolean closed;
+
+    private SessionWriter(File file) throws IOException {
+        this.file = file;
+        this.zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        zip.setLevel(Deflater.BEST_SPEED);
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "session-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start a session file. The zip is finished by close(), or on exit if the session is
+     * still open then.
+     */
+    public static SessionWriter create(File file) throws IOException {
+        SessionWriter writer = new SessionWriter(file);
+        writer.shutdownHook = new Thread(writer::closeQuietly, "session-close");
+        Runtime.getRuntime().addShutdownHook(writer.shutdownHook);
+        return writer;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Queue a history image for writing; only tiles not already in the file are written.
+     */
+    public void addImage(int seq, int sourceSeq, String contentKey, TiledImage tiles) {
+        executor.execute(() -> {
+            if (error != null) {
+                return;
+            }
+            try {
+                writeImage(seq, sourceSeq, contentKey, tiles);
+            } catch (IOException | RuntimeException ex) {
+                error = ex instanceof IOException ? (IOException) ex : new IOException(ex);
+                System.out.println("Session write failed: " + ex.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Record the log and current image to store in the index when the session is closed.
+     */
+    public void setIndex(List<LogEntry> entries, int currentSeq) {
+        this.logEntries = new ArrayList<>(entries);
+        this.currentSequence = currentSeq;
+    }
+
+    /**
+     * Wait for queued images, write the index and finish the zip. This can take a while for
+     * a long history; call it off the EDT. It waits as long as the writes take. The shutdown
+     * hook stays registered until the zip is finished, and closes the same way, so exiting
+     * before then (even after an interrupted close) waits for the zip instead of cutting it
+     * short.
+     *
+     * @throws IOException if any write failed, or if interrupted before the zip was finished
+     *                     (it is then still finished in the background)
+     */
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            executor.execute(() -> {
+                try {
+                    if (error == null) {
+                        writeIndex();
+                    }
+                    zip.close();
+                } catch (IOException | RuntimeException ex) {
+                    if (error == null) {
+                        error = ex instanceof IOException ? (IOException) ex : new IOException(ex);
+                    }
+                } finally {
+                    finished.countDown();
+                }
+            });
+            executor.shutdown();
+        }
+        try {
+            while (!finished.await(1, TimeUnit.MINUTES)) {
+                System.out.println("Still saving session " + file.getName() + "...");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while saving " + file.getName() + "; it is finished in the background");
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException ex) {
+            // Already shutting down - this is the hook, or it waits for this close
+        }
+        if (error != null) {
+            throw error;
+        }
+        System.out.println("Session saved: " + file.getName() + " (" + imageCount + " images, " +
+                tileIds.size() + " tiles)");
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException ex) {
+            System.out.println("Session close failed: " + ex.getMessage());
+        }
+    }
+
+    private void writeImage(int seq, int sourceSeq, String contentKey, TiledImage tiles) throws IOException {
+        long startTime = System.nanoTime();
+        int type = tiles.getImageType();
+        if (!isStorableType(type)) {
+            tiles = TiledImage.fromImage(toARGB(tiles.toImage()), null);
+            type = BufferedImage.TYPE_INT_ARGB;
+        }
+
+        StringBuilder ids = new StringBuilder();
+        int newTiles = 0;
+        for (int i = 0; i < tiles.getTileCount(); i++) {
+            Object tile = tiles.getTile(i);
+            Integer id = tileIds.get(tile);
+            if (id == null) {
+                id = tileIds.size() + 1;
+                zip.putNextEntry(new ZipEntry(TILE_ENTRY_PREFIX + id));
+                RasterCodec.write(tile, zip);
+                zip.closeEntry();
+                tileIds.put(tile, id);
+                newTiles++;
+            }
+            if (i > 0) {
+                ids.append(',');
+            }
+            ids.append(id);
+        }
+
+        Properties image = new Properties();
+        image.setProperty("width", String.valueOf(tiles.getWidth()));
+        image.setProperty("height", String.valueOf(tiles.getHeight()));
+        image.setProperty("type", String.valueOf(type));
+        image.setProperty("source", String.valueOf(sourceSeq));
+        image.setProperty("tiles", ids.toString());
+        if (contentKey != null) {
+            image.setProperty("key", contentKey);
+        }
+        writeProperties(IMAGE_ENTRY_PREFIX + seq + ".properties", image);
+        zip.flush();
+        imageCount++;
+
+        long time = (System.nanoTime() - startTime) / 1_000_000;
+        System.out.println("[TIMING] Session image " + seq + " (" + newTiles + " new tiles): " + time + " ms");
+    }
+
+    private void writeIndex() throws IOException {
+        List<LogEntry> entries = logEntries;
+        Properties index = new Properties();
+        index.setProperty("version", String.valueOf(FORMAT_VERSION));
+        index.setProperty("images", String.valueOf(imageCount));
+        index.setProperty("current", String.valueOf(currentSequence));
+        index.setProperty("log.count", String.valueOf(entries.size()));
+        for (int i = 0; i < entries.size(); i++) {
+            writeLogEntry(index, "log." + i + ".", entries.get(i));
+        }
+        writeProperties(SESSION_ENTRY, index);
+    }
+
+    /**
+     * One log record as prefixed keys; parameter names are listed in "params" to keep their order.
+     */
+    private static void writeLogEntry(Properties index, String prefix, LogEntry entry) {
+        index.setProperty(prefix + "kind", entry.getKind().name());
+        index.setProperty(prefix + "operation", entry.getOperation());
+        index.setProperty(prefix + "seq", String.valueOf(entry.getSequence()));
+        index.setProperty(prefix + "source", String.valueOf(entry.getSourceSequence()));
+        index.setProperty(prefix + "width", String.valueOf(entry.getWidth()));
+        index.setProperty(prefix + "height", String.valueOf(entry.getHeight()));
+        index.setProperty(prefix + "time", String.valueOf(entry.getTimeMillis()));
+        if (entry.getDetail() != null) {
+            index.setProperty(prefix + "detail", entry.getDetail());
+        }
+        index.setProperty(prefix + "params", String.join(",", entry.getParameters().keySet()));
+        for (Map.Entry<String, String> parameter : entry.getParameters().entrySet()) {
+            index.setProperty(prefix + "param." + parameter.getKey(), parameter.getValue());
+        }
+    }
+
+    private void writeProperties(String name, Properties properties) throws IOException {
+        StringWriter text = new StringWriter();
+        properties.store(text, null);
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(text.toString().getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+
+    /**
+     * Types that SessionReader can rebuild from the type constant alone (indexed images
+     * need their palette, custom ones their full color model).
+     */
+    private static boolean isStorableType(int type) {
+        return type != BufferedImage.TYPE_CUSTOM && type != BufferedImage.TYPE_BYTE_INDEXED
+                && type != BufferedImage.TYPE_BYTE_BINARY;
+    }
+
+    private static BufferedImage toARGB(BufferedImage image) {
+        BufferedImage argb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = argb.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return argb;
+    }
+}
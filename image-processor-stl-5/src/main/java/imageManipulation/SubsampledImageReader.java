@@ -0,0 +1,106 @@
+package imageManipulation;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Decodes images directly at (roughly) the resolution a caller needs.
+ * Uses ImageReadParam source subsampling so a 5000x5000 file clipped to 500x500 never
+ * materializes 25M pixels: the reader keeps every Nth pixel while decoding, leaving about
+ * 2x the target resolution, which is then scaled to the exact target size with the bicubic
+ * scaleClipping. Callers that scale to that size again (HeightMapConverter) can use the
+ * result as is.
+ */
+public class SubsampledImageReader {
+
+    // Keep this much extra resolution before the final bicubic pass (anti-aliasing)
+    private static final int OVERSAMPLE = 2;
+
+    /**
+     * Read only the image dimensions from the file header (no pixel decoding).
+     */
+    public static Dimension readDimensions(File file) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            ImageReader reader = findReader(file, input);
+            try {
+                reader.setInput(input, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Read the whole image so that it fits within maxWidth x maxHeight.
+     */
+    public static BufferedImage read(File file, int maxWidth, int maxHeight) throws IOException {
+        return read(file, null, maxWidth, maxHeight);
+    }
+
+    /**
+     * Read a region of the image (null for the whole image) so that it fits within
+     * maxWidth x maxHeight. Images that already fit are decoded at full resolution.
+     */
+    public static BufferedImage read(File file, Rectangle region, int maxWidth, int maxHeight) throws IOException {
+        long startTime = System.nanoTime();
+
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            ImageReader reader = findReader(file, input);
+            try {
+                reader.setInput(input, true, true);
+                int fullWidth = reader.getWidth(0);
+                int fullHeight = reader.getHeight(0);
+
+                Rectangle source = new Rectangle(0, 0, fullWidth, fullHeight);
+                if (region != null) {
+                    source = source.intersection(region);
+                    if (source.isEmpty()) {
+                        throw new IOException("Region " + region + " is outside the " + fullWidth + "x" +
+                                fullHeight + " image");
+                    }
+                }
+
+                double scale = Math.min((double) maxWidth / source.width, (double) maxHeight / source.height);
+                int subsampling = Math.max(1, (int) Math.floor(1.0 / (scale * OVERSAMPLE)));
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (region != null) {
+                    param.setSourceRegion(source);
+                }
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+                BufferedImage decoded = reader.read(0, param);
+                long decodeTime = (System.nanoTime() - startTime) / 1_000_000;
+                System.out.println("[TIMING] Subsampled decode (" + fullWidth + "x" + fullHeight + " -> " +
+                        decoded.getWidth() + "x" + decoded.getHeight() + ", every " + subsampling +
+                        " px): " + decodeTime + " ms");
+
+                if (decoded.getWidth() <= maxWidth && decoded.getHeight() <= maxHeight) {
+                    return decoded;
+                }
+                return ImageProcessingFunctions.scaleClipping(decoded, maxWidth, maxHeight);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static ImageReader findReader(File file, ImageInputStream input) throws IOException {
+        if (input == null) {
+            throw new IOException("Cannot open " + file.getName());
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new IOException("Unsupported image format: " + file.getName());
+        }
+        return readers.next();
+    }
+}
@@ -0,0 +1,57 @@
+package imageManipulation;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Progress and cooperative cancellation hook passed into long-running image functions.
+ */
+public interface TaskProgress {
+
+    /**
+     * No-op progress for callers that don't track progress (always runs to completion).
+     */
+    TaskProgress NONE = new TaskProgress() {
+        @Override
+        public void setProgress(int percent) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    /**
+     * Report progress as a percentage (0-100).
+     */
+    void setProgress(int percent);
+
+    boolean isCancelled();
+
+    /**
+     * Throw CancellationException if the task was cancelled or its thread interrupted.
+     */
+    default void checkCancelled() {
+        if (isCancelled() || Thread.currentThread().isInterrupted()) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * View of this progress that maps 0-100 onto from..to, for functions made of several passes.
+     */
+    default TaskProgress range(int from, int to) {
+        TaskProgress parent = this;
+        return new TaskProgress() {
+            @Override
+            public void setProgress(int percent) {
+                parent.setProgress(from + (to - from) * percent / 100);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return parent.isCancelled();
+            }
+        };
+    }
+}
@@ -0,0 +1,247 @@
+package imageManipulation;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable copy of an image split into 256x256 tiles, used for the history.
+ * Each tile is the packed primitive array returned by Raster.getDataElements (so the image
+ * type is preserved). Tiles are never modified once stored, which lets an image share every
+ * tile that is identical to its parent's: a history step costs memory only for the tiles
+ * it changed. Images restored from a session load their tiles lazily on first access.
+ */
+public class TiledImage {
+    public static final int TILE_SIZE = 256;
+
+    /**
+     * Supplies tile arrays for lazily loaded images.
+     */
+    public interface TileLoader {
+        Object loadTile(int tileId) throws IOException;
+    }
+
+    private final int width;
+    private final int height;
+    private final int tilesX;
+    private final int tilesY;
+    private final ColorModel colorModel;
+    private final SampleModel sampleModel;
+    private final Object[] tiles;
+    private final int sharedTiles;
+    private final TileLoader tileLoader; // null for images built in memory
+    private final int[] tileIds;
+
+    private TiledImage(int width, int height, ColorModel colorModel, SampleModel sampleModel, Object[] tiles,
+                       TiledImage parent) {
+        this.width = width;
+        this.height = height;
+        this.tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        this.tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        this.colorModel = colorModel;
+        this.sampleModel = sampleModel;
+        this.tiles = tiles;
+
+        int shared = 0;
+        if (parent != null && parent.tiles.length == tiles.length) {
+            for (int i = 0; i < tiles.length; i++) {
+                if (tiles[i] == parent.tiles[i]) {
+                    shared++;
+                }
+            }
+        }
+        this.sharedTiles = shared;
+        this.tileLoader = null;
+        this.tileIds = null;
+    }
+
+    private TiledImage(int width, int height, BufferedImage prototype, TileLoader tileLoader, int[] tileIds) {
+        this.width = width;
+        this.height = height;
+        this.tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        this.tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        this.colorModel = prototype.getColorModel();
+        this.sampleModel = prototype.getSampleModel();
+        this.tiles = new Object[tilesX * tilesY];
+        this.sharedTiles = 0;
+        this.tileLoader = tileLoader;
+        this.tileIds = tileIds;
+        if (tileIds.length != tiles.length) {
+            throw new IllegalArgumentException("Expected " + tiles.length + " tile ids, got " + tileIds.length);
+        }
+    }
+
+    /**
+     * Image whose tiles are loaded on first access. imageType must be a standard
+     * BufferedImage type with a fixed color model (not TYPE_CUSTOM or indexed).
+     *
+     * @param tileIds loader id for each tile, row-major
+     */
+    public static TiledImage lazy(int width, int height, int imageType, TileLoader loader, int[] tileIds) {
+        return new TiledImage(width, height, new BufferedImage(1, 1, imageType), loader, tileIds);
+    }
+
+    /**
+     * Split an image into tiles, reusing the parent's tile wherever the pixels are identical.
+     *
+     * @param parent image this one was derived from, or null
+     */
+    public static TiledImage fromImage(BufferedImage image, TiledImage parent) {
+        long startTime = System.nanoTime();
+        int width = image.getWidth();
+        int height = image.getHeight();
+        Raster raster = image.getRaster();
+        int tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        int tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        boolean compatible = parent != null && parent.isCompatible(image);
+
+        Object[] tiles = new Object[tilesX * tilesY];
+        IntStream.range(0, tiles.length).parallel().forEach(i -> {
+            int x0 = (i % tilesX) * TILE_SIZE;
+            int y0 = (i / tilesX) * TILE_SIZE;
+            Object tile = raster.getDataElements(x0, y0, Math.min(TILE_SIZE, width - x0),
+                    Math.min(TILE_SIZE, height - y0), null);
+            Object parentTile = compatible ? parent.getTile(i) : null;
+            tiles[i] = parentTile != null && sameTile(tile, parentTile) ? parentTile : tile;
+        });
+
+        TiledImage result = new TiledImage(width, height, image.getColorModel(), raster.getSampleModel(), tiles,
+                compatible ? parent : null);
+        long time = (System.nanoTime() - startTime) / 1_000_000;
+        System.out.println("[TIMING] Tiled " + width + "x" + height + " (" + result.sharedTiles + "/" + tiles.length +
+                " tiles shared): " + time + " ms");
+        return result;
+    }
+
+    /**
+     * Assemble a new BufferedImage of the original type.
+     */
+    public BufferedImage toImage() {
+        long startTime = System.nanoTime();
+        WritableRaster raster = Raster.createWritableRaster(sampleModel.createCompatibleSampleModel(width, height),
+                null);
+        IntStream.range(0, tiles.length).parallel().forEach(i -> {
+            int x0 = (i % tilesX) * TILE_SIZE;
+            int y0 = (i / tilesX) * TILE_SIZE;
+            // Tiles cover disjoint rectangles of the shared raster
+            raster.setDataElements(x0, y0, Math.min(TILE_SIZE, width - x0), Math.min(TILE_SIZE, height - y0),
+                    getTile(i));
+        });
+        BufferedImage image = new BufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(), null);
+        long time = (System.nanoTime() - startTime) / 1_000_000;
+        System.out.println("[TIMING] Materialized " + width + "x" + height + " from tiles: " + time + " ms");
+        return image;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTileCount() {
+        return tiles.length;
+    }
+
+    /**
+     * Number of tiles shared with the parent this image was derived from.
+     */
+    public int getSharedTileCount() {
+        return sharedTiles;
+    }
+
+    /**
+     * BufferedImage type of the materialized image (TYPE_CUSTOM for non-standard layouts).
+     */
+    public int getImageType() {
+        WritableRaster raster = Raster.createWritableRaster(sampleModel.createCompatibleSampleModel(1, 1), null);
+        return new BufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(), null).getType();
+    }
+
+    /**
+     * Tile array at index (row-major, tilesX per row), loading it if needed; must not be modified.
+     */
+    Object getTile(int index) {
+        if (tileLoader == null) {
+            return tiles[index];
+        }
+        synchronized (this) {
+            if (tiles[index] == null) {
+                try {
+                    tiles[index] = tileLoader.loadTile(tileIds[index]);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException("Cannot load tile " + tileIds[index], ex);
+                }
+            }
+            return tiles[index];
+        }
+    }
+
+    /**
+     * Tile array at index if it is in memory, else null (never triggers loading).
+     */
+    Object peekTile(int index) {
+        if (tileLoader == null) {
+            return tiles[index];
+        }
+        synchronized (this) {
+            return tiles[index];
+        }
+    }
+
+    /**
+     * Approximate bytes of pixel data in memory for this image (shared tiles included).
+     */
+    public long getSizeBytes() {
+        long total = 0;
+        for (int i = 0; i < tiles.length; i++) {
+            total += tileBytes(peekTile(i));
+        }
+        return total;
+    }
+
+    static long tileBytes(Object tile) {
+        if (tile instanceof byte[]) {
+            return ((byte[]) tile).length;
+        } else if (tile instanceof short[]) {
+            return 2L * ((short[]) tile).length;
+        } else if (tile instanceof int[]) {
+            return 4L * ((int[]) tile).length;
+        } else if (tile instanceof float[]) {
+            return 4L * ((float[]) tile).length;
+        } else if (tile instanceof double[]) {
+            return 8L * ((double[]) tile).length;
+        }
+        return 0;
+    }
+
+    private boolean isCompatible(BufferedImage image) {
+        return image.getWidth() == width && image.getHeight() == height
+                && colorModel.equals(image.getColorModel())
+                && image.getSampleModel().getTransferType() == sampleModel.getTransferType()
+                && image.getSampleModel().getNumDataElements() == sampleModel.getNumDataElements();
+    }
+
+    private static boolean sameTile(Object a, Object b) {
+        if (a instanceof byte[] && b instanceof byte[]) {
+            return Arrays.equals((byte[]) a, (byte[]) b);
+        } else if (a instanceof short[] && b instanceof short[]) {
+            return Arrays.equals((short[]) a, (short[]) b);
+        } else if (a instanceof int[] && b instanceof int[]) {
+            return Arrays.equals((int[]) a, (int[]) b);
+        } else if (a instanceof float[] && b instanceof float[]) {
+            return Arrays.equals((float[]) a, (float[]) b);
+        } else if (a instanceof double[] && b instanceof double[]) {
+            return Arrays.equals((double[]) a, (double[]) b);
+        }
+        return false;
+    }
+}
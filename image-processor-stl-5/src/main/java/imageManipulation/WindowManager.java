@@ -2,6 +2,8 @@ package imageManipulation;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -21,11 +23,13 @@ public class WindowManager {
 
     private final List<JFrame> displayWindows;
     private final Map<Integer, ImageDisplayWindow> windowsBySequence; // Track windows by sequence number
+    private final MipPyramidCache pyramidCache; // Display pyramids by sequence number
     private String fileName = "";
 
     public WindowManager() {
         this.displayWindows = new ArrayList<>();
         this.windowsBySequence = new HashMap<>();
+        this.pyramidCache = new MipPyramidCache();
     }
 
     public void addWindow(JFrame window) {
@@ -36,6 +40,7 @@ public class WindowManager {
         displayWindows.forEach(item -> item.dispose());
         displayWindows.clear();
         windowsBySequence.clear();
+        pyramidCache.clear();
     }
 
     public ImageDisplayWindow createAndShowWindow(BufferedImage image, String functionName,
@@ -46,13 +51,28 @@ public class WindowManager {
 
     public ImageDisplayWindow createAndShowWindow(BufferedImage image, String functionName,
                                                   int seqNum, int sourceSeqNum) {
-        ImageDisplayWindow window = new ImageDisplayWindow(image, functionName, seqNum, sourceSeqNum, fileName);
+        // Pinned while the window is open, so the cache budget covers what windows hold
+        MipPyramid pyramid = pyramidCache.acquire(seqNum, image);
+        ImageDisplayWindow window = new ImageDisplayWindow(image, pyramid, functionName, seqNum, sourceSeqNum, fileName);
+        window.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                pyramidCache.release(seqNum, pyramid);
+            }
+        });
         window.setVisible(true);
         addWindow(window);
         windowsBySequence.put(seqNum, window);
         return window;
     }
 
+    /**
+     * Display pyramid cache, shared so pyramids can be prepared off the EDT.
+     */
+    public MipPyramidCache getPyramidCache() {
+        return pyramidCache;
+    }
+
     /**
      * Check if a window for the given sequence number is open.
      */
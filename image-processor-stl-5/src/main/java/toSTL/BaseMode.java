@@ -0,0 +1,37 @@
+package toSTL;
+
+/**
+ * How VoxelToSTL builds the flat bottom of the model at z = 0.
+ */
+public enum BaseMode {
+    /**
+     * Two bottom triangles under every grid cell (the original mesher).
+     */
+    PER_QUAD("Per cell"),
+    /**
+     * The floor merged into large rectangles, triangulated only where they meet each other
+     * and the side walls; the triangle count follows the outline rather than the area.
+     */
+    MERGED("Merged");
+
+    /**
+     * Mode used when none is given: by recipes and logs written before the option existed,
+     * and by conversion requests without a base parameter.
+     */
+    public static final BaseMode DEFAULT = PER_QUAD;
+
+    private final String displayName;
+
+    BaseMode(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
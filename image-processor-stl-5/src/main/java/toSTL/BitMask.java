@@ -0,0 +1,182 @@
+package toSTL;
+
+import java.util.Arrays;
+
+/**
+ * 2D bit mask over a width x height grid, one bit per cell (8x smaller than boolean[][]).
+ * Each x row of cells y = 0..height-1 is packed into consecutive long words (bit y % 64 of
+ * word y / 64), so whole rows can be scanned and combined 64 cells at a time. Bits past
+ * height are always zero. Reads outside the grid return false (or a zero word), which lets
+ * neighbor tests at the border skip bounds checks.
+ */
+public class BitMask {
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long[] words;
+
+    public BitMask(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (height + 63) >>> 6;
+        this.words = new long[width * wordsPerRow];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getWordsPerRow() {
+        return wordsPerRow;
+    }
+
+    public boolean get(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height
+                && (words[x * wordsPerRow + (y >>> 6)] & (1L << y)) != 0;
+    }
+
+    public void set(int x, int y) {
+        words[x * wordsPerRow + (y >>> 6)] |= 1L << y;
+    }
+
+    public void clear(int x, int y) {
+        words[x * wordsPerRow + (y >>> 6)] &= ~(1L << y);
+    }
+
+    /**
+     * Set cells (x, from) up to but excluding (x, to).
+     */
+    public void set(int x, int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        int row = x * wordsPerRow;
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (first == last) {
+            words[row + first] |= firstMask & lastMask;
+            return;
+        }
+        words[row + first] |= firstMask;
+        Arrays.fill(words, row + first + 1, row + last, -1L);
+        words[row + last] |= lastMask;
+    }
+
+    /**
+     * Index of the first set cell at or after (x, from) in row x, or -1.
+     */
+    public int nextSet(int x, int from) {
+        if (from >= height) {
+            return -1;
+        }
+        int row = x * wordsPerRow;
+        int w = from >>> 6;
+        long word = words[row + w] & (-1L << from);
+        while (word == 0) {
+            if (++w == wordsPerRow) {
+                return -1;
+            }
+            word = words[row + w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Index of the first clear cell at or after (x, from) in row x, or height.
+     */
+    public int nextClear(int x, int from) {
+        if (from >= height) {
+            return height;
+        }
+        int row = x * wordsPerRow;
+        int w = from >>> 6;
+        long word = ~words[row + w] & (-1L << from);
+        while (word == 0) {
+            if (++w == wordsPerRow) {
+                return height;
+            }
+            word = ~words[row + w];
+        }
+        return Math.min(height, (w << 6) + Long.numberOfTrailingZeros(word));
+    }
+
+    /**
+     * True if cells (x, from) up to but excluding (x, to) are all set in this mask and all
+     * clear in other (a mask of the same size).
+     */
+    public boolean allSetAndClearIn(BitMask other, int x, int from, int to) {
+        if (from >= to) {
+            return true;
+        }
+        int row = x * wordsPerRow;
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        for (int w = first; w <= last; w++) {
+            long range = -1L;
+            if (w == first) {
+                range &= -1L << from;
+            }
+            if (w == last) {
+                range &= -1L >>> -to;
+            }
+            if (((words[row + w] & ~other.words[row + w]) & range) != range) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ===== Word-level neighbor tests =====
+
+    /**
+     * Word w of row x (cells 64w..64w+63), or 0 outside the grid.
+     */
+    public long word(int x, int w) {
+        if (x < 0 || x >= width || w < 0 || w >= wordsPerRow) {
+            return 0;
+        }
+        return words[x * wordsPerRow + w];
+    }
+
+    /**
+     * Word w of row x shifted so bit b holds cell (x, 64w + b - 1): the lower neighbors.
+     */
+    public long lowerNeighbors(int x, int w) {
+        return (word(x, w) << 1) | (word(x, w - 1) >>> 63);
+    }
+
+    /**
+     * Cells of word w in row x that are set while their lower neighbor (x, y - 1) is clear:
+     * the start of every +x boundary edge along the bottom of the solid.
+     */
+    public long lowerEdges(int x, int w) {
+        return word(x, w) & ~lowerNeighbors(x, w);
+    }
+
+    /**
+     * The 2x2 cells around grid point (x, y) as a 4-bit case: bit 0 cell (x - 1, y - 1),
+     * bit 1 (x, y - 1), bit 2 (x - 1, y), bit 3 (x, y).
+     */
+    public int pointCase(int x, int y) {
+        return (get(x - 1, y - 1) ? 1 : 0) | (get(x, y - 1) ? 2 : 0)
+                | (get(x - 1, y) ? 4 : 0) | (get(x, y) ? 8 : 0);
+    }
+
+    public int cardinality() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    public long memoryBytes() {
+        return 8L * words.length;
+    }
+}
@@ -0,0 +1,37 @@
+package toSTL;
+
+/**
+ * Progress and cooperative cancellation for mesh generation and STL writing.
+ * Callbacks run on the converting thread; implementations must hand UI updates to the EDT.
+ * When isCancelled() returns true the converter/writer stops with a CancellationException.
+ */
+public interface ConversionListener {
+
+    /**
+     * Listener that ignores progress and never cancels.
+     */
+    ConversionListener NONE = new ConversionListener() {
+    };
+
+    /**
+     * Mesh generation progress in grid rows (all generation passes counted together).
+     */
+    default void rowsProcessed(int rows, int totalRows) {
+    }
+
+    /**
+     * Running total of triangles generated so far.
+     */
+    default void trianglesEmitted(long count) {
+    }
+
+    /**
+     * Running total of bytes written; totalBytes is -1 when not known up-front (ASCII).
+     */
+    default void bytesWritten(long bytes, long totalBytes) {
+    }
+
+    default boolean isCancelled() {
+        return false;
+    }
+}
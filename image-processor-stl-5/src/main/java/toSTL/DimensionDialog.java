@@ -14,6 +14,11 @@ public class DimensionDialog {
     private boolean flipLeftRight = false;
     private double scalePercent = 100.0;
     private int pixelClipping = 500;
+    private int zLayers = 0; // 0 = full image precision (continuous heights)
+    private Orientation rotation = Orientation.IDENTITY;
+    private boolean mergedBase = true;
+    private boolean baseModeEnabled = true;
+    private double plinth = 0.0; // Solid base under the relief, 0 = none
     private boolean confirmed = false;
 
     /**
@@ -49,6 +54,14 @@ public class DimensionDialog {
         JCheckBox flipCheckBox = new JCheckBox("Flip Left-Right", flipLeftRight);
         JTextField scaleField = new JTextField("100", 5);
         JTextField pixelClippingField = new JTextField(String.valueOf(pixelClipping), 5);
+        JTextField zLayersField = new JTextField(String.valueOf(zLayers), 5);
+        JComboBox<Orientation> rotationCombo = new JComboBox<>(new Orientation[] {
+                Orientation.IDENTITY, Orientation.ROTATE_90, Orientation.ROTATE_180, Orientation.ROTATE_270});
+        rotationCombo.setSelectedItem(rotation);
+        JTextField plinthField = new JTextField(String.valueOf(plinth), 5);
+        JCheckBox mergedBaseCheckBox = new JCheckBox("Merge bottom plate (fewer triangles)",
+                mergedBase && baseModeEnabled);
+        mergedBaseCheckBox.setEnabled(baseModeEnabled);
 
         JPanel panel = new JPanel(new GridBagLayout());
         GridBagConstraints gbc = new GridBagConstraints();
@@ -93,12 +106,36 @@ public class DimensionDialog {
 
         gbc.gridx = 0;
         gbc.gridy = 5;
+        panel.add(new JLabel("Z layers (0 = full precision):"), gbc);
+
+        gbc.gridx = 1;
+        panel.add(zLayersField, gbc);
+
+        gbc.gridx = 0;
+        gbc.gridy = 6;
+        panel.add(new JLabel("Rotation:"), gbc);
+
+        gbc.gridx = 1;
+        panel.add(rotationCombo, gbc);
+
+        gbc.gridx = 0;
+        gbc.gridy = 7;
+        panel.add(new JLabel("Base plinth (mm, 0 = none):"), gbc);
+
+        gbc.gridx = 1;
+        panel.add(plinthField, gbc);
+
+        gbc.gridx = 0;
+        gbc.gridy = 8;
         gbc.gridwidth = 2;
         panel.add(invertCheckBox, gbc);
 
-        gbc.gridy = 6;
+        gbc.gridy = 9;
         panel.add(flipCheckBox, gbc);
 
+        gbc.gridy = 10;
+        panel.add(mergedBaseCheckBox, gbc);
+
         int result = JOptionPane.showConfirmDialog(
                 null,
                 panel,
@@ -113,8 +150,14 @@ public class DimensionDialog {
                 thickness = Double.parseDouble(thicknessField.getText());
                 scalePercent = Double.parseDouble(scaleField.getText());
                 pixelClipping = Integer.parseInt(pixelClippingField.getText());
+                zLayers = Integer.parseInt(zLayersField.getText());
                 invertHeights = invertCheckBox.isSelected();
                 flipLeftRight = flipCheckBox.isSelected();
+                rotation = (Orientation) rotationCombo.getSelectedItem();
+                plinth = Double.parseDouble(plinthField.getText());
+                if (baseModeEnabled) {
+                    mergedBase = mergedBaseCheckBox.isSelected();
+                }
 
                 if (width <= 0 || height <= 0 || thickness <= 0) {
                     JOptionPane.showMessageDialog(null,
@@ -124,6 +167,14 @@ public class DimensionDialog {
                     return false;
                 }
 
+                if (plinth < 0) {
+                    JOptionPane.showMessageDialog(null,
+                            "Base plinth cannot be negative!",
+                            "Invalid Input",
+                            JOptionPane.ERROR_MESSAGE);
+                    return false;
+                }
+
                 if (scalePercent < 1 || scalePercent > 300) {
                     JOptionPane.showMessageDialog(null,
                             "Scale percentage must be between 1 and 300!",
@@ -132,6 +183,14 @@ public class DimensionDialog {
                     return false;
                 }
 
+                if (zLayers < 0 || zLayers > HeightMap.MAX_16_BIT) {
+                    JOptionPane.showMessageDialog(null,
+                            "Z layers must be between 0 and " + HeightMap.MAX_16_BIT + "!",
+                            "Invalid Input",
+                            JOptionPane.ERROR_MESSAGE);
+                    return false;
+                }
+
                 confirmed = true;
                 return true;
             } catch (NumberFormatException e) {
@@ -174,6 +233,42 @@ public class DimensionDialog {
         return pixelClipping;
     }
 
+    /**
+     * Number of height steps to quantize to, or 0 to keep the image's full precision.
+     */
+    public int getZLayers() {
+        return zLayers;
+    }
+
+    /**
+     * Clockwise rotation applied to the height map (as a view, no pixel copy).
+     */
+    public Orientation getRotation() {
+        return rotation;
+    }
+
+    /**
+     * How the bottom of the model is built; always per cell when the option is disabled.
+     */
+    public BaseMode getBaseMode() {
+        return mergedBase && baseModeEnabled ? BaseMode.MERGED : BaseMode.PER_QUAD;
+    }
+
+    /**
+     * Enable or disable the bottom plate option, for exports whose mesher has only one way
+     * to build the bottom. Call before showDialog().
+     */
+    public void setBaseModeEnabled(boolean enabled) {
+        this.baseModeEnabled = enabled;
+    }
+
+    /**
+     * Thickness of the solid base under the relief in mm (before scaling), or 0 for none.
+     */
+    public double getPlinth() {
+        return plinth;
+    }
+
     public boolean isConfirmed() {
         return confirmed;
     }
@@ -0,0 +1,192 @@
+package toSTL;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+
+/**
+ * Triangle mesh whose vertices lie on an integer grid, as the meshers' vertices do: x and y
+ * are stored as ints in units of xyScale, z in units of zScale, and converted to floats only
+ * when a triangle is read. A triangle takes 37 bytes (9 ints and a normal code) instead of a
+ * Triangle with four Vector3s (about 130 bytes), and equal vertices are equal ints, so
+ * welding (MeshValidator) is exact.
+ *
+ * Normals are stored as one of the six axis directions, or computed from the vertices when
+ * read. As a List&lt;Triangle&gt; the mesh works with everything that takes triangles - get()
+ * builds each Triangle on demand - while STLWriter and MeshValidator read the ints directly.
+ * The list is append-only: add(normal, ...) and append(), plus clear().
+ */
+public class GridMesh extends AbstractList<Triangle> {
+    public static final int NORMAL_COMPUTED = 0;
+    public static final int NORMAL_PLUS_X = 1;
+    public static final int NORMAL_MINUS_X = 2;
+    public static final int NORMAL_PLUS_Y = 3;
+    public static final int NORMAL_MINUS_Y = 4;
+    public static final int NORMAL_PLUS_Z = 5;
+    public static final int NORMAL_MINUS_Z = 6;
+    private static final Vector3[] AXIS_NORMALS = {
+            null,
+            new Vector3(1, 0, 0), new Vector3(-1, 0, 0),
+            new Vector3(0, 1, 0), new Vector3(0, -1, 0),
+            new Vector3(0, 0, 1), new Vector3(0, 0, -1)
+    };
+
+    private final float xyScale;
+    private final float zScale;
+    private int[] coords = new int[9 * 64]; // x, y, z of the three corners per triangle
+    private byte[] normals = new byte[64];
+    private int size;
+
+    /**
+     * @param xyScale model units per grid step in x and y
+     * @param zScale  model units per grid step in z
+     */
+    public GridMesh(float xyScale, float zScale) {
+        this.xyScale = xyScale;
+        this.zScale = zScale;
+    }
+
+    /**
+     * Normal code for an axis direction given as unit steps, e.g. (0, -1, 0).
+     */
+    public static int axisNormal(int dx, int dy, int dz) {
+        if (dx != 0) {
+            return dx > 0 ? NORMAL_PLUS_X : NORMAL_MINUS_X;
+        }
+        if (dy != 0) {
+            return dy > 0 ? NORMAL_PLUS_Y : NORMAL_MINUS_Y;
+        }
+        return dz > 0 ? NORMAL_PLUS_Z : NORMAL_MINUS_Z;
+    }
+
+    public float getXYScale() {
+        return xyScale;
+    }
+
+    public float getZScale() {
+        return zScale;
+    }
+
+    /**
+     * Append a triangle (corners counterclockwise seen from outside).
+     *
+     * @param normal one of the NORMAL_ codes
+     */
+    public void add(int normal, int x1, int y1, int z1, int x2, int y2, int z2, int x3, int y3, int z3) {
+        if (size == normals.length) {
+            grow(size + 1);
+        }
+        int i = 9 * size;
+        coords[i] = x1;
+        coords[i + 1] = y1;
+        coords[i + 2] = z1;
+        coords[i + 3] = x2;
+        coords[i + 4] = y2;
+        coords[i + 5] = z2;
+        coords[i + 6] = x3;
+        coords[i + 7] = y3;
+        coords[i + 8] = z3;
+        normals[size++] = (byte) normal;
+        modCount++;
+    }
+
+    /**
+     * Append all triangles of another mesh on the same grid.
+     */
+    public void append(GridMesh other) {
+        if (other.xyScale != xyScale || other.zScale != zScale) {
+            throw new IllegalArgumentException("Meshes are on different grids");
+        }
+        if (size + other.size > normals.length) {
+            grow(size + other.size);
+        }
+        System.arraycopy(other.coords, 0, coords, 9 * size, 9 * other.size);
+        System.arraycopy(other.normals, 0, normals, size, other.size);
+        size += other.size;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * The triangle at index, converted to floats.
+     */
+    @Override
+    public Triangle get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Triangle " + index + " of " + size);
+        }
+        Vector3 v1 = vertex(index, 0);
+        Vector3 v2 = vertex(index, 1);
+        Vector3 v3 = vertex(index, 2);
+        int normal = normals[index];
+        return normal == NORMAL_COMPUTED ? new Triangle(v1, v2, v3) : new Triangle(AXIS_NORMALS[normal], v1, v2, v3);
+    }
+
+    public long memoryBytes() {
+        return 4L * coords.length + normals.length;
+    }
+
+    // Direct access for the writer and the validator
+
+    Vector3 vertex(int triangle, int corner) {
+        int i = 9 * triangle + 3 * corner;
+        return new Vector3(coords[i] * xyScale, coords[i + 1] * xyScale, coords[i + 2] * zScale);
+    }
+
+    /**
+     * Normal and corners of a triangle as 12 floats, in STL facet order. Computed normals use
+     * the same float arithmetic as Triangle, so the output matches get().
+     */
+    void floats(int triangle, float[] out) {
+        int i = 9 * triangle;
+        for (int k = 0; k < 9; k += 3) {
+            out[3 + k] = coords[i + k] * xyScale;
+            out[4 + k] = coords[i + k + 1] * xyScale;
+            out[5 + k] = coords[i + k + 2] * zScale;
+        }
+        Vector3 normal = AXIS_NORMALS[normals[triangle]];
+        if (normal != null) {
+            out[0] = normal.x;
+            out[1] = normal.y;
+            out[2] = normal.z;
+            return;
+        }
+        float ux = out[6] - out[3], uy = out[7] - out[4], uz = out[8] - out[5];
+        float vx = out[9] - out[3], vy = out[10] - out[4], vz = out[11] - out[5];
+        float nx = uy * vz - uz * vy;
+        float ny = uz * vx - ux * vz;
+        float nz = ux * vy - uy * vx;
+        float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length == 0) {
+            out[0] = 0;
+            out[1] = 0;
+            out[2] = 1;
+        } else {
+            out[0] = nx / length;
+            out[1] = ny / length;
+            out[2] = nz / length;
+        }
+    }
+
+    /**
+     * Grid coordinate axis (0-2) of a triangle corner.
+     */
+    int coordinate(int triangle, int corner, int axis) {
+        return coords[9 * triangle + 3 * corner + axis];
+    }
+
+    private void grow(int minTriangles) {
+        int capacity = Math.max(minTriangles, normals.length + (normals.length >> 1));
+        coords = Arrays.copyOf(coords, Math.multiplyExact(9, capacity));
+        normals = Arrays.copyOf(normals, capacity);
+    }
+}
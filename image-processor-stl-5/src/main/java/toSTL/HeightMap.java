@@ -0,0 +1,130 @@
+package toSTL;
+
+/**
+ * Height field with up to 16-bit precision per grid point.
+ * Levels are unsigned values 0..maxLevel stored in a short[] (2 bytes per point, independent
+ * of the number of height steps); the mesher maps maxLevel to the model's maximum height.
+ * Indexing is [y * width + x] with x along the STL X axis.
+ * oriented() returns a rotated or mirrored view over the same levels (no copy); the view
+ * remaps indices on every access.
+ */
+public class HeightMap {
+    public static final int MAX_16_BIT = 65535;
+
+    private final int width;
+    private final int height;
+    private final int maxLevel;
+    private final short[] levels;
+    private final Orientation orientation;
+    private final int storageWidth;
+    private final int storageHeight;
+
+    public HeightMap(int width, int height, int maxLevel) {
+        this(width, height, maxLevel, new short[width * height]);
+    }
+
+    public HeightMap(int width, int height, int maxLevel, short[] levels) {
+        if (maxLevel < 1 || maxLevel > MAX_16_BIT) {
+            throw new IllegalArgumentException("maxLevel must be 1-" + MAX_16_BIT + ": " + maxLevel);
+        }
+        if (levels.length != width * height) {
+            throw new IllegalArgumentException("Expected " + (width * height) + " levels, got " + levels.length);
+        }
+        this.width = width;
+        this.height = height;
+        this.maxLevel = maxLevel;
+        this.levels = levels;
+        this.orientation = Orientation.IDENTITY;
+        this.storageWidth = width;
+        this.storageHeight = height;
+    }
+
+    private HeightMap(HeightMap storage, int maxLevel, short[] levels, Orientation orientation) {
+        this.storageWidth = storage.storageWidth;
+        this.storageHeight = storage.storageHeight;
+        this.width = orientation.outputWidth(storageWidth, storageHeight);
+        this.height = orientation.outputHeight(storageWidth, storageHeight);
+        this.maxLevel = maxLevel;
+        this.levels = levels;
+        this.orientation = orientation;
+    }
+
+    /**
+     * Build a height map from a voxel volume [x][y][z] by counting filled voxels per column.
+     */
+    public static HeightMap fromVoxels(boolean[][][] voxels) {
+        int xSize = voxels.length;
+        int ySize = voxels[0].length;
+        int zSize = voxels[0][0].length;
+
+        HeightMap map = new HeightMap(xSize, ySize, zSize);
+        for (int x = 0; x < xSize; x++) {
+            for (int y = 0; y < ySize; y++) {
+                int voxelCount = 0;
+                for (int z = 0; z < zSize; z++) {
+                    if (voxels[x][y][z]) voxelCount++;
+                }
+                map.set(x, y, voxelCount);
+            }
+        }
+        return map;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getMaxLevel() {
+        return maxLevel;
+    }
+
+    public Orientation getOrientation() {
+        return orientation;
+    }
+
+    public int get(int x, int y) {
+        return levels[index(x, y)] & 0xFFFF;
+    }
+
+    public void set(int x, int y, int level) {
+        levels[index(x, y)] = (short) level;
+    }
+
+    private int index(int x, int y) {
+        if (orientation == Orientation.IDENTITY) {
+            return y * width + x;
+        }
+        return orientation.sourceIndex(x, y, storageWidth, storageHeight);
+    }
+
+    /**
+     * Rotated or mirrored view sharing this map's levels; writes go through to the same storage.
+     */
+    public HeightMap oriented(Orientation next) {
+        if (next == Orientation.IDENTITY) {
+            return this;
+        }
+        return new HeightMap(this, maxLevel, levels, orientation.then(next));
+    }
+
+    /**
+     * Quantize to the given number of layers: level -> floor(level * layers / (maxLevel + 1)),
+     * so 64 layers over an 8-bit map reproduces the classic 64-step voxel extrusion.
+     * Views keep their orientation. Returns this map when layers is 0 (full precision).
+     */
+    public HeightMap quantized(int layers) {
+        if (layers <= 0) {
+            return this;
+        }
+        short[] quantized = new short[levels.length];
+        long divisor = maxLevel + 1L;
+        for (int i = 0; i < levels.length; i++) {
+            quantized[i] = (short) ((levels[i] & 0xFFFF) * (long) layers / divisor);
+        }
+        return new HeightMap(this, layers, quantized, orientation);
+    }
+}
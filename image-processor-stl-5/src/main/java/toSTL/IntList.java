@@ -0,0 +1,22 @@
+package toSTL;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints for the mesh builders (no boxing).
+ */
+class IntList {
+    int[] data = new int[64];
+    int size;
+
+    void add(int value) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, size * 2);
+        }
+        data[size++] = value;
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
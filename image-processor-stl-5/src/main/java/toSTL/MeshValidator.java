@@ -0,0 +1,451 @@
+package toSTL;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+/**
+ * Checks that a triangle mesh is closed (watertight), manifold and consistently oriented
+ * before it is written, so problems show up at export rather than in the slicer.
+ *
+ * Vertices are welded by exact coordinates, then every edge is counted: a closed manifold
+ * mesh uses each edge in exactly two triangles, once in each direction. Edges used once are
+ * boundary (holes), more than twice non-manifold, and twice in the same direction flipped
+ * faces. An edge used by four triangles, twice in each direction, is a pinch: two cells of a
+ * voxel mesh touching only along that edge. Pinches are non-manifold, but the solid is still
+ * closed and consistently oriented, so they are counted separately (see Report.isValid).
+ *
+ * Both the vertex and the edge index are primitive open-addressing hash tables (no boxed
+ * keys) split into SHARDS independent shards by hash, so triangle chunks are bucketed in
+ * parallel and each shard is then filled and counted by its own thread.
+ * A GridMesh is welded on its integer coordinates, without building Triangle objects.
+ */
+public class MeshValidator {
+    private static final int SHARD_BITS = 6;
+    private static final int SHARDS = 1 << SHARD_BITS;
+    private static final int CHUNK_TRIANGLES = 1 << 16;
+    private static final long FORWARD = 1L << 63; // Edge key flag: stored as (lower id, higher id)
+
+    private static final int VERTICES = 0;
+    private static final int EDGES = 1;
+    private static final int BOUNDARY = 2;
+    private static final int NON_MANIFOLD = 3;
+    private static final int FLIPPED = 4;
+    private static final int DEGENERATE = 5;
+    private static final int PINCH = 6;
+
+    /**
+     * Validation counts; the mesh is valid when all problem counts are zero.
+     */
+    public static class Report {
+        private final int triangles;
+        private final long vertices;
+        private final long edges;
+        private final long boundaryEdges;
+        private final long nonManifoldEdges;
+        private final long flippedEdges;
+        private final long degenerateTriangles;
+        private final long pinchEdges;
+        private final long timeMillis;
+
+        Report(int triangles, AtomicLongArray counts, long timeMillis) {
+            this.triangles = triangles;
+            this.vertices = counts.get(VERTICES);
+            this.edges = counts.get(EDGES);
+            this.boundaryEdges = counts.get(BOUNDARY);
+            this.nonManifoldEdges = counts.get(NON_MANIFOLD);
+            this.flippedEdges = counts.get(FLIPPED);
+            this.degenerateTriangles = counts.get(DEGENERATE);
+            this.pinchEdges = counts.get(PINCH);
+            this.timeMillis = timeMillis;
+        }
+
+        public long getVertices() {
+            return vertices;
+        }
+
+        public long getEdges() {
+            return edges;
+        }
+
+        /**
+         * Edges used by a single triangle: the mesh has holes.
+         */
+        public long getBoundaryEdges() {
+            return boundaryEdges;
+        }
+
+        /**
+         * Edges shared by more than two triangles.
+         */
+        public long getNonManifoldEdges() {
+            return nonManifoldEdges;
+        }
+
+        /**
+         * Edges whose two triangles traverse them in the same direction (inconsistent normals).
+         */
+        public long getFlippedEdges() {
+            return flippedEdges;
+        }
+
+        /**
+         * Triangles with zero area: two identical corners, or three collinear ones (slicers
+         * flag both as degenerate facets).
+         */
+        public long getDegenerateTriangles() {
+            return degenerateTriangles;
+        }
+
+        /**
+         * Edges where two cells touch only along the edge: four triangles, two in each
+         * direction. Not counted as a problem.
+         */
+        public long getPinchEdges() {
+            return pinchEdges;
+        }
+
+        public boolean isWatertight() {
+            return boundaryEdges == 0;
+        }
+
+        /**
+         * No holes, flipped faces, degenerate triangles or non-manifold edges other than
+         * pinches. Pinch edges are non-manifold by definition but deliberately left out: the
+         * voxel meshers produce one wherever two cells touch only diagonally, which happens in
+         * most height maps; every pair of faces at a pinch still bounds the solid from
+         * opposite sides, so the enclosed volume and the slices through it are well defined
+         * and slicers print them. Counting them would raise the export warning on almost
+         * every model without pointing at a real defect.
+         */
+        public boolean isValid() {
+            return boundaryEdges == 0 && nonManifoldEdges == 0 && flippedEdges == 0 && degenerateTriangles == 0;
+        }
+
+        /**
+         * One-line summary of the problems found, or "closed manifold mesh".
+         */
+        public String getProblems() {
+            if (isValid()) {
+                return pinchEdges > 0 ? "closed mesh, " + pinchEdges + " pinch edges" : "closed manifold mesh";
+            }
+            StringBuilder text = new StringBuilder();
+            appendProblem(text, boundaryEdges, "boundary edges");
+            appendProblem(text, nonManifoldEdges, "non-manifold edges");
+            appendProblem(text, flippedEdges, "inconsistently oriented edges");
+            appendProblem(text, degenerateTriangles, "degenerate triangles");
+            return text.toString();
+        }
+
+        private static void appendProblem(StringBuilder text, long count, String description) {
+            if (count > 0) {
+                text.append(text.length() > 0 ? ", " : "").append(count).append(' ').append(description);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Mesh check: " + triangles + " triangles, " + vertices + " vertices, " + edges + " edges - " +
+                    getProblems() + " (" + timeMillis + " ms)";
+        }
+    }
+
+    /**
+     * Vertex slot (3 * triangle + corner) access for welding.
+     */
+    private interface Vertices {
+        long hash(int slot);
+
+        boolean same(int a, int b);
+
+        /**
+         * Whether the three (distinct) corners of a triangle lie on one line.
+         */
+        boolean collinear(int triangle);
+    }
+
+    /**
+     * Validate a mesh, using all cores.
+     */
+    public static Report validate(List<Triangle> triangles) {
+        long startTime = System.nanoTime();
+        int triangleCount = triangles.size();
+        Vertices vertices = triangles instanceof GridMesh
+                ? gridVertices((GridMesh) triangles) : floatVertices(triangles);
+        int chunks = (triangleCount + CHUNK_TRIANGLES - 1) / CHUNK_TRIANGLES;
+        AtomicLongArray counts = new AtomicLongArray(PINCH + 1);
+
+        // Bucket vertex slots (3 per triangle) by shard, one list set per chunk
+        IntList[][] slots = new IntList[chunks][];
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            IntList[] lists = newIntLists();
+            int end = Math.min(triangleCount, (chunk + 1) * CHUNK_TRIANGLES);
+            for (int slot = 3 * chunk * CHUNK_TRIANGLES; slot < 3 * end; slot++) {
+                lists[shard(vertices.hash(slot))].add(slot);
+            }
+            slots[chunk] = lists;
+        });
+
+        // Weld: each shard numbers its distinct vertices as local * SHARDS + shard
+        int[] vertexIds = new int[3 * triangleCount];
+        IntStream.range(0, SHARDS).parallel().forEach(shard -> {
+            int size = 0;
+            for (IntList[] lists : slots) {
+                size += lists[shard].size;
+            }
+            int[] table = new int[tableCapacity(size)]; // Slot + 1 of each distinct vertex, 0 = empty
+            int mask = table.length - 1;
+            int distinct = 0;
+            for (IntList[] lists : slots) {
+                IntList list = lists[shard];
+                for (int i = 0; i < list.size; i++) {
+                    int slot = list.data[i];
+                    int index = (int) vertices.hash(slot) & mask;
+                    while (true) {
+                        int entry = table[index];
+                        if (entry == 0) {
+                            table[index] = slot + 1;
+                            vertexIds[slot] = distinct++ * SHARDS + shard;
+                            break;
+                        }
+                        if (vertices.same(slot, entry - 1)) {
+                            vertexIds[slot] = vertexIds[entry - 1];
+                            break;
+                        }
+                        index = (index + 1) & mask;
+                    }
+                }
+                lists[shard] = null;
+            }
+            counts.addAndGet(VERTICES, distinct);
+        });
+
+        // Bucket edges by shard
+        LongList[][] edges = new LongList[chunks][];
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            LongList[] lists = new LongList[SHARDS];
+            for (int s = 0; s < SHARDS; s++) {
+                lists[s] = new LongList();
+            }
+            int degenerate = 0;
+            int end = Math.min(triangleCount, (chunk + 1) * CHUNK_TRIANGLES);
+            for (int t = chunk * CHUNK_TRIANGLES; t < end; t++) {
+                int a = vertexIds[3 * t];
+                int b = vertexIds[3 * t + 1];
+                int c = vertexIds[3 * t + 2];
+                if (a == b || b == c || c == a) {
+                    degenerate++;
+                    continue;
+                }
+                if (vertices.collinear(t)) {
+                    degenerate++; // Its edges still count: a sliver between the faces around it
+                }
+                addEdge(lists, a, b);
+                addEdge(lists, b, c);
+                addEdge(lists, c, a);
+            }
+            counts.addAndGet(DEGENERATE, degenerate);
+            edges[chunk] = lists;
+        });
+
+        // Count uses of each edge per shard, then classify
+        IntStream.range(0, SHARDS).parallel().forEach(shard -> {
+            int size = 0;
+            for (LongList[] lists : edges) {
+                size += lists[shard].size;
+            }
+            long[] keys = new long[tableCapacity(size)]; // 0 = empty; no edge joins vertex 0 to itself
+            int[] uses = new int[keys.length];
+            int[] forwardUses = new int[keys.length];
+            int mask = keys.length - 1;
+            for (LongList[] lists : edges) {
+                LongList list = lists[shard];
+                for (int i = 0; i < list.size; i++) {
+                    long edge = list.data[i];
+                    long key = edge & ~FORWARD;
+                    int index = (int) mix(key) & mask;
+                    while (keys[index] != 0 && keys[index] != key) {
+                        index = (index + 1) & mask;
+                    }
+                    keys[index] = key;
+                    uses[index]++;
+                    if (edge < 0) {
+                        forwardUses[index]++;
+                    }
+                }
+                lists[shard] = null;
+            }
+
+            long distinct = 0, boundary = 0, nonManifold = 0, flipped = 0, pinch = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == 0) {
+                    continue;
+                }
+                distinct++;
+                if (uses[i] == 1) {
+                    boundary++;
+                } else if (uses[i] == 4 && forwardUses[i] == 2) {
+                    pinch++;
+                } else if (uses[i] > 2) {
+                    nonManifold++;
+                } else if (forwardUses[i] != 1) {
+                    flipped++;
+                }
+            }
+            counts.addAndGet(EDGES, distinct);
+            counts.addAndGet(BOUNDARY, boundary);
+            counts.addAndGet(NON_MANIFOLD, nonManifold);
+            counts.addAndGet(FLIPPED, flipped);
+            counts.addAndGet(PINCH, pinch);
+        });
+
+        long time = (System.nanoTime() - startTime) / 1_000_000;
+        Report report = new Report(triangleCount, counts, time);
+        System.out.println(report);
+        return report;
+    }
+
+    private static void addEdge(LongList[] lists, int from, int to) {
+        long key = from < to ? ((long) from << 32) | to : ((long) to << 32) | from;
+        lists[shard(mix(key))].add(from < to ? key | FORWARD : key);
+    }
+
+    private static Vertices floatVertices(List<Triangle> triangles) {
+        return new Vertices() {
+            @Override
+            public long hash(int slot) {
+                return vertexHash(vertex(triangles, slot));
+            }
+
+            @Override
+            public boolean same(int a, int b) {
+                return sameVertex(vertex(triangles, a), vertex(triangles, b));
+            }
+
+            @Override
+            public boolean collinear(int triangle) {
+                Triangle t = triangles.get(triangle);
+                return zeroCross((double) t.v2.x - t.v1.x, (double) t.v2.y - t.v1.y, (double) t.v2.z - t.v1.z,
+                        (double) t.v3.x - t.v1.x, (double) t.v3.y - t.v1.y, (double) t.v3.z - t.v1.z);
+            }
+        };
+    }
+
+    private static Vertices gridVertices(GridMesh mesh) {
+        return new Vertices() {
+            @Override
+            public long hash(int slot) {
+                int t = slot / 3;
+                int corner = slot % 3;
+                long bits = mesh.coordinate(t, corner, 0);
+                bits = bits * 0x9E3779B97F4A7C15L + mesh.coordinate(t, corner, 1);
+                bits = bits * 0x9E3779B97F4A7C15L + mesh.coordinate(t, corner, 2);
+                return mix(bits);
+            }
+
+            @Override
+            public boolean same(int a, int b) {
+                for (int axis = 0; axis < 3; axis++) {
+                    if (mesh.coordinate(a / 3, a % 3, axis) != mesh.coordinate(b / 3, b % 3, axis)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public boolean collinear(int triangle) {
+                // Exact in long: grid coordinates (half voxels, height levels) are far below 2^31
+                long[] u = new long[3];
+                long[] v = new long[3];
+                for (int axis = 0; axis < 3; axis++) {
+                    int origin = mesh.coordinate(triangle, 0, axis);
+                    u[axis] = mesh.coordinate(triangle, 1, axis) - (long) origin;
+                    v[axis] = mesh.coordinate(triangle, 2, axis) - (long) origin;
+                }
+                return u[1] * v[2] == u[2] * v[1] && u[2] * v[0] == u[0] * v[2] && u[0] * v[1] == u[1] * v[0];
+            }
+        };
+    }
+
+    private static boolean zeroCross(double ux, double uy, double uz, double vx, double vy, double vz) {
+        return uy * vz == uz * vy && uz * vx == ux * vz && ux * vy == uy * vx;
+    }
+
+    private static Vector3 vertex(List<Triangle> triangles, int slot) {
+        Triangle triangle = triangles.get(slot / 3);
+        switch (slot % 3) {
+            case 0:
+                return triangle.v1;
+            case 1:
+                return triangle.v2;
+            default:
+                return triangle.v3;
+        }
+    }
+
+    private static boolean sameVertex(Vector3 a, Vector3 b) {
+        return a.x == b.x && a.y == b.y && a.z == b.z;
+    }
+
+    /**
+     * Hash of the exact coordinates; adding 0 folds -0 into +0 so equal vertices hash equally.
+     */
+    private static long vertexHash(Vector3 v) {
+        long bits = Float.floatToIntBits(v.x + 0.0f);
+        bits = bits * 0x9E3779B97F4A7C15L + Float.floatToIntBits(v.y + 0.0f);
+        bits = bits * 0x9E3779B97F4A7C15L + Float.floatToIntBits(v.z + 0.0f);
+        return mix(bits);
+    }
+
+    /**
+     * 64-bit finalizer (MurmurHash3 fmix64).
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Shard from the top hash bits; tables index with the low bits.
+     */
+    private static int shard(long hash) {
+        return (int) (hash >>> (64 - SHARD_BITS));
+    }
+
+    /**
+     * Power-of-two table size keeping the load factor at most 2/3 for the given entries.
+     */
+    private static int tableCapacity(int entries) {
+        int capacity = 16;
+        while (capacity < entries + entries / 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static IntList[] newIntLists() {
+        IntList[] lists = new IntList[SHARDS];
+        for (int s = 0; s < SHARDS; s++) {
+            lists[s] = new IntList();
+        }
+        return lists;
+    }
+
+    private static class LongList {
+        long[] data = new long[64];
+        int size;
+
+        void add(long value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+    }
+}
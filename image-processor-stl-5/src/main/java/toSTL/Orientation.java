@@ -0,0 +1,145 @@
+package toSTL;
+
+/**
+ * The eight rotations and mirror images of a rectangular grid, expressed as an index remapping
+ * from output (x, y) to source (x, y). Used both for zero-copy height map views and for
+ * materialized image rotation.
+ * The mapping swaps the axes first (for 90/270 degree turns) and then mirrors X and/or Y.
+ */
+public enum Orientation {
+    IDENTITY("Original", false, false, false),
+    ROTATE_90("Rotate 90° CW", true, false, true),
+    ROTATE_180("Rotate 180°", false, true, true),
+    ROTATE_270("Rotate 90° CCW", true, true, false),
+    FLIP_HORIZONTAL("Flip Horizontal", false, true, false),
+    FLIP_VERTICAL("Flip Vertical", false, false, true),
+    TRANSPOSE("Transpose", true, false, false),
+    TRANSVERSE("Transverse", true, true, true);
+
+    private final String displayName;
+    private final boolean swapAxes;
+    private final boolean mirrorX;
+    private final boolean mirrorY;
+
+    Orientation(String displayName, boolean swapAxes, boolean mirrorX, boolean mirrorY) {
+        this.displayName = displayName;
+        this.swapAxes = swapAxes;
+        this.mirrorX = mirrorX;
+        this.mirrorY = mirrorY;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public boolean swapsAxes() {
+        return swapAxes;
+    }
+
+    /**
+     * Output width for a source of the given size.
+     */
+    public int outputWidth(int sourceWidth, int sourceHeight) {
+        return swapAxes ? sourceHeight : sourceWidth;
+    }
+
+    /**
+     * Output height for a source of the given size.
+     */
+    public int outputHeight(int sourceWidth, int sourceHeight) {
+        return swapAxes ? sourceWidth : sourceHeight;
+    }
+
+    public int sourceX(int x, int y, int sourceWidth) {
+        int u = swapAxes ? y : x;
+        return mirrorX ? sourceWidth - 1 - u : u;
+    }
+
+    public int sourceY(int x, int y, int sourceHeight) {
+        int v = swapAxes ? x : y;
+        return mirrorY ? sourceHeight - 1 - v : v;
+    }
+
+    /**
+     * Row-major index into the source array for output position (x, y).
+     */
+    public int sourceIndex(int x, int y, int sourceWidth, int sourceHeight) {
+        return sourceY(x, y, sourceHeight) * sourceWidth + sourceX(x, y, sourceWidth);
+    }
+
+    /**
+     * Change of the source index when the output x increases by one.
+     */
+    public int sourceStepX(int sourceWidth) {
+        if (swapAxes) {
+            return mirrorY ? -sourceWidth : sourceWidth;
+        }
+        return mirrorX ? -1 : 1;
+    }
+
+    /**
+     * The orientation equivalent to applying this one and then next.
+     */
+    public Orientation then(Orientation next) {
+        // Compare index mappings on a non-square grid, where all eight orientations differ
+        int w = 2;
+        int h = 3;
+        int midW = outputWidth(w, h);
+        int midH = outputHeight(w, h);
+        int outW = next.outputWidth(midW, midH);
+        int outH = next.outputHeight(midW, midH);
+
+        for (Orientation candidate : values()) {
+            if (candidate.outputWidth(w, h) != outW) {
+                continue;
+            }
+            boolean matches = true;
+            for (int y = 0; y < outH && matches; y++) {
+                for (int x = 0; x < outW && matches; x++) {
+                    int midX = next.sourceX(x, y, midW);
+                    int midY = next.sourceY(x, y, midH);
+                    matches = candidate.sourceIndex(x, y, w, h) == sourceIndex(midX, midY, w, h);
+                }
+            }
+            if (matches) {
+                return candidate;
+            }
+        }
+        throw new IllegalStateException("No orientation for " + this + " then " + next);
+    }
+
+    /**
+     * The orientation with the given display name, or null if there is none.
+     */
+    public static Orientation fromDisplayName(String displayName) {
+        for (Orientation orientation : values()) {
+            if (orientation.displayName.equals(displayName)) {
+                return orientation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Clockwise rotation by a multiple of 90 degrees.
+     */
+    public static Orientation rotation(int degrees) {
+        switch (((degrees % 360) + 360) % 360) {
+            case 0:
+                return IDENTITY;
+            case 90:
+                return ROTATE_90;
+            case 180:
+                return ROTATE_180;
+            case 270:
+                return ROTATE_270;
+            default:
+                throw new IllegalArgumentException("Rotation must be a multiple of 90 degrees: " + degrees);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
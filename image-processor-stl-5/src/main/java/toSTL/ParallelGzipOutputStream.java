@@ -0,0 +1,197 @@
+package toSTL;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip stream that compresses fixed-size blocks in parallel.
+ * Each block gets its own raw Deflater ending in a SYNC_FLUSH (the last one in a final
+ * block), so the concatenated blocks form a single deflate stream and the output is one
+ * ordinary gzip member - readable by HTTP clients that stop after the first member, unlike
+ * a concatenation of members. The CRC-32 is updated as data is written. Blocks are written
+ * in order while later blocks keep compressing; at most MAX_PENDING_PER_CORE blocks per core
+ * are in flight, so memory stays bounded for any output size. Compression is slightly worse
+ * than a single Deflater (no dictionary across blocks) but throughput scales with cores.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+    private static final int BLOCK_BYTES = 1 << 20;
+    private static final int MAX_PENDING_PER_CORE = 2;
+    private static final byte[] HEADER = {
+            0x1f, (byte) 0x8b, // Magic
+            8,                 // Deflate
+            0,                 // No flags
+            0, 0, 0, 0,        // No modification time
+            0,                 // No extra flags
+            (byte) 255         // Unknown OS
+    };
+
+    private final OutputStream out;
+    private final int level;
+    private final int maxPending;
+    private final ArrayDeque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+    private byte[] block = new byte[BLOCK_BYTES];
+    private int blockLength;
+    private long totalLength;
+    private boolean headerWritten;
+    private boolean finished;
+
+    public ParallelGzipOutputStream(OutputStream out) {
+        this(out, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param level deflate level (0-9, or Deflater.DEFAULT_COMPRESSION)
+     */
+    public ParallelGzipOutputStream(OutputStream out, int level) {
+        this.out = out;
+        this.level = level;
+        this.maxPending = MAX_PENDING_PER_CORE * Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (blockLength == block.length) {
+            submitBlock(false);
+        }
+        block[blockLength++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        ensureOpen();
+        while (length > 0) {
+            if (blockLength == block.length) {
+                submitBlock(false);
+            }
+            int n = Math.min(length, block.length - blockLength);
+            System.arraycopy(bytes, offset, block, blockLength, n);
+            blockLength += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Compress and write everything buffered so far. The partial block is compressed on its
+     * own, so flush only where the data really has to go out.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (blockLength > 0) {
+            submitBlock(false);
+        }
+        drain();
+        out.flush();
+    }
+
+    /**
+     * Write all remaining data and the trailer without closing the underlying stream.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        submitBlock(true); // Possibly empty, to end the deflate stream
+        drain();
+
+        // Trailer: CRC-32 and length mod 2^32, little-endian
+        byte[] trailer = new byte[8];
+        putIntLE(trailer, 0, (int) crc.getValue());
+        putIntLE(trailer, 4, (int) totalLength);
+        out.write(trailer);
+        out.flush();
+        block = null;
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished) {
+            throw new IOException("Stream finished");
+        }
+    }
+
+    private void submitBlock(boolean last) throws IOException {
+        byte[] data = block;
+        int length = blockLength;
+        crc.update(data, 0, length);
+        totalLength += length;
+        pending.add(CompletableFuture.supplyAsync(() -> compress(data, length, level, last)));
+        block = last ? null : new byte[BLOCK_BYTES];
+        blockLength = 0;
+
+        while (pending.size() >= maxPending) {
+            writeBlock();
+        }
+    }
+
+    private void drain() throws IOException {
+        while (!pending.isEmpty()) {
+            writeBlock();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        byte[] compressed;
+        try {
+            compressed = pending.remove().join();
+        } catch (CompletionException ex) {
+            throw new IOException("Gzip block compression failed", ex.getCause());
+        }
+        if (!headerWritten) {
+            out.write(HEADER);
+            headerWritten = true;
+        }
+        out.write(compressed);
+    }
+
+    /**
+     * Raw deflate data for data[0..length), ending in a sync flush or, for the last block,
+     * a final block.
+     */
+    private static byte[] compress(byte[] data, int length, int level, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        deflater.setInput(data, 0, length);
+        if (last) {
+            deflater.finish();
+        }
+        byte[] out = new byte[Math.max(64, length / 2)];
+        int position = 0;
+        while (true) {
+            if (position == out.length) {
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            position += last ? deflater.deflate(out, position, out.length - position)
+                    : deflater.deflate(out, position, out.length - position, Deflater.SYNC_FLUSH);
+            // A flush is complete once deflate leaves part of the output buffer unused
+            if (last ? deflater.finished() : position < out.length) {
+                break;
+            }
+        }
+        deflater.end();
+        return Arrays.copyOf(out, position);
+    }
+
+    private static void putIntLE(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> 8);
+        bytes[offset + 2] = (byte) (value >>> 16);
+        bytes[offset + 3] = (byte) (value >>> 24);
+    }
+}
@@ -0,0 +1,239 @@
+package toSTL;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Voxel volume stored as runs: each (x, y) column is a sorted list of disjoint filled
+ * intervals [zStart, zEnd). A relief column is a single run from 0, so memory follows the
+ * number of runs (8 bytes each, plus 4 bytes per column) rather than width x height x depth,
+ * and genuinely 3D models (overhangs, stacked layers) cost only their extra runs.
+ * All runs are kept in one int[] (start, end pairs), indexed by a column offset table with
+ * columns in [y * width + x] order; the volume is immutable once built.
+ */
+public class RunLengthVolume {
+    private final int width;
+    private final int height;
+    private final int depth;
+    private final int[] columnStart; // Index of each column's first run; one extra entry at the end
+    private final int[] runs;        // zStart, zEnd per run
+
+    /**
+     * Produces the runs of one column.
+     */
+    public interface ColumnRuns {
+        /**
+         * Write column (x, y)'s runs to runs as zStart, zEnd pairs, sorted and not touching
+         * (zEnd of one run < zStart of the next), and return how many there are.
+         * runs has room for every run a column of the volume's depth can hold.
+         */
+        int runs(int x, int y, int[] runs);
+    }
+
+    private RunLengthVolume(int width, int height, int depth, int[] columnStart, int[] runs) {
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        this.columnStart = columnStart;
+        this.runs = runs;
+    }
+
+    /**
+     * Build a volume from a column source, one grid row per task in parallel.
+     */
+    public static RunLengthVolume build(int width, int height, int depth, ColumnRuns source) {
+        int[][] rowRuns = new int[height][];
+        int[][] rowCounts = new int[height][];
+        IntStream.range(0, height).parallel().forEach(y -> {
+            int[] buffer = new int[depth + 2];
+            int[] counts = new int[width];
+            IntList list = new IntList();
+            for (int x = 0; x < width; x++) {
+                int count = source.runs(x, y, buffer);
+                for (int i = 0; i < 2 * count; i += 2) {
+                    if (buffer[i] < 0 || buffer[i] >= buffer[i + 1] || buffer[i + 1] > depth
+                            || (i > 0 && buffer[i] <= buffer[i - 1])) {
+                        throw new IllegalArgumentException("Bad run [" + buffer[i] + ", " + buffer[i + 1] +
+                                ") in column " + x + ", " + y);
+                    }
+                    list.add(buffer[i]);
+                    list.add(buffer[i + 1]);
+                }
+                counts[x] = count;
+            }
+            rowRuns[y] = Arrays.copyOf(list.data, list.size);
+            rowCounts[y] = counts;
+        });
+
+        int[] columnStart = new int[width * height + 1];
+        int total = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                columnStart[y * width + x] = total;
+                total += rowCounts[y][x];
+            }
+        }
+        columnStart[width * height] = total;
+        int[] runs = new int[2 * total];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(rowRuns[y], 0, runs, 2 * columnStart[y * width], rowRuns[y].length);
+        }
+        return new RunLengthVolume(width, height, depth, columnStart, runs);
+    }
+
+    /**
+     * A relief: column (x, y) is filled from 0 up to its level.
+     */
+    public static RunLengthVolume fromHeightMap(HeightMap map) {
+        return build(map.getWidth(), map.getHeight(), map.getMaxLevel(), (x, y, runs) -> {
+            int level = map.get(x, y);
+            if (level == 0) {
+                return 0;
+            }
+            runs[0] = 0;
+            runs[1] = level;
+            return 1;
+        });
+    }
+
+    /**
+     * Height maps stacked as layers, bottom first (see layerRuns).
+     *
+     * @throws IllegalArgumentException if the maps differ in size
+     */
+    public static RunLengthVolume fromLayers(List<HeightMap> layers, int baseLevels) {
+        return build(layers.get(0).getWidth(), layers.get(0).getHeight(), layerDepth(layers, baseLevels),
+                layerRuns(layers, baseLevels));
+    }
+
+    /**
+     * Depth of the layer stack from layerRuns: the base plus one slab of the highest
+     * maximum level per layer, the height of a column where every layer is full.
+     *
+     * @throws IllegalArgumentException if the maps differ in size
+     */
+    public static int layerDepth(List<HeightMap> layers, int baseLevels) {
+        HeightMap first = layers.get(0);
+        for (HeightMap layer : layers) {
+            if (layer.getWidth() != first.getWidth() || layer.getHeight() != first.getHeight()) {
+                throw new IllegalArgumentException("Layers differ in size: " + first.getWidth() + "x" +
+                        first.getHeight() + " and " + layer.getWidth() + "x" + layer.getHeight());
+            }
+        }
+        return Math.addExact(baseLevels, Math.multiplyExact(layers.size(), slabLevels(layers)));
+    }
+
+    /**
+     * Columns of height maps stacked as layers, bottom first, read from the maps on demand:
+     * in each column, layer k adds its level (rescaled to the common maximum level M) on
+     * top of the base and the layers below it. A base baseLevels thick is filled everywhere.
+     * Every column is a single solid run, so no layer floats over a gap left by a lower one.
+     */
+    public static ColumnRuns layerRuns(List<HeightMap> layers, int baseLevels) {
+        int slab = slabLevels(layers);
+        return (x, y, runs) -> {
+            int top = baseLevels;
+            for (HeightMap layer : layers) {
+                top += (int) ((long) layer.get(x, y) * slab / layer.getMaxLevel());
+            }
+            if (top == 0) {
+                return 0;
+            }
+            runs[0] = 0;
+            runs[1] = top;
+            return 1;
+        };
+    }
+
+    private static int slabLevels(List<HeightMap> layers) {
+        int maxLevel = 0;
+        for (HeightMap layer : layers) {
+            maxLevel = Math.max(maxLevel, layer.getMaxLevel());
+        }
+        return maxLevel;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Total number of runs in the volume.
+     */
+    public int getRunCount() {
+        return columnStart[width * height];
+    }
+
+    /**
+     * Number of runs in column (x, y); 0 outside the grid.
+     */
+    public int runCount(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return 0;
+        }
+        int column = y * width + x;
+        return columnStart[column + 1] - columnStart[column];
+    }
+
+    public int zStart(int x, int y, int run) {
+        return runs[2 * (columnStart[y * width + x] + run)];
+    }
+
+    public int zEnd(int x, int y, int run) {
+        return runs[2 * (columnStart[y * width + x] + run) + 1];
+    }
+
+    public boolean isFilled(int x, int y, int z) {
+        for (int run = 0; run < runCount(x, y); run++) {
+            if (z < zStart(x, y, run)) {
+                return false;
+            }
+            if (z < zEnd(x, y, run)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Filled voxels in the whole volume.
+     */
+    public long voxelCount() {
+        long count = 0;
+        for (int i = 0; i < runs.length; i += 2) {
+            count += runs[i + 1] - runs[i];
+        }
+        return count;
+    }
+
+    public long memoryBytes() {
+        return 4L * columnStart.length + 4L * runs.length;
+    }
+
+    // Raw access for the mesher: column (x, y)'s runs are runs[2 * first .. 2 * end)
+
+    int firstRun(int x, int y) {
+        return columnStart[y * width + x];
+    }
+
+    int endRun(int x, int y) {
+        return columnStart[y * width + x + 1];
+    }
+
+    int[] runs() {
+        return runs;
+    }
+
+    int rowRunCount(int y) {
+        return columnStart[(y + 1) * width] - columnStart[y * width];
+    }
+}
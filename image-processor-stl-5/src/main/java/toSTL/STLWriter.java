@@ -3,99 +3,263 @@ package toSTL;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Formatter;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 
+/**
+ * Writes triangles as ASCII or binary STL to a file, an OutputStream or a WritableByteChannel.
+ * The stream and channel variants never seek (the binary triangle count comes from the list
+ * up-front), so they can feed pipes, sockets and compressing streams; they leave the target
+ * open. The file variants delete the partial file on failure or cancellation, and gzip
+ * the output (with ParallelGzipOutputStream) when the file name ends in ".gz".
+ */
 public class STLWriter {
-    
+    public static final String GZIP_SUFFIX = ".gz";
+    private static final int PROGRESS_INTERVAL = 16384; // Triangles between progress reports
+    private static final int BINARY_HEADER_BYTES = 84;
+    private static final int BINARY_TRIANGLE_BYTES = 50;
+    private static final int BATCH_TRIANGLES = 1310; // ~64 KB of binary triangles per write
+    private static final int ASCII_BATCH_TRIANGLES = 256;
+    private static final String HEADER_TEXT = "Binary STL - Image to STL Converter - Nick Radonic 2025";
+
     /**
      * Write triangles to an ASCII STL file
      */
     public static void writeASCII(List<Triangle> triangles, String filename) throws IOException {
+        writeASCII(triangles, filename, ConversionListener.NONE);
+    }
+
+    /**
+     * Write triangles to an ASCII STL file, reporting progress and honoring cancellation.
+     * A cancelled or failed write deletes the partial file.
+     */
+    public static void writeASCII(List<Triangle> triangles, String filename, ConversionListener listener)
+            throws IOException {
+        boolean complete = false;
+        try (OutputStream out = isCompressed(filename)
+                ? new ParallelGzipOutputStream(new FileOutputStream(filename))
+                : new FileOutputStream(filename)) {
+            writeASCII(triangles, out, listener);
+            complete = true;
+        } finally {
+            if (!complete) {
+                deletePartialFile(filename);
+            }
+        }
+    }
+
+    /**
+     * Write ASCII STL to a channel; the channel is not closed.
+     */
+    public static void writeASCII(List<Triangle> triangles, WritableByteChannel channel, ConversionListener listener)
+            throws IOException {
+        writeASCII(triangles, Channels.newOutputStream(channel), listener);
+    }
+
+    /**
+     * Write ASCII STL to a stream, formatting a batch of facets at a time; the stream is
+     * flushed but not closed.
+     */
+    public static void writeASCII(List<Triangle> triangles, OutputStream out, ConversionListener listener)
+            throws IOException {
         long startTime = System.nanoTime();
-        System.out.println("\n--- WRITING ASCII STL FILE ---");
-        
-        try (PrintWriter writer = new PrintWriter(new FileWriter(filename))) {
-            writer.println("solid model");
-            
-            for (Triangle tri : triangles) {
-                writer.printf("  facet normal %e %e %e\n", 
-                    tri.normal.x, tri.normal.y, tri.normal.z);
-                writer.println("    outer loop");
-                writer.printf("      vertex %e %e %e\n", tri.v1.x, tri.v1.y, tri.v1.z);
-                writer.printf("      vertex %e %e %e\n", tri.v2.x, tri.v2.y, tri.v2.z);
-                writer.printf("      vertex %e %e %e\n", tri.v3.x, tri.v3.y, tri.v3.z);
-                writer.println("    endloop");
-                writer.println("  endfacet");
+        System.out.println("\n--- WRITING ASCII STL ---");
+
+        StringBuilder text = new StringBuilder(ASCII_BATCH_TRIANGLES * 256);
+        Formatter formatter = new Formatter(text);
+        long bytes = 0;
+        text.append("solid model\n");
+
+        int written = 0;
+        for (Triangle tri : triangles) {
+            if (written % PROGRESS_INTERVAL == 0) {
+                checkCancelled(listener);
+                listener.bytesWritten(bytes, -1);
+            }
+            written++;
+            formatter.format("  facet normal %e %e %e\n", tri.normal.x, tri.normal.y, tri.normal.z);
+            text.append("    outer loop\n");
+            formatter.format("      vertex %e %e %e\n", tri.v1.x, tri.v1.y, tri.v1.z);
+            formatter.format("      vertex %e %e %e\n", tri.v2.x, tri.v2.y, tri.v2.z);
+            formatter.format("      vertex %e %e %e\n", tri.v3.x, tri.v3.y, tri.v3.z);
+            text.append("    endloop\n");
+            text.append("  endfacet\n");
+
+            if (written % ASCII_BATCH_TRIANGLES == 0) {
+                bytes += flushText(text, out);
             }
-            
-            writer.println("endsolid model");
         }
-        
+        text.append("endsolid model\n");
+        bytes += flushText(text, out);
+        out.flush();
+        listener.bytesWritten(bytes, bytes);
+
         long writeTime = (System.nanoTime() - startTime) / 1_000_000;
-        System.out.println("[TIMING] ASCII STL writing: " + writeTime + " ms");
+        System.out.println("[TIMING] ASCII STL writing: " + writeTime + " ms (" +
+                String.format("%.2f", bytes / (1024.0 * 1024.0)) + " MB)");
     }
-    
+
     /**
      * Write triangles to a binary STL file (recommended - much smaller files)
      */
     public static void writeBinary(List<Triangle> triangles, String filename) throws IOException {
+        writeBinary(triangles, filename, ConversionListener.NONE);
+    }
+
+    /**
+     * Write triangles to a binary STL file, reporting bytes written and honoring cancellation.
+     * A cancelled or failed write deletes the partial file.
+     */
+    public static void writeBinary(List<Triangle> triangles, String filename, ConversionListener listener)
+            throws IOException {
+        boolean complete = false;
+        try (WritableByteChannel channel = isCompressed(filename)
+                ? Channels.newChannel(new ParallelGzipOutputStream(new FileOutputStream(filename)))
+                : FileChannel.open(new File(filename).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeBinary(triangles, channel, listener);
+            complete = true;
+        } finally {
+            if (!complete) {
+                deletePartialFile(filename);
+            }
+        }
+
+        File file = new File(filename);
+        double fileSizeMB = file.length() / (1024.0 * 1024.0);
+        System.out.println("File size: " + String.format("%.2f", fileSizeMB) + " MB" + (isCompressed(filename)
+                ? String.format(" (%.0f%% of uncompressed)", 100.0 * file.length() / binarySize(triangles.size()))
+                : ""));
+    }
+
+    /**
+     * Write binary STL to a stream; the stream is flushed but not closed.
+     */
+    public static void writeBinary(List<Triangle> triangles, OutputStream out, ConversionListener listener)
+            throws IOException {
+        writeBinary(triangles, Channels.newChannel(out), listener);
+        out.flush();
+    }
+
+    /**
+     * Write binary STL to a channel in ~64 KB little-endian batches; the channel is not closed.
+     * Exactly binarySize(triangles.size()) bytes are written.
+     */
+    public static void writeBinary(List<Triangle> triangles, WritableByteChannel channel,
+                                   ConversionListener listener) throws IOException {
         long startTime = System.nanoTime();
-        System.out.println("\n--- WRITING BINARY STL FILE ---");
-        
-        try (DataOutputStream out = new DataOutputStream(
-                new BufferedOutputStream(new FileOutputStream(filename)))) {
-            
-            // 80-byte header
-            byte[] header = new byte[80];
-            String headerText = "Binary STL - Image to STL Converter - Nick Radonic 2025";
-            System.arraycopy(headerText.getBytes(), 0, header, 0, 
-                Math.min(headerText.length(), 80));
-            out.write(header);
-            
-            // Number of triangles
-            writeIntLE(out, triangles.size());
-            
-            // Triangle data
+        System.out.println("\n--- WRITING BINARY STL ---");
+
+        long totalBytes = binarySize(triangles.size());
+        ByteBuffer buffer = ByteBuffer.allocate(BATCH_TRIANGLES * BINARY_TRIANGLE_BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        // 80-byte header, then the number of triangles
+        byte[] headerBytes = HEADER_TEXT.getBytes(StandardCharsets.US_ASCII);
+        buffer.put(headerBytes, 0, Math.min(headerBytes.length, 80));
+        buffer.position(80);
+        buffer.putInt(triangles.size());
+
+        // Triangle data; grid meshes are converted to floats here, without Triangle objects
+        if (triangles instanceof GridMesh) {
+            GridMesh mesh = (GridMesh) triangles;
+            float[] facet = new float[12];
+            for (int t = 0; t < mesh.size(); t++) {
+                if (t % PROGRESS_INTERVAL == 0) {
+                    checkCancelled(listener);
+                    listener.bytesWritten(BINARY_HEADER_BYTES + (long) t * BINARY_TRIANGLE_BYTES, totalBytes);
+                }
+                if (buffer.remaining() < BINARY_TRIANGLE_BYTES) {
+                    drain(buffer, channel);
+                }
+                mesh.floats(t, facet);
+                for (float value : facet) {
+                    buffer.putFloat(value);
+                }
+                buffer.putShort((short) 0); // Attribute byte count (unused)
+            }
+        } else {
+            long written = 0;
             for (Triangle tri : triangles) {
-                writeFloatLE(out, tri.normal.x);
-                writeFloatLE(out, tri.normal.y);
-                writeFloatLE(out, tri.normal.z);
-                
-                writeFloatLE(out, tri.v1.x);
-                writeFloatLE(out, tri.v1.y);
-                writeFloatLE(out, tri.v1.z);
-                
-                writeFloatLE(out, tri.v2.x);
-                writeFloatLE(out, tri.v2.y);
-                writeFloatLE(out, tri.v2.z);
-                
-                writeFloatLE(out, tri.v3.x);
-                writeFloatLE(out, tri.v3.y);
-                writeFloatLE(out, tri.v3.z);
-                
-                // Attribute byte count (unused)
-                out.writeShort(0);
+                if (written % PROGRESS_INTERVAL == 0) {
+                    checkCancelled(listener);
+                    listener.bytesWritten(BINARY_HEADER_BYTES + written * BINARY_TRIANGLE_BYTES, totalBytes);
+                }
+                written++;
+
+                if (buffer.remaining() < BINARY_TRIANGLE_BYTES) {
+                    drain(buffer, channel);
+                }
+                putVector(buffer, tri.normal);
+                putVector(buffer, tri.v1);
+                putVector(buffer, tri.v2);
+                putVector(buffer, tri.v3);
+                buffer.putShort((short) 0); // Attribute byte count (unused)
             }
         }
-        
+        drain(buffer, channel);
+        listener.bytesWritten(totalBytes, totalBytes);
+
         long writeTime = (System.nanoTime() - startTime) / 1_000_000;
-        File file = new File(filename);
-        double fileSizeMB = file.length() / (1024.0 * 1024.0);
         System.out.println("[TIMING] Binary STL writing: " + writeTime + " ms");
-        System.out.println("File size: " + String.format("%.2f", fileSizeMB) + " MB");
     }
-    
-    private static void writeFloatLE(DataOutputStream out, float value) throws IOException {
-        ByteBuffer buffer = ByteBuffer.allocate(4);
-        buffer.order(ByteOrder.LITTLE_ENDIAN);
-        buffer.putFloat(value);
-        out.write(buffer.array());
+
+    /**
+     * Size in bytes of a binary STL with the given number of triangles.
+     */
+    public static long binarySize(int triangleCount) {
+        return BINARY_HEADER_BYTES + (long) BINARY_TRIANGLE_BYTES * triangleCount;
+    }
+
+    /**
+     * True if the file variants gzip output to this file name.
+     */
+    public static boolean isCompressed(String filename) {
+        return filename.toLowerCase().endsWith(GZIP_SUFFIX);
+    }
+
+    private static void checkCancelled(ConversionListener listener) {
+        if (listener.isCancelled()) {
+            throw new CancellationException("STL writing cancelled");
+        }
+    }
+
+    private static void deletePartialFile(String filename) {
+        File file = new File(filename);
+        if (file.exists() && file.delete()) {
+            System.out.println("Deleted partial STL file: " + filename);
+        }
     }
-    
-    private static void writeIntLE(DataOutputStream out, int value) throws IOException {
-        ByteBuffer buffer = ByteBuffer.allocate(4);
-        buffer.order(ByteOrder.LITTLE_ENDIAN);
-        buffer.putInt(value);
-        out.write(buffer.array());
+
+    private static void putVector(ByteBuffer buffer, Vector3 v) {
+        buffer.putFloat(v.x);
+        buffer.putFloat(v.y);
+        buffer.putFloat(v.z);
+    }
+
+    private static void drain(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Write and clear the formatted text.
+     *
+     * @return the number of bytes written
+     */
+    private static int flushText(StringBuilder text, OutputStream out) throws IOException {
+        byte[] bytes = text.toString().getBytes(StandardCharsets.US_ASCII);
+        out.write(bytes);
+        text.setLength(0);
+        return bytes.length;
     }
 }
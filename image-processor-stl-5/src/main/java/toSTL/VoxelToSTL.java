@@ -1,168 +1,509 @@
 package toSTL;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
 
+/**
+ * Meshes a height map as a closed solid: a top surface over every grid cell whose four
+ * corners are non-zero, side walls down to z = 0 where a cell has no neighbor, and a flat
+ * bottom at z = 0 (per cell, or merged into large rectangles - see BaseMode). An optional
+ * plinth raises every point by a constant thickness, which makes every cell solid.
+ *
+ * The mesh is built on an integer grid (see GridMesh): x and y in half voxels, so merged
+ * floor fans can be centered on any rectangle, and z in height levels, with the plinth
+ * rounded to a whole number of levels.
+ */
 public class VoxelToSTL {
-    private final boolean[][][] voxels;
+    private static final float LEGACY_Z_SCALE = 64; // Voxel layers per voxelSize of height
+    // Boundary directions, counterclockwise: +x, +y, -x, -y
+    private static final int[] DX = {1, 0, -1, 0};
+    private static final int[] DY = {0, 1, 0, -1};
+    private static final int BASE_START = -1; // Wall base end points, besides chain indices
+    private static final int BASE_END = -2;
+    // Per 2x2 point case (see BitMask.pointCase): bit d set if a boundary edge leaves in direction d
+    private static final int[] OUTGOING = new int[16];
+    // Per point case: false where the outline runs straight through (two solid, two empty in a line)
+    private static final boolean[] CORNER = new boolean[16];
+
+    static {
+        for (int c = 0; c < 16; c++) {
+            boolean lowerLeft = (c & 1) != 0;
+            boolean lowerRight = (c & 2) != 0;
+            boolean upperLeft = (c & 4) != 0;
+            boolean upperRight = (c & 8) != 0;
+            OUTGOING[c] = (upperRight && !lowerRight ? 1 : 0) | (upperLeft && !upperRight ? 2 : 0)
+                    | (lowerLeft && !upperLeft ? 4 : 0) | (lowerRight && !lowerLeft ? 8 : 0);
+            boolean horizontalSplit = lowerLeft == lowerRight && upperLeft == upperRight && lowerLeft != upperLeft;
+            boolean verticalSplit = lowerLeft == upperLeft && lowerRight == upperRight && lowerLeft != lowerRight;
+            CORNER[c] = !horizontalSplit && !verticalSplit;
+        }
+    }
+
+    private final HeightMap heightMap;
     private final float voxelSize;
-    private final List<Triangle> triangles;
-    private final float zScale = 64;
+    private final float zStep; // Model units per height level
+    private final BaseMode baseMode;
+    private final int plinthLevels; // Added below every height, in height levels
+    private final GridMesh triangles;
 
+    /**
+     * Mesh a voxel volume; a column of n filled voxels is n * voxelSize / 64 tall.
+     */
     public VoxelToSTL(boolean[][][] voxels, float voxelSize) {
-        this.voxels = voxels;
+        this(HeightMap.fromVoxels(voxels), voxelSize,
+                voxels[0][0].length * voxelSize / LEGACY_Z_SCALE);
+    }
+
+    /**
+     * Mesh a height map with continuous heights: level maxLevel is maxHeight tall.
+     */
+    public VoxelToSTL(HeightMap heightMap, float voxelSize, float maxHeight) {
+        this(heightMap, voxelSize, maxHeight, BaseMode.DEFAULT, 0);
+    }
+
+    /**
+     * Mesh a height map with the given bottom construction, on a plinth of the given
+     * thickness (0 for none).
+     */
+    public VoxelToSTL(HeightMap heightMap, float voxelSize, float maxHeight, BaseMode baseMode, float plinth) {
+        this.heightMap = heightMap;
         this.voxelSize = voxelSize;
-        this.triangles = new ArrayList<>();
+        this.zStep = maxHeight / heightMap.getMaxLevel();
+        this.baseMode = baseMode;
+        this.plinthLevels = plinth > 0 ? Math.max(1, Math.round(plinth / zStep)) : 0;
+        this.triangles = new GridMesh(voxelSize / 2, zStep);
     }
 
-    public List<Triangle> convert() {
+    public GridMesh convert() {
+        return convert(ConversionListener.NONE);
+    }
+
+    /**
+     * Generate the mesh, reporting progress per grid row and stopping with a
+     * CancellationException as soon as the listener reports cancellation.
+     */
+    public GridMesh convert(ConversionListener listener) {
         long startTime = System.nanoTime();
         triangles.clear();
 
-        int xSize = voxels.length;
-        int ySize = voxels[0].length;
-        int zSize = voxels[0][0].length;
+        int xSize = heightMap.getWidth();
+        int ySize = heightMap.getHeight();
+
+        // Passes over the rows: surfaces, walls, and the merged floor
+        boolean mergedBase = baseMode == BaseMode.MERGED;
+        int totalRows = (mergedBase ? 3 : 2) * (xSize - 1);
+        int rowsDone = 0;
 
         System.out.println("\n--- HEIGHT FIELD TO STL MESH GENERATION ---");
-        System.out.println("Grid: " + xSize + " x " + ySize);
-
-        // Calculate heights
-        float[][] heights = new float[xSize][ySize];
-        for (int x = 0; x < xSize; x++) {
-            for (int y = 0; y < ySize; y++) {
-                int voxelCount = 0;
-                for (int z = 0; z < zSize; z++) {
-                    if (voxels[x][y][z]) voxelCount++;
-                }
-                heights[x][y] = voxelCount * voxelSize / zScale;
-            }
-        }
+        System.out.println("Grid: " + xSize + " x " + ySize + " (" + (heightMap.getMaxLevel() + 1) + " height levels)");
 
         // Track which quads exist (all 4 corners non-zero)
-        boolean[][] quadExists = new boolean[xSize - 1][ySize - 1];
+        BitMask quadExists = new BitMask(xSize - 1, ySize - 1);
 
         // Generate top and bottom surfaces
         for (int x = 0; x < xSize - 1; x++) {
+            checkCancelled(listener);
+            listener.rowsProcessed(++rowsDone, totalRows);
+            listener.trianglesEmitted(triangles.size());
             for (int y = 0; y < ySize - 1; y++) {
-                float z00 = heights[x][y];
-                float z10 = heights[x + 1][y];
-                float z01 = heights[x][y + 1];
-                float z11 = heights[x + 1][y + 1];
+                int z00 = levelAt(x, y);
+                int z10 = levelAt(x + 1, y);
+                int z01 = levelAt(x, y + 1);
+                int z11 = levelAt(x + 1, y + 1);
 
                 // Skip unless ALL corners are non-zero
                 if (z00 <= 0 || z10 <= 0 || z01 <= 0 || z11 <= 0) {
                     continue;
                 }
 
-                quadExists[x][y] = true;
+                quadExists.set(x, y);
 
-                float x0 = x * voxelSize;
-                float y0 = y * voxelSize;
-                float x1 = (x + 1) * voxelSize;
-                float y1 = (y + 1) * voxelSize;
+                int x0 = 2 * x;
+                int y0 = 2 * y;
+                int x1 = x0 + 2;
+                int y1 = y0 + 2;
 
-                // Top surface
-                Vector3 v00 = new Vector3(x0, y0, z00);
-                Vector3 v10 = new Vector3(x1, y0, z10);
-                Vector3 v01 = new Vector3(x0, y1, z01);
-                Vector3 v11 = new Vector3(x1, y1, z11);
+                // Top surface, normals computed from the corners
+                triangles.add(GridMesh.NORMAL_COMPUTED, x0, y0, z00, x1, y0, z10, x1, y1, z11);
+                triangles.add(GridMesh.NORMAL_COMPUTED, x0, y0, z00, x1, y1, z11, x0, y1, z01);
 
-                Vector3 n1 = calculateNormal(v00, v10, v11);
-                Vector3 n2 = calculateNormal(v00, v11, v01);
-
-                triangles.add(new Triangle(n1, v00, v10, v11));
-                triangles.add(new Triangle(n2, v00, v11, v01));
+                if (mergedBase) {
+                    continue;
+                }
 
                 // Bottom surface
-                Vector3 b00 = new Vector3(x0, y0, 0);
-                Vector3 b10 = new Vector3(x1, y0, 0);
-                Vector3 b01 = new Vector3(x0, y1, 0);
-                Vector3 b11 = new Vector3(x1, y1, 0);
+                addFloorCell(x, y);
+            }
+        }
+
+        // Merged floor rectangles first: their corners on the outline are where walls must
+        // have bottom vertices too
+        BitMask marked = null;
+        int[] rectangles = null;
+        if (mergedBase) {
+            marked = new BitMask(xSize, ySize);
+            rectangles = coverRectangles(quadExists, marked, listener, rowsDone, totalRows);
+            rowsDone += xSize - 1;
+        }
+
+        // Side walls, one boundary loop at a time
+        int wallStart = triangles.size();
+        int loops = addWalls(quadExists, marked, listener, rowsDone, totalRows);
+        rowsDone += xSize - 1;
+        System.out.println("Walls: " + loops + " boundary loops, " + (triangles.size() - wallStart) + " triangles");
 
-                Vector3 bn = new Vector3(0, 0, -1);
-                triangles.add(new Triangle(bn, b00, b11, b10));
-                triangles.add(new Triangle(bn, b00, b01, b11));
+        if (mergedBase) {
+            int floorStart = triangles.size();
+            addMergedFloor(rectangles, marked);
+            System.out.println("Merged floor: " + (triangles.size() - floorStart) + " triangles");
+        }
+
+        listener.trianglesEmitted(triangles.size());
+
+        long totalTime = (System.nanoTime() - startTime) / 1_000_000;
+        System.out.println("Triangles generated: " + triangles.size() + " (" + triangles.memoryBytes() / 1024 + " KB)");
+        System.out.println("[TIMING] Total: " + totalTime + " ms");
+
+        return triangles;
+    }
+
+    // ===== Walls =====
+
+    /**
+     * Trace every boundary loop of the existing cells once and build its side wall.
+     * Loops run with the solid on their left (counterclockwise around solids, clockwise
+     * around holes). Each loop is split into straight runs at its corners (and, with a
+     * merged floor, at floor rectangle corners; with per-cell bottoms, at every point), and
+     * each run becomes one wall piece whose bottom is a single edge. Loop starts are found
+     * a word at a time from the mask's lower edges, minus the edges already traced.
+     *
+     * @param marked floor break points to honor and extend with the outline corners, or
+     *               null to break walls at every grid point
+     * @return the number of loops
+     */
+    private int addWalls(BitMask quadExists, BitMask marked, ConversionListener listener,
+                         int rowsDone, int totalRows) {
+        int cellsX = quadExists.getWidth();
+        int cellsY = quadExists.getHeight();
+        BitMask horizontalDone = new BitMask(cellsX, cellsY + 1); // Edge (x, y)-(x + 1, y)
+        BitMask verticalDone = new BitMask(cellsX + 1, cellsY);   // Edge (x, y)-(x, y + 1)
+        IntList loopX = new IntList();
+        IntList loopY = new IntList();
+        IntList loopDirection = new IntList();
+        int loops = 0;
+
+        for (int x = 0; x < cellsX; x++) {
+            checkCancelled(listener);
+            listener.rowsProcessed(++rowsDone, totalRows);
+            listener.trianglesEmitted(triangles.size());
+            // Every loop has a +x edge along the bottom of some cell; start from those
+            for (int w = 0; w < quadExists.getWordsPerRow(); w++) {
+                long starts;
+                while ((starts = quadExists.lowerEdges(x, w) & ~horizontalDone.word(x, w)) != 0) {
+                    int y = (w << 6) + Long.numberOfTrailingZeros(starts);
+                    traceLoop(quadExists, horizontalDone, verticalDone, x, y, loopX, loopY, loopDirection);
+                    addLoopWall(quadExists, marked, loopX, loopY, loopDirection);
+                    loops++;
+                }
             }
         }
+        return loops;
+    }
 
-        // Generate walls for exposed edges of each quad
-        for (int x = 0; x < xSize - 1; x++) {
-            for (int y = 0; y < ySize - 1; y++) {
-                if (!quadExists[x][y]) continue;
-
-                float x0 = x * voxelSize;
-                float y0 = y * voxelSize;
-                float x1 = (x + 1) * voxelSize;
-                float y1 = (y + 1) * voxelSize;
-
-                float z00 = heights[x][y];
-                float z10 = heights[x + 1][y];
-                float z01 = heights[x][y + 1];
-                float z11 = heights[x + 1][y + 1];
-
-                // Check each of 4 edges - add wall if neighbor quad doesn't exist
-
-                // Bottom edge (y = y0, from x0 to x1)
-                boolean hasBottomNeighbor = (y > 0) && quadExists[x][y - 1];
-                if (!hasBottomNeighbor) {
-                    Vector3 v1 = new Vector3(x0, y0, z00);
-                    Vector3 v2 = new Vector3(x1, y0, z10);
-                    Vector3 v3 = new Vector3(x0, y0, 0);
-                    Vector3 v4 = new Vector3(x1, y0, 0);
-                    Vector3 n = new Vector3(0, -1, 0);
-                    triangles.add(new Triangle(n, v1, v3, v4));
-                    triangles.add(new Triangle(n, v1, v4, v2));
+    /**
+     * Follow the boundary loop starting with the +x edge from (x, y), marking its edges done.
+     */
+    private static void traceLoop(BitMask quadExists, BitMask horizontalDone, BitMask verticalDone, int x, int y,
+                                  IntList loopX, IntList loopY, IntList loopDirection) {
+        loopX.clear();
+        loopY.clear();
+        loopDirection.clear();
+        int px = x;
+        int py = y;
+        int direction = 0;
+        while (direction >= 0) {
+            loopX.add(px);
+            loopY.add(py);
+            loopDirection.add(direction);
+            if (direction == 0 || direction == 2) {
+                horizontalDone.set(direction == 0 ? px : px - 1, py);
+            } else {
+                verticalDone.set(px, direction == 1 ? py : py - 1);
+            }
+            px += DX[direction];
+            py += DY[direction];
+            direction = nextDirection(quadExists, horizontalDone, verticalDone, px, py, direction);
+        }
+    }
+
+    /**
+     * Unvisited boundary edge leaving point (px, py), preferring a left turn, then straight on,
+     * then a right turn (which separates loops that touch at a corner); -1 if the loop is closed.
+     * The edges leaving a point follow from its 2x2 cell case; cells outside the grid are empty.
+     */
+    private static int nextDirection(BitMask quadExists, BitMask horizontalDone, BitMask verticalDone,
+                                     int px, int py, int incoming) {
+        int outgoing = OUTGOING[quadExists.pointCase(px, py)];
+        for (int turn = 1; turn >= -1; turn--) {
+            int direction = (incoming + turn + 4) % 4;
+            if ((outgoing & (1 << direction)) == 0) {
+                continue;
+            }
+            boolean done;
+            switch (direction) {
+                case 0: // Along the bottom of cell (px, py)
+                    done = horizontalDone.get(px, py);
+                    break;
+                case 1: // Along the right of cell (px - 1, py)
+                    done = verticalDone.get(px, py);
+                    break;
+                case 2: // Along the top of cell (px - 1, py - 1)
+                    done = horizontalDone.get(px - 1, py);
+                    break;
+                default: // Along the left of cell (px, py - 1)
+                    done = verticalDone.get(px, py - 1);
+            }
+            if (!done) {
+                return direction;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Split a closed loop (edge i runs from point i in loopDirection[i]) into straight runs
+     * and emit each run's wall.
+     */
+    private void addLoopWall(BitMask quadExists, BitMask marked, IntList loopX, IntList loopY,
+                             IntList loopDirection) {
+        int length = loopX.size;
+        boolean[] breaks = new boolean[length];
+        int first = -1;
+        for (int i = 0; i < length; i++) {
+            int x = loopX.data[i];
+            int y = loopY.data[i];
+            // Where the outline turns or touches itself (marching squares)
+            boolean corner = CORNER[quadExists.pointCase(x, y)];
+            if (corner && marked != null) {
+                marked.set(x, y); // The merged floor needs this point as well
+            }
+            breaks[i] = marked == null || corner || marked.get(x, y);
+            if (breaks[i] && first < 0) {
+                first = i;
+            }
+        }
+
+        int start = first;
+        do {
+            int end = (start + 1) % length;
+            while (!breaks[end]) {
+                end = (end + 1) % length;
+            }
+            int segments = (end - start + length) % length;
+            addRunWall(loopX.data[start], loopY.data[start], loopDirection.data[start], segments == 0 ? length
+                    : segments);
+            start = end;
+        } while (start != first);
+    }
+
+    /**
+     * Wall under a straight run of the outline from grid point (x, y), segments steps in the
+     * given direction: the polygon between the top edge (the surface heights along the run)
+     * and a single bottom edge at z = 0. It is triangulated by repeatedly joining the base to
+     * the chain point lowest above it, which keeps every triangle inside the polygon however
+     * the heights vary, and gives segments + 1 triangles. No triangle has zero area, even
+     * where chain points are collinear (flat or evenly sloped runs): the chosen point is
+     * strictly above its base (every top is above z = 0, and a point on a new base would be
+     * lower than the one chosen), so no base ever passes through a chain point. Collinear
+     * chain points are kept, because the top surface has an edge between each of them.
+     */
+    private void addRunWall(int x, int y, int direction, int segments) {
+        int dx = DX[direction];
+        int dy = DY[direction];
+        int normal = GridMesh.axisNormal(dy, -dx, 0); // Outward: the solid is on the left
+
+        int[] tops = new int[segments + 1];
+        for (int i = 0; i <= segments; i++) {
+            tops[i] = levelAt(x + i * dx, y + i * dy);
+        }
+
+        // Pending pieces: base from point p to point q (chain index, or BASE_START / BASE_END),
+        // with chain points lo..hi above it
+        IntList pending = new IntList();
+        pending.add(BASE_START);
+        pending.add(BASE_END);
+        pending.add(0);
+        pending.add(segments);
+        while (pending.size > 0) {
+            int hi = pending.data[--pending.size];
+            int lo = pending.data[--pending.size];
+            int q = pending.data[--pending.size];
+            int p = pending.data[--pending.size];
+
+            int ps = p == BASE_START ? 0 : p == BASE_END ? segments : p;
+            int pz = p < 0 ? 0 : tops[p];
+            int qs = q == BASE_START ? 0 : q == BASE_END ? segments : q;
+            int qz = q < 0 ? 0 : tops[q];
+            int lowest = lo;
+            long lowestHeight = Long.MAX_VALUE;
+            for (int i = lo; i <= hi; i++) {
+                // Scaled height above the base, exact on the grid
+                long height = (long) (qs - ps) * (tops[i] - pz) - (long) (qz - pz) * (i - ps);
+                if (height < lowestHeight) {
+                    lowestHeight = height;
+                    lowest = i;
                 }
+            }
+
+            triangles.add(normal,
+                    2 * (x + ps * dx), 2 * (y + ps * dy), pz,
+                    2 * (x + qs * dx), 2 * (y + qs * dy), qz,
+                    2 * (x + lowest * dx), 2 * (y + lowest * dy), tops[lowest]);
+
+            if (lowest > lo) {
+                pending.add(p);
+                pending.add(lowest);
+                pending.add(lo);
+                pending.add(lowest - 1);
+            }
+            if (lowest < hi) {
+                pending.add(lowest);
+                pending.add(q);
+                pending.add(lowest + 1);
+                pending.add(hi);
+            }
+        }
+    }
+
+    // ===== Merged floor =====
 
-                // Top edge (y = y1, from x0 to x1)
-                boolean hasTopNeighbor = (y < ySize - 2) && quadExists[x][y + 1];
-                if (!hasTopNeighbor) {
-                    Vector3 v1 = new Vector3(x0, y1, z01);
-                    Vector3 v2 = new Vector3(x1, y1, z11);
-                    Vector3 v3 = new Vector3(x0, y1, 0);
-                    Vector3 v4 = new Vector3(x1, y1, 0);
-                    Vector3 n = new Vector3(0, 1, 0);
-                    triangles.add(new Triangle(n, v1, v4, v3));
-                    triangles.add(new Triangle(n, v1, v2, v4));
+    /**
+     * Cover the existing cells greedily with maximal rectangles (grow along y, then along x
+     * while the whole span is free), marking their corners.
+     *
+     * @return x0, y0, x1, y1 (grid points) per rectangle; the array ends at the first -1
+     */
+    private int[] coverRectangles(BitMask quadExists, BitMask marked, ConversionListener listener,
+                                  int rowsDone, int totalRows) {
+        int cellsX = quadExists.getWidth();
+        BitMask covered = new BitMask(cellsX, quadExists.getHeight());
+        int[] rectangles = new int[64];
+        int count = 0;
+        for (int x = 0; x < cellsX; x++) {
+            checkCancelled(listener);
+            listener.rowsProcessed(++rowsDone, totalRows);
+            int y = quadExists.nextSet(x, 0);
+            while (y >= 0) {
+                if (covered.get(x, y)) {
+                    y = quadExists.nextSet(x, covered.nextClear(x, y));
+                    continue;
+                }
+                // Free cells exist and are not covered yet: grow to the next missing or covered cell
+                int covering = covered.nextSet(x, y);
+                int y1 = Math.min(quadExists.nextClear(x, y), covering < 0 ? Integer.MAX_VALUE : covering);
+                int x1 = x + 1;
+                while (x1 < cellsX && quadExists.allSetAndClearIn(covered, x1, y, y1)) {
+                    x1++;
+                }
+                for (int cx = x; cx < x1; cx++) {
+                    covered.set(cx, y, y1);
                 }
+                marked.set(x, y);
+                marked.set(x1, y);
+                marked.set(x, y1);
+                marked.set(x1, y1);
 
-                // Left edge (x = x0, from y0 to y1)
-                boolean hasLeftNeighbor = (x > 0) && quadExists[x - 1][y];
-                if (!hasLeftNeighbor) {
-                    Vector3 v1 = new Vector3(x0, y0, z00);
-                    Vector3 v2 = new Vector3(x0, y1, z01);
-                    Vector3 v3 = new Vector3(x0, y0, 0);
-                    Vector3 v4 = new Vector3(x0, y1, 0);
-                    Vector3 n = new Vector3(-1, 0, 0);
-                    triangles.add(new Triangle(n, v1, v4, v3));
-                    triangles.add(new Triangle(n, v1, v2, v4));
+                if (count + 5 > rectangles.length) {
+                    rectangles = Arrays.copyOf(rectangles, rectangles.length * 2);
                 }
+                rectangles[count++] = x;
+                rectangles[count++] = y;
+                rectangles[count++] = x1;
+                rectangles[count++] = y1;
+                y = quadExists.nextSet(x, y1);
+            }
+        }
+        rectangles[count] = -1;
+        return rectangles;
+    }
+
+    /**
+     * Bottom at z = 0 as few large pieces: each rectangle is triangulated through the marked
+     * points of its border - other rectangles' corners and the walls' bottom vertices - so
+     * the floor shares every edge exactly (no T-junctions) and the mesh stays closed.
+     */
+    private void addMergedFloor(int[] rectangles, BitMask marked) {
+        int down = GridMesh.NORMAL_MINUS_Z;
+        IntList border = new IntList(); // x, y per point, in grid units
+        for (int r = 0; rectangles[r] >= 0; r += 4) {
+            int x0 = rectangles[r];
+            int y0 = rectangles[r + 1];
+            int x1 = rectangles[r + 2];
+            int y1 = rectangles[r + 3];
+
+            // Marked border points, clockwise seen from above so the faces point down
+            border.clear();
+            for (int y = y0; y < y1; y++) {
+                addIfMarked(border, marked, x0, y);
+            }
+            for (int x = x0; x < x1; x++) {
+                addIfMarked(border, marked, x, y1);
+            }
+            for (int y = y1; y > y0; y--) {
+                addIfMarked(border, marked, x1, y);
+            }
+            for (int x = x1; x > x0; x--) {
+                addIfMarked(border, marked, x, y0);
+            }
 
-                // Right edge (x = x1, from y0 to y1)
-                boolean hasRightNeighbor = (x < xSize - 2) && quadExists[x + 1][y];
-                if (!hasRightNeighbor) {
-                    Vector3 v1 = new Vector3(x1, y0, z10);
-                    Vector3 v2 = new Vector3(x1, y1, z11);
-                    Vector3 v3 = new Vector3(x1, y0, 0);
-                    Vector3 v4 = new Vector3(x1, y1, 0);
-                    Vector3 n = new Vector3(1, 0, 0);
-                    triangles.add(new Triangle(n, v1, v3, v4));
-                    triangles.add(new Triangle(n, v1, v4, v2));
+            int cells = (x1 - x0) * (y1 - y0);
+            int[] b = border.data;
+            int points = border.size / 2;
+            if (points == 4) {
+                triangles.add(down, b[0], b[1], 0, b[2], b[3], 0, b[4], b[5], 0);
+                triangles.add(down, b[0], b[1], 0, b[4], b[5], 0, b[6], b[7], 0);
+            } else if (points == 2 * (x1 - x0 + y1 - y0) && 2 * cells < points) {
+                // Every border point is used (thin strips of small cells): per-cell is cheaper
+                for (int x = x0; x < x1; x++) {
+                    for (int y = y0; y < y1; y++) {
+                        addFloorCell(x, y);
+                    }
+                }
+            } else {
+                // Fan from the center (a grid point in half voxels): valid for any number of
+                // points along a rectangle
+                for (int i = 0; i < points; i++) {
+                    int j = (i + 1) % points;
+                    triangles.add(down, x0 + x1, y0 + y1, 0, b[2 * i], b[2 * i + 1], 0, b[2 * j], b[2 * j + 1], 0);
                 }
             }
         }
+    }
 
-        long totalTime = (System.nanoTime() - startTime) / 1_000_000;
-        System.out.println("Triangles generated: " + triangles.size());
-        System.out.println("[TIMING] Total: " + totalTime + " ms");
+    private void addFloorCell(int x, int y) {
+        int x0 = 2 * x;
+        int y0 = 2 * y;
+        int x1 = x0 + 2;
+        int y1 = y0 + 2;
+        triangles.add(GridMesh.NORMAL_MINUS_Z, x0, y0, 0, x1, y1, 0, x1, y0, 0);
+        triangles.add(GridMesh.NORMAL_MINUS_Z, x0, y0, 0, x0, y1, 0, x1, y1, 0);
+    }
 
-        return triangles;
+    private void addIfMarked(IntList border, BitMask marked, int x, int y) {
+        if (marked.get(x, y)) {
+            border.add(2 * x);
+            border.add(2 * y);
+        }
     }
 
-    private Vector3 calculateNormal(Vector3 v1, Vector3 v2, Vector3 v3) {
-        Vector3 u = v2.subtract(v1);
-        Vector3 v = v3.subtract(v1);
-        return u.cross(v).normalize();
+    private int levelAt(int x, int y) {
+        return plinthLevels + heightMap.get(x, y);
+    }
+
+    private static void checkCancelled(ConversionListener listener) {
+        if (listener.isCancelled()) {
+            throw new CancellationException("Mesh generation cancelled");
+        }
     }
 
     public String getStats() {
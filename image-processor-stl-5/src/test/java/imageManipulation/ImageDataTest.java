@@ -0,0 +1,92 @@
+package imageManipulation;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ImageDataTest {
+    // 3 x 2 tiles, the last column and row partial
+    private static final int WIDTH = 2 * TiledImage.TILE_SIZE + 37;
+    private static final int HEIGHT = TiledImage.TILE_SIZE + 91;
+
+    @Test
+    void editSharesUnchangedTilesWithItsSource() {
+        BufferedImage original = randomImage(1);
+        BufferedImage edited = copy(original);
+        edited.setRGB(TiledImage.TILE_SIZE + 5, 10, ~edited.getRGB(TiledImage.TILE_SIZE + 5, 10)); // Tile 1
+
+        TiledImage parent = TiledImage.fromImage(original, null);
+        TiledImage child = TiledImage.fromImage(edited, parent);
+
+        assertEquals(6, child.getTileCount());
+        assertEquals(5, child.getSharedTileCount());
+        for (int i = 0; i < child.getTileCount(); i++) {
+            if (i == 1) {
+                assertNotSame(parent.getTile(i), child.getTile(i));
+            } else {
+                assertSame(parent.getTile(i), child.getTile(i), "tile " + i);
+            }
+        }
+        assertPixels(edited, child.toImage());
+    }
+
+    @Test
+    void undoAndRedoRestoreExactPixels() {
+        BufferedImage[] steps = new BufferedImage[4];
+        steps[0] = randomImage(2);
+        ImageData data = new ImageData();
+        data.setInitialImage(steps[0]);
+        for (int k = 1; k < steps.length; k++) {
+            steps[k] = copy(steps[k - 1]);
+            int x = (k * 211) % WIDTH;
+            int y = (k * 97) % HEIGHT;
+            steps[k].setRGB(x, y, ~steps[k].getRGB(x, y));
+            data.addProcessedImage(copy(steps[k]));
+        }
+
+        for (int seq = 2; seq <= steps.length; seq++) {
+            assertEquals(5, data.getTiles(seq).getSharedTileCount(), "image " + seq);
+        }
+
+        // Older entries are no longer materialized, so undo rebuilds them from tiles
+        for (int k = steps.length - 2; k >= 0; k--) {
+            assertEquals(k + 1, data.undo());
+            assertPixels(steps[k], data.getCurrentImage());
+        }
+        assertEquals(-1, data.undo());
+        for (int k = 1; k < steps.length; k++) {
+            assertEquals(k + 1, data.redo());
+            assertPixels(steps[k], data.getCurrentImage());
+        }
+        assertEquals(-1, data.redo());
+    }
+
+    private static BufferedImage randomImage(long seed) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        Random random = new Random(seed);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt() & 0xFFFFFF;
+        }
+        return image;
+    }
+
+    private static BufferedImage copy(BufferedImage image) {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+        copy.setData(image.getRaster());
+        return copy;
+    }
+
+    private static void assertPixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getType(), actual.getType());
+        assertArrayEquals(expected.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH),
+                actual.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH));
+    }
+}
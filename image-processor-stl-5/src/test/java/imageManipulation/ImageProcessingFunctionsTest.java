@@ -0,0 +1,264 @@
+package imageManipulation;
+
+import org.junit.jupiter.api.Test;
+import toSTL.Orientation;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImageProcessingFunctionsTest {
+    // Width x height x radius: tiny images with the radius at or past the width, several
+    // row bands, and more than one column band
+    private static final int[][] CASES = {
+            {1, 1, 2}, {5, 3, 1}, {6, 4, 6}, {7, 9, 12}, {37, 70, 2}, {21, 40, 5}, {300, 35, 1}
+    };
+
+    @Test
+    void boxBlurMatchesNaiveMeans() {
+        long seed = 1;
+        for (int[] c : CASES) {
+            for (int iterations = 1; iterations <= 3; iterations++) {
+                int[] radii = new int[iterations];
+                Arrays.fill(radii, c[2]);
+                String label = c[0] + "x" + c[1] + " r" + c[2] + " x" + iterations;
+
+                BufferedImage rgb = randomRgb(c[0], c[1], seed++);
+                BufferedImage blurred = ImageProcessingFunctions.boxBlur(rgb, c[2], iterations, TaskProgress.NONE);
+                int[] expected = pixels(rgb);
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    int[] channel = naiveBox(channel(expected, shift), c[0], c[1], radii);
+                    assertArrayEquals(channel, channel(pixels(blurred), shift), label + " shift " + shift);
+                }
+
+                BufferedImage gray = randomGray16(c[0], c[1], seed++);
+                blurred = ImageProcessingFunctions.boxBlur(gray, c[2], iterations, TaskProgress.NONE);
+                assertArrayEquals(naiveBox(samples(gray), c[0], c[1], radii), samples(blurred), label + " gray16");
+            }
+        }
+    }
+
+    @Test
+    void boxBlurOfSaturatedImageKeepsLanesApart() {
+        // 255 in every channel over the widest window fills each 21-bit lane furthest
+        BufferedImage white = new BufferedImage(9, 9, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 9; y++) {
+            for (int x = 0; x < 9; x++) {
+                white.setRGB(x, y, (x + y) % 2 == 0 ? 0xFFFFFF : 0xFF00FF);
+            }
+        }
+        BufferedImage blurred = ImageProcessingFunctions.boxBlur(white, 40, 3, TaskProgress.NONE);
+        int[] expected = pixels(white);
+        for (int shift = 0; shift <= 16; shift += 8) {
+            int[] channel = naiveBox(channel(expected, shift), 9, 9, new int[]{40, 40, 40});
+            assertArrayEquals(channel, channel(pixels(blurred), shift));
+        }
+    }
+
+    @Test
+    void gaussianBoxRadiiMatchTheVariance() {
+        for (double sigma = 2.0; sigma <= 40; sigma += 0.37) {
+            for (int passes = 2; passes <= 5; passes++) {
+                int[] radii = ImageProcessingFunctions.boxRadiiForGaussian(sigma, passes);
+                assertEquals(passes, radii.length);
+
+                // Widths are wl or wl + 2, the smaller ones first
+                int wl = 2 * radii[0] + 1;
+                double variance = 0;
+                for (int r : radii) {
+                    int w = 2 * r + 1;
+                    assertTrue(w == wl || w == wl + 2, "sigma " + sigma + " widths " + Arrays.toString(radii));
+                    variance += (w * w - 1) / 12.0;
+                }
+                // Swapping one wl box for a wu box changes the variance by (wl + 1) / 3
+                assertEquals(sigma * sigma, variance, (wl + 1) / 6.0 + 1e-9,
+                        "sigma " + sigma + " passes " + passes + " radii " + Arrays.toString(radii));
+            }
+        }
+    }
+
+    @Test
+    void medianFilterMatchesSortedWindows() {
+        long seed = 100;
+        for (int[] c : CASES) {
+            String label = c[0] + "x" + c[1] + " r" + c[2];
+
+            // Few distinct levels so many windows tie across fine bins
+            BufferedImage rgb = seed % 2 == 0 ? randomRgb(c[0], c[1], seed) : randomLevels(c[0], c[1], seed);
+            seed++;
+            BufferedImage filtered = ImageProcessingFunctions.medianFilter(rgb, c[2], TaskProgress.NONE);
+            int[] source = pixels(rgb);
+            for (int shift = 0; shift <= 16; shift += 8) {
+                int[] expected = naiveMedian(channel(source, shift), c[0], c[1], c[2]);
+                assertArrayEquals(expected, channel(pixels(filtered), shift), label + " shift " + shift);
+            }
+
+            BufferedImage gray = randomGray16(c[0], c[1], seed++);
+            filtered = ImageProcessingFunctions.medianFilter(gray, c[2], TaskProgress.NONE);
+            assertArrayEquals(naiveMedian(samples(gray), c[0], c[1], c[2]), samples(filtered), label + " gray16");
+        }
+    }
+
+    @Test
+    void orientMatchesPerPixelMapping() {
+        // Partial 64x64 tiles in both directions
+        BufferedImage rgb = randomRgb(150, 97, 7);
+        BufferedImage gray = randomGray16(150, 97, 8);
+        for (Orientation o : Orientation.values()) {
+            BufferedImage oriented = ImageProcessingFunctions.orient(rgb, o, TaskProgress.NONE);
+            assertEquals(o.outputWidth(150, 97), oriented.getWidth(), o.name());
+            assertEquals(o.outputHeight(150, 97), oriented.getHeight(), o.name());
+            for (int y = 0; y < oriented.getHeight(); y++) {
+                for (int x = 0; x < oriented.getWidth(); x++) {
+                    int expected = rgb.getRGB(o.sourceX(x, y, 150), o.sourceY(x, y, 97));
+                    assertEquals(expected, oriented.getRGB(x, y), o + " at " + x + "," + y);
+                }
+            }
+
+            int[] samples = samples(gray);
+            int[] orientedSamples = samples(ImageProcessingFunctions.orient(gray, o, TaskProgress.NONE));
+            for (int y = 0; y < oriented.getHeight(); y++) {
+                for (int x = 0; x < oriented.getWidth(); x++) {
+                    assertEquals(samples[o.sourceIndex(x, y, 150, 97)], orientedSamples[y * oriented.getWidth() + x],
+                            o + " gray16 at " + x + "," + y);
+                }
+            }
+        }
+    }
+
+    @Test
+    void orientingTwiceEqualsOrientingByTheComposition() {
+        BufferedImage rgb = randomRgb(131, 70, 9);
+        BufferedImage gray = randomGray16(131, 70, 10);
+        for (Orientation a : Orientation.values()) {
+            BufferedImage rgbA = ImageProcessingFunctions.orient(rgb, a, TaskProgress.NONE);
+            BufferedImage grayA = ImageProcessingFunctions.orient(gray, a, TaskProgress.NONE);
+            for (Orientation b : Orientation.values()) {
+                String label = a.name() + " then " + b.name();
+                BufferedImage twice = ImageProcessingFunctions.orient(rgbA, b, TaskProgress.NONE);
+                BufferedImage once = ImageProcessingFunctions.orient(rgb, a.then(b), TaskProgress.NONE);
+                assertEquals(twice.getWidth(), once.getWidth(), label);
+                assertArrayEquals(pixels(twice), pixels(once), label);
+
+                twice = ImageProcessingFunctions.orient(grayA, b, TaskProgress.NONE);
+                once = ImageProcessingFunctions.orient(gray, a.then(b), TaskProgress.NONE);
+                assertEquals(twice.getWidth(), once.getWidth(), label);
+                assertArrayEquals(samples(twice), samples(once), label + " gray16");
+            }
+        }
+    }
+
+    /**
+     * Per pass: horizontal then vertical window means with replicated edges, rounded half up.
+     */
+    private static int[] naiveBox(int[] values, int width, int height, int[] radii) {
+        int[] a = values.clone();
+        for (int r : radii) {
+            int count = 2 * r + 1;
+            int[] b = new int[a.length];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    long sum = 0;
+                    for (int k = -r; k <= r; k++) {
+                        sum += a[y * width + clamp(x + k, width)];
+                    }
+                    b[y * width + x] = (int) ((sum + count / 2) / count);
+                }
+            }
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    long sum = 0;
+                    for (int k = -r; k <= r; k++) {
+                        sum += b[clamp(y + k, height) * width + x];
+                    }
+                    a[y * width + x] = (int) ((sum + count / 2) / count);
+                }
+            }
+        }
+        return a;
+    }
+
+    private static int[] naiveMedian(int[] values, int width, int height, int radius) {
+        int size = 2 * radius + 1;
+        int[] window = new int[size * size];
+        int[] out = new int[values.length];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int n = 0;
+                for (int dy = -radius; dy <= radius; dy++) {
+                    for (int dx = -radius; dx <= radius; dx++) {
+                        window[n++] = values[clamp(y + dy, height) * width + clamp(x + dx, width)];
+                    }
+                }
+                Arrays.sort(window);
+                out[y * width + x] = window[window.length / 2];
+            }
+        }
+        return out;
+    }
+
+    private static int clamp(int i, int length) {
+        return Math.max(0, Math.min(length - 1, i));
+    }
+
+    private static BufferedImage randomRgb(int width, int height, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt(1 << 24));
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage randomLevels(int width, int height, long seed) {
+        Random random = new Random(seed);
+        int[] levels = {0, 15, 16, 17, 128, 255};
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int rgb = 0;
+                for (int c = 0; c < 3; c++) {
+                    rgb = (rgb << 8) | levels[random.nextInt(levels.length)];
+                }
+                image.setRGB(x, y, rgb);
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage randomGray16(int width, int height, long seed) {
+        Random random = new Random(seed);
+        short[] samples = new short[width * height];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) random.nextInt(65536);
+        }
+        return ImageProcessingFunctions.gray16Image(width, height, samples);
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    private static int[] channel(int[] pixels, int shift) {
+        int[] values = new int[pixels.length];
+        for (int i = 0; i < pixels.length; i++) {
+            values[i] = (pixels[i] >>> shift) & 0xFF;
+        }
+        return values;
+    }
+
+    private static int[] samples(BufferedImage image) {
+        short[] samples = ImageProcessingFunctions.gray16Samples(image);
+        int[] values = new int[samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            values[i] = samples[i] & 0xFFFF;
+        }
+        return values;
+    }
+}
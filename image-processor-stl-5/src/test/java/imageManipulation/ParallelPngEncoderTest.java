@@ -0,0 +1,101 @@
+package imageManipulation;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ParallelPngEncoderTest {
+    // Bands hold 512 KB of raw rows, so these sizes give several bands with a short last one
+    private static final int[][] SIZES = {{1, 1}, {7, 3}, {601, 331}, {333, 1700}};
+    private static final int[] LEVELS = {0, 6, 9};
+
+    @Test
+    void rgbRoundTrips() throws IOException {
+        int seed = 0;
+        for (int[] size : SIZES) {
+            BufferedImage image = randomImage(size[0], size[1], BufferedImage.TYPE_INT_RGB, seed++);
+            for (int level : LEVELS) {
+                BufferedImage read = roundTrip(image, level);
+                assertEquals(false, read.getColorModel().hasAlpha());
+                assertArrayEquals(pixels(image), pixels(read), size[0] + "x" + size[1] + " level " + level);
+            }
+        }
+    }
+
+    @Test
+    void argbRoundTrips() throws IOException {
+        int seed = 10;
+        for (int[] size : SIZES) {
+            BufferedImage image = randomImage(size[0], size[1], BufferedImage.TYPE_INT_ARGB, seed++);
+            for (int level : LEVELS) {
+                BufferedImage read = roundTrip(image, level);
+                assertEquals(true, read.getColorModel().hasAlpha());
+                assertArrayEquals(pixels(image), pixels(read), size[0] + "x" + size[1] + " level " + level);
+            }
+        }
+    }
+
+    @Test
+    void grayRoundTrips() throws IOException {
+        int seed = 20;
+        for (int[] size : SIZES) {
+            for (int type : new int[]{BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_USHORT_GRAY}) {
+                BufferedImage image = randomImage(size[0], size[1], type, seed++);
+                for (int level : LEVELS) {
+                    BufferedImage read = roundTrip(image, level);
+                    String label = size[0] + "x" + size[1] + " type " + type + " level " + level;
+                    assertEquals(image.getSampleModel().getSampleSize(0), read.getSampleModel().getSampleSize(0),
+                            label);
+                    assertArrayEquals(samples(image), samples(read), label);
+                }
+            }
+        }
+    }
+
+    private static BufferedImage roundTrip(BufferedImage image, int level) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ParallelPngEncoder.write(image, out, level);
+        BufferedImage read = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(image.getWidth(), read.getWidth());
+        assertEquals(image.getHeight(), read.getHeight());
+        return read;
+    }
+
+    /**
+     * Gradients with noise, so rows pick different filters; some rows repeat the previous one.
+     */
+    private static BufferedImage randomImage(int width, int height, int type, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, type);
+        WritableRaster raster = image.getRaster();
+        int max = (1 << image.getSampleModel().getSampleSize(0)) - 1;
+        int[] row = new int[width * raster.getNumBands()];
+        for (int y = 0; y < height; y++) {
+            if (y == 0 || random.nextInt(8) != 0) {
+                for (int i = 0; i < row.length; i++) {
+                    int gradient = (int) ((long) (i + y) * max / (row.length + height));
+                    row[i] = Math.min(max, gradient + (random.nextInt(4) == 0 ? random.nextInt(max + 1) / 8 : 0));
+                }
+            }
+            raster.setPixels(0, y, width, 1, row);
+        }
+        return image;
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    private static int[] samples(BufferedImage image) {
+        return image.getRaster().getSamples(0, 0, image.getWidth(), image.getHeight(), 0, (int[]) null);
+    }
+}
@@ -0,0 +1,103 @@
+package imageManipulation;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RecipeTest {
+
+    @Test
+    void fusedRecipeMatchesStepByStep() throws Exception {
+        Recipe recipe = new Recipe(List.of(
+                brightnessContrast(20, 35),
+                brightnessContrast(-45, -10),
+                step("Posterize"),
+                brightnessContrast(10, 80),
+                step("Rotate 90° CW"),
+                step("Flip Horizontal"),
+                step("Rotate 180°"),
+                step("Median", "radius", "1"),
+                step("Rotate 90° CW"),
+                step("Rotate 90° CCW"), // Cancels out: no pass at all
+                brightnessContrast(-5, 150),
+                step("Posterize"),
+                step("Flip Vertical")), null);
+
+        assertSameAsStepByStep(recipe, randomRgb(45, 29, 39));
+        assertSameAsStepByStep(recipe, randomGray16(45, 29, 40));
+    }
+
+    @Test
+    void singleStepRunsAreUnchanged() throws Exception {
+        Recipe recipe = new Recipe(List.of(
+                step("Transpose"),
+                brightnessContrast(30, -20),
+                step("Blur", "sigma", "1.5"),
+                step("Posterize")), null);
+
+        assertSameAsStepByStep(recipe, randomRgb(33, 50, 41));
+        assertSameAsStepByStep(recipe, randomGray16(33, 50, 42));
+    }
+
+    private static void assertSameAsStepByStep(Recipe recipe, BufferedImage input) throws Exception {
+        BufferedImage expected = input;
+        for (Recipe.Step step : recipe.getSteps()) {
+            expected = Recipe.operation(step.getOperation(), step.getParameters()).apply(expected, TaskProgress.NONE);
+        }
+        BufferedImage fused = recipe.compile().apply(input, TaskProgress.NONE);
+
+        assertEquals(expected.getWidth(), fused.getWidth());
+        assertEquals(expected.getHeight(), fused.getHeight());
+        assertEquals(ImageProcessingFunctions.isGray16(expected), ImageProcessingFunctions.isGray16(fused));
+        if (ImageProcessingFunctions.isGray16(expected)) {
+            assertArrayEquals(ImageProcessingFunctions.gray16Samples(expected),
+                    ImageProcessingFunctions.gray16Samples(fused));
+        } else {
+            assertArrayEquals(pixels(expected), pixels(fused));
+        }
+    }
+
+    private static Recipe.Step brightnessContrast(int brightness, int contrast) {
+        return new Recipe.Step("Brightness/Contrast",
+                Map.of("brightness", String.valueOf(brightness), "contrast", String.valueOf(contrast)));
+    }
+
+    private static Recipe.Step step(String operation) {
+        return new Recipe.Step(operation, Collections.emptyMap());
+    }
+
+    private static Recipe.Step step(String operation, String parameter, String value) {
+        return new Recipe.Step(operation, Map.of(parameter, value));
+    }
+
+    private static BufferedImage randomRgb(int width, int height, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt(1 << 24));
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage randomGray16(int width, int height, long seed) {
+        Random random = new Random(seed);
+        short[] samples = new short[width * height];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) random.nextInt(65536);
+        }
+        return ImageProcessingFunctions.gray16Image(width, height, samples);
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+}
@@ -0,0 +1,89 @@
+package toSTL;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MeshValidatorTest {
+
+    @Test
+    void closedBoxIsValid() {
+        List<Triangle> box = Meshes.box(0, 0, 0, 2, 3, 4);
+        MeshValidator.Report report = MeshValidator.validate(box);
+
+        assertTrue(report.isValid(), report.getProblems());
+        assertEquals(8, report.getVertices());
+        assertEquals(18, report.getEdges());
+        assertEquals(24.0, Meshes.signedVolume(box), 1e-9);
+    }
+
+    @Test
+    void missingTriangleLeavesBoundaryEdges() {
+        List<Triangle> box = Meshes.box(0, 0, 0, 1, 1, 1);
+        box.remove(5);
+        MeshValidator.Report report = MeshValidator.validate(box);
+
+        assertFalse(report.isWatertight());
+        assertEquals(3, report.getBoundaryEdges());
+    }
+
+    @Test
+    void reversedTriangleIsInconsistentlyOriented() {
+        List<Triangle> box = Meshes.box(0, 0, 0, 1, 1, 1);
+        Triangle t = box.get(0);
+        box.set(0, new Triangle(t.v1, t.v3, t.v2));
+        MeshValidator.Report report = MeshValidator.validate(box);
+
+        assertTrue(report.isWatertight());
+        assertEquals(3, report.getFlippedEdges());
+        assertFalse(report.isValid());
+    }
+
+    @Test
+    void collinearTrianglesAreDegenerate() {
+        List<Triangle> triangles = new ArrayList<>(Meshes.box(0, 0, 0, 1, 1, 1));
+        triangles.add(new Triangle(new Vector3(0, 0, 0), new Vector3(0.5f, 0.5f, 0.5f), new Vector3(1, 1, 1)));
+        assertEquals(1, MeshValidator.validate(triangles).getDegenerateTriangles());
+
+        GridMesh mesh = new GridMesh(0.5f, 0.1f);
+        mesh.add(GridMesh.NORMAL_COMPUTED, 0, 0, 3, 2, 2, 5, 6, 6, 9);
+        mesh.add(GridMesh.NORMAL_COMPUTED, 0, 0, 3, 2, 2, 5, 6, 6, 10);
+        MeshValidator.Report report = MeshValidator.validate(mesh);
+        assertEquals(1, report.getDegenerateTriangles());
+        assertFalse(report.isValid());
+    }
+
+    @Test
+    void boxesTouchingAlongAnEdgeArePinchedNotInvalid() {
+        List<Triangle> boxes = Meshes.box(0, 0, 0, 1, 1, 1);
+        boxes.addAll(Meshes.box(1, 1, 0, 2, 2, 1));
+        MeshValidator.Report report = MeshValidator.validate(boxes);
+
+        assertEquals(1, report.getPinchEdges());
+        assertEquals(0, report.getNonManifoldEdges());
+        assertTrue(report.isValid(), report.getProblems());
+    }
+
+    @Test
+    void gridMeshMatchesFloatPath() {
+        HeightMap map = new HeightMap(6, 5, 15);
+        for (int y = 0; y < 5; y++) {
+            for (int x = 0; x < 6; x++) {
+                map.set(x, y, 1 + (x * 7 + y * 3) % 15);
+            }
+        }
+        GridMesh mesh = new VoxelToSTL(map, 1.0f, 3.0f).convert();
+        MeshValidator.Report grid = MeshValidator.validate(mesh);
+        MeshValidator.Report floats = MeshValidator.validate(List.copyOf(mesh));
+
+        assertTrue(grid.isValid(), grid.getProblems());
+        assertEquals(floats.getVertices(), grid.getVertices());
+        assertEquals(floats.getEdges(), grid.getEdges());
+        assertTrue(floats.isValid(), floats.getProblems());
+    }
+}
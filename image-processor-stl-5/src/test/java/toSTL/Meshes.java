@@ -0,0 +1,61 @@
+package toSTL;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mesh helpers shared by the mesher tests.
+ */
+final class Meshes {
+
+    private Meshes() {
+    }
+
+    /**
+     * Volume enclosed by a closed mesh, by the divergence theorem: the sum of the signed
+     * tetrahedra from the origin to each triangle. Positive when the faces point outward.
+     */
+    static double signedVolume(List<Triangle> triangles) {
+        double volume = 0;
+        for (Triangle t : triangles) {
+            double cx = (double) t.v2.y * t.v3.z - (double) t.v2.z * t.v3.y;
+            double cy = (double) t.v2.z * t.v3.x - (double) t.v2.x * t.v3.z;
+            double cz = (double) t.v2.x * t.v3.y - (double) t.v2.y * t.v3.x;
+            volume += t.v1.x * cx + t.v1.y * cy + t.v1.z * cz;
+        }
+        return volume / 6;
+    }
+
+    /**
+     * The mesh as binary STL bytes, for comparing meshes built in different ways.
+     */
+    static byte[] binarySTL(GridMesh mesh) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        STLWriter.writeBinary(mesh, out, ConversionListener.NONE);
+        return out.toByteArray();
+    }
+
+    /**
+     * Axis-aligned box with outward (counterclockwise from outside) faces.
+     */
+    static List<Triangle> box(float x0, float y0, float z0, float x1, float y1, float z1) {
+        List<Triangle> triangles = new ArrayList<>();
+        quad(triangles, x0, y0, z0, x0, y1, z0, x1, y1, z0, x1, y0, z0); // Bottom
+        quad(triangles, x0, y0, z1, x1, y0, z1, x1, y1, z1, x0, y1, z1); // Top
+        quad(triangles, x0, y0, z0, x1, y0, z0, x1, y0, z1, x0, y0, z1); // -y
+        quad(triangles, x0, y1, z0, x0, y1, z1, x1, y1, z1, x1, y1, z0); // +y
+        quad(triangles, x0, y0, z0, x0, y0, z1, x0, y1, z1, x0, y1, z0); // -x
+        quad(triangles, x1, y0, z0, x1, y1, z0, x1, y1, z1, x1, y0, z1); // +x
+        return triangles;
+    }
+
+    private static void quad(List<Triangle> triangles, float ax, float ay, float az, float bx, float by, float bz,
+                             float cx, float cy, float cz, float dx, float dy, float dz) {
+        Vector3 a = new Vector3(ax, ay, az);
+        Vector3 c = new Vector3(cx, cy, cz);
+        triangles.add(new Triangle(a, new Vector3(bx, by, bz), c));
+        triangles.add(new Triangle(a, c, new Vector3(dx, dy, dz)));
+    }
+}
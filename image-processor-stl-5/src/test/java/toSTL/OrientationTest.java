@@ -0,0 +1,77 @@
+package toSTL;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OrientationTest {
+
+    @Test
+    void namedOrientationsMoveTheTopLeftCorner() {
+        // Output (0, 0) on a 4 x 3 source
+        assertEquals(8, Orientation.ROTATE_90.sourceIndex(0, 0, 4, 3)); // Bottom-left
+        assertEquals(11, Orientation.ROTATE_180.sourceIndex(0, 0, 4, 3));
+        assertEquals(3, Orientation.ROTATE_270.sourceIndex(0, 0, 4, 3)); // Top-right
+        assertEquals(3, Orientation.FLIP_HORIZONTAL.sourceIndex(0, 0, 4, 3));
+        assertEquals(8, Orientation.FLIP_VERTICAL.sourceIndex(0, 0, 4, 3));
+        assertEquals(Orientation.ROTATE_180, Orientation.ROTATE_90.then(Orientation.ROTATE_90));
+        assertEquals(Orientation.IDENTITY, Orientation.ROTATE_90.then(Orientation.ROTATE_270));
+    }
+
+    @Test
+    void thenEqualsApplyingBothMappings() {
+        int w = 7;
+        int h = 4;
+        for (Orientation a : Orientation.values()) {
+            int midW = a.outputWidth(w, h);
+            int midH = a.outputHeight(w, h);
+            for (Orientation b : Orientation.values()) {
+                Orientation ab = a.then(b);
+                assertEquals(b.outputWidth(midW, midH), ab.outputWidth(w, h), a + " then " + b);
+                assertEquals(b.outputHeight(midW, midH), ab.outputHeight(w, h), a + " then " + b);
+                for (int y = 0; y < ab.outputHeight(w, h); y++) {
+                    for (int x = 0; x < ab.outputWidth(w, h); x++) {
+                        int mid = b.sourceIndex(x, y, midW, midH);
+                        int expected = a.sourceIndex(mid % midW, mid / midW, w, h);
+                        assertEquals(expected, ab.sourceIndex(x, y, w, h), a + " then " + b + " at " + x + "," + y);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void orientedViewsOfViewsMatchTheMaterializedMap() {
+        int w = 9;
+        int h = 5;
+        Random random = new Random(35);
+        HeightMap map = new HeightMap(w, h, 1000);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                map.set(x, y, random.nextInt(1001));
+            }
+        }
+        for (Orientation a : Orientation.values()) {
+            HeightMap viewA = map.oriented(a);
+            HeightMap copyA = new HeightMap(viewA.getWidth(), viewA.getHeight(), 1000);
+            for (int y = 0; y < viewA.getHeight(); y++) {
+                for (int x = 0; x < viewA.getWidth(); x++) {
+                    copyA.set(x, y, viewA.get(x, y));
+                }
+            }
+            for (Orientation b : Orientation.values()) {
+                HeightMap view = viewA.oriented(b);
+                HeightMap expected = copyA.oriented(b);
+                assertEquals(expected.getWidth(), view.getWidth(), a + " then " + b);
+                assertEquals(expected.getHeight(), view.getHeight(), a + " then " + b);
+                for (int y = 0; y < view.getHeight(); y++) {
+                    for (int x = 0; x < view.getWidth(); x++) {
+                        assertEquals(expected.get(x, y), view.get(x, y), a + " then " + b + " at " + x + "," + y);
+                    }
+                }
+            }
+        }
+    }
+}
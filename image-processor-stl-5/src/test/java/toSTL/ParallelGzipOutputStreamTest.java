@@ -0,0 +1,125 @@
+package toSTL;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelGzipOutputStreamTest {
+    private static final int BLOCK = 1 << 20; // ParallelGzipOutputStream.BLOCK_BYTES
+
+    @Test
+    void emptyInputIsAValidGzipStream() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ParallelGzipOutputStream(out).close();
+
+        assertArrayEquals(new byte[0], gunzip(out.toByteArray()));
+    }
+
+    @Test
+    void roundTripsAroundBlockBoundaries() throws IOException {
+        for (int length : new int[] {1, 1000, BLOCK - 1, BLOCK, BLOCK + 1, 2 * BLOCK, 3 * BLOCK + 17}) {
+            byte[] data = sample(length, length);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(out)) {
+                gzip.write(data);
+            }
+            assertArrayEquals(data, gunzip(out.toByteArray()), "length " + length);
+        }
+    }
+
+    @Test
+    void roundTripsMixedWritesAndFlushes() throws IOException {
+        byte[] data = sample(2 * BLOCK + 12345, 43);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(out, Deflater.BEST_SPEED)) {
+            int offset = 0;
+            Random random = new Random(43);
+            while (offset < data.length) {
+                if (random.nextInt(10) == 0) {
+                    gzip.write(data[offset++]);
+                } else {
+                    int length = Math.min(data.length - offset, random.nextInt(300_000));
+                    gzip.write(data, offset, length);
+                    offset += length;
+                }
+                if (random.nextInt(8) == 0) {
+                    gzip.flush();
+                }
+            }
+        }
+        assertArrayEquals(data, gunzip(out.toByteArray()));
+    }
+
+    @Test
+    void incompressibleDataRoundTrips() throws IOException {
+        byte[] data = new byte[BLOCK + 99];
+        new Random(1).nextBytes(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(out)) {
+            gzip.write(data);
+        }
+        assertArrayEquals(data, gunzip(out.toByteArray()));
+    }
+
+    @Test
+    void writeAfterCloseFails() throws IOException {
+        ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(new ByteArrayOutputStream());
+        gzip.close();
+        assertThrows(IOException.class, () -> gzip.write(1));
+    }
+
+    /**
+     * Repetitive STL-like bytes, so blocks actually compress.
+     */
+    private static byte[] sample(int length, long seed) {
+        Random random = new Random(seed);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i % 50 < 12 ? random.nextInt(4) : i % 50);
+        }
+        return data;
+    }
+
+    /**
+     * Decompress, checking the output is one gzip member: a single deflate stream followed
+     * by only the 8-byte trailer (GZIPInputStream alone would also accept several members).
+     */
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        byte[] data;
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            data = in.readAllBytes();
+        }
+
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed, 10, compressed.length - 10);
+            byte[] buffer = new byte[1 << 16];
+            long inflated = 0;
+            while (!inflater.finished()) {
+                int read = inflater.inflate(buffer);
+                assertTrue(read > 0 || !inflater.needsInput(), "deflate stream ends early");
+                inflated += read;
+            }
+            assertEquals(data.length, inflated);
+            assertEquals(8, inflater.getRemaining());
+        } catch (DataFormatException ex) {
+            throw new IOException(ex);
+        } finally {
+            inflater.end();
+        }
+        return data;
+    }
+}
@@ -0,0 +1,79 @@
+package toSTL;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RunLengthToSTLTest {
+    private static final float VOXEL_SIZE = 0.4f;
+    private static final float LAYER_HEIGHT = 0.2f;
+    private static final int DEPTH = 40;
+
+    /**
+     * Up to three separate runs per column (overhangs and enclosed gaps), some columns empty;
+     * the same runs for the same column on every call.
+     */
+    private static final RunLengthVolume.ColumnRuns RANDOM_RUNS = (x, y, runs) -> {
+        Random random = new Random(x * 1_000_003L + y);
+        int count = 0;
+        int z = random.nextInt(DEPTH / 2);
+        int runCount = random.nextInt(4);
+        while (count < runCount && z < DEPTH) {
+            int end = Math.min(DEPTH, z + 1 + random.nextInt(8));
+            runs[2 * count] = z;
+            runs[2 * count + 1] = end;
+            count++;
+            z = end + 1 + random.nextInt(6);
+        }
+        return count;
+    };
+
+    @Test
+    void volumeEqualsVoxelCount() {
+        RunLengthVolume volume = RunLengthVolume.build(30, 25, DEPTH, RANDOM_RUNS);
+        GridMesh mesh = new RunLengthToSTL(volume, VOXEL_SIZE, LAYER_HEIGHT).convert();
+
+        MeshValidator.Report report = MeshValidator.validate(mesh);
+        assertTrue(report.isValid(), report.getProblems());
+        double expected = volume.voxelCount() * (double) VOXEL_SIZE * VOXEL_SIZE * LAYER_HEIGHT;
+        assertEquals(expected, Meshes.signedVolume(mesh), expected * 1e-5);
+    }
+
+    @Test
+    void heightMapVolumeEqualsLevelSum() {
+        HeightMap map = new HeightMap(17, 11, 20);
+        long levels = 0;
+        for (int y = 0; y < map.getHeight(); y++) {
+            for (int x = 0; x < map.getWidth(); x++) {
+                map.set(x, y, (x * 5 + y * 3) % 21);
+                levels += map.get(x, y);
+            }
+        }
+        RunLengthVolume volume = RunLengthVolume.fromHeightMap(map);
+        GridMesh mesh = new RunLengthToSTL(volume, VOXEL_SIZE, LAYER_HEIGHT).convert();
+
+        assertEquals(levels, volume.voxelCount());
+        assertTrue(MeshValidator.validate(mesh).isValid());
+        double expected = levels * (double) VOXEL_SIZE * VOXEL_SIZE * LAYER_HEIGHT;
+        assertEquals(expected, Meshes.signedVolume(mesh), expected * 1e-5);
+    }
+
+    @Test
+    void streamedMeshMatchesFullVolume() throws IOException {
+        // Tall enough for several bands, with a partial last band
+        int width = 23;
+        int height = 150;
+        GridMesh full = new RunLengthToSTL(RunLengthVolume.build(width, height, DEPTH, RANDOM_RUNS),
+                VOXEL_SIZE, LAYER_HEIGHT).convert();
+        GridMesh streamed = new RunLengthToSTL(width, height, DEPTH, RANDOM_RUNS, VOXEL_SIZE, LAYER_HEIGHT)
+                .convert();
+
+        assertEquals(full.size(), streamed.size());
+        assertArrayEquals(Meshes.binarySTL(full), Meshes.binarySTL(streamed));
+    }
+}
@@ -0,0 +1,87 @@
+package toSTL;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RunLengthVolumeTest {
+
+    @Test
+    void layersStackIntoOneSolidRunPerColumn() {
+        // The middle layer is empty in places, which must not leave the top layer floating
+        List<HeightMap> layers = randomLayers(30, 20, 3, 49);
+        int baseLevels = 5;
+        RunLengthVolume volume = RunLengthVolume.fromLayers(layers, baseLevels);
+
+        long expected = 0;
+        for (int y = 0; y < volume.getHeight(); y++) {
+            for (int x = 0; x < volume.getWidth(); x++) {
+                int top = baseLevels;
+                for (HeightMap layer : layers) {
+                    top += layer.get(x, y);
+                }
+                assertEquals(1, volume.runCount(x, y));
+                assertEquals(0, volume.zStart(x, y, 0));
+                assertEquals(top, volume.zEnd(x, y, 0));
+                expected += top;
+            }
+        }
+        assertEquals(expected, volume.voxelCount());
+        assertTrue(volume.getDepth() >= baseLevels + layers.size() * 255);
+    }
+
+    @Test
+    void layersWithDifferentMaximaAreRescaled() {
+        HeightMap coarse = new HeightMap(2, 1, 15);
+        coarse.set(0, 0, 15);
+        coarse.set(1, 0, 5);
+        HeightMap fine = new HeightMap(2, 1, 255);
+        fine.set(0, 0, 100);
+        RunLengthVolume volume = RunLengthVolume.fromLayers(List.of(coarse, fine), 0);
+
+        assertEquals(2 * 255, volume.getDepth());
+        assertEquals(255 + 100, volume.zEnd(0, 0, 0));
+        assertEquals(85, volume.zEnd(1, 0, 0));
+    }
+
+    @Test
+    void layersMustMatchInSize() {
+        List<HeightMap> layers = List.of(new HeightMap(4, 4, 255), new HeightMap(4, 5, 255));
+        assertThrows(IllegalArgumentException.class, () -> RunLengthVolume.layerDepth(layers, 0));
+    }
+
+    @Test
+    void streamedLayersMatchBuiltVolume() throws IOException {
+        List<HeightMap> layers = randomLayers(21, 140, 2, 7);
+        int depth = RunLengthVolume.layerDepth(layers, 3);
+        GridMesh full = new RunLengthToSTL(RunLengthVolume.fromLayers(layers, 3), 0.5f, 0.01f).convert();
+        GridMesh streamed = new RunLengthToSTL(21, 140, depth, RunLengthVolume.layerRuns(layers, 3), 0.5f, 0.01f)
+                .convert();
+
+        assertTrue(MeshValidator.validate(streamed).isValid());
+        assertArrayEquals(Meshes.binarySTL(full), Meshes.binarySTL(streamed));
+    }
+
+    private static List<HeightMap> randomLayers(int width, int height, int count, long seed) {
+        Random random = new Random(seed);
+        List<HeightMap> layers = new ArrayList<>();
+        for (int k = 0; k < count; k++) {
+            HeightMap layer = new HeightMap(width, height, 255);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    layer.set(x, y, random.nextInt(4) == 0 ? 0 : random.nextInt(256));
+                }
+            }
+            layers.add(layer);
+        }
+        return layers;
+    }
+}
@@ -0,0 +1,138 @@
+package toSTL;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VoxelToSTLTest {
+    private static final float VOXEL_SIZE = 0.5f;
+    private static final float MAX_HEIGHT = 25.5f; // 0.1 per level at 255 levels
+
+    @Test
+    void planeHasAnalyticVolume() {
+        HeightMap map = new HeightMap(12, 9, 255);
+        for (int y = 0; y < map.getHeight(); y++) {
+            for (int x = 0; x < map.getWidth(); x++) {
+                map.set(x, y, 10 + 2 * x + 3 * y);
+            }
+        }
+        for (BaseMode baseMode : BaseMode.values()) {
+            for (int plinthLevels : new int[] {0, 10}) {
+                GridMesh mesh = new VoxelToSTL(map, VOXEL_SIZE, MAX_HEIGHT, baseMode, plinthLevels * 0.1f)
+                        .convert();
+
+                // Any triangulation of a planar cell holds the mean of its four corners
+                double levels = 0;
+                for (int y = 0; y < map.getHeight() - 1; y++) {
+                    for (int x = 0; x < map.getWidth() - 1; x++) {
+                        levels += (map.get(x, y) + map.get(x + 1, y) + map.get(x, y + 1)
+                                + map.get(x + 1, y + 1)) / 4.0 + plinthLevels;
+                    }
+                }
+                assertClosed(mesh);
+                assertVolume(levels * VOXEL_SIZE * VOXEL_SIZE * mesh.getZScale(), mesh);
+            }
+        }
+    }
+
+    @Test
+    void flatReliefWithHolesAndIslandsHasCellVolume() {
+        // A frame around a hole holding an island, and a separate notched block
+        HeightMap map = new HeightMap(20, 14, 255);
+        fill(map, 1, 1, 12, 12, 7);
+        fill(map, 4, 4, 9, 9, 0);
+        fill(map, 6, 6, 7, 7, 7);
+        fill(map, 14, 2, 18, 11, 7);
+        fill(map, 16, 5, 18, 7, 0);
+        for (BaseMode baseMode : BaseMode.values()) {
+            GridMesh mesh = new VoxelToSTL(map, VOXEL_SIZE, MAX_HEIGHT, baseMode, 0).convert();
+
+            int cells = 0;
+            for (int y = 0; y < map.getHeight() - 1; y++) {
+                for (int x = 0; x < map.getWidth() - 1; x++) {
+                    if (map.get(x, y) > 0 && map.get(x + 1, y) > 0 && map.get(x, y + 1) > 0
+                            && map.get(x + 1, y + 1) > 0) {
+                        cells++;
+                    }
+                }
+            }
+            assertClosed(mesh);
+            assertVolume(cells * 7 * VOXEL_SIZE * VOXEL_SIZE * mesh.getZScale(), mesh);
+        }
+    }
+
+    @Test
+    void randomReliefIsClosedAndOutward() {
+        Random random = new Random(46);
+        HeightMap map = new HeightMap(40, 30, 255);
+        for (int y = 0; y < map.getHeight(); y++) {
+            for (int x = 0; x < map.getWidth(); x++) {
+                map.set(x, y, random.nextInt(4) == 0 ? 0 : random.nextInt(256));
+            }
+        }
+        for (BaseMode baseMode : BaseMode.values()) {
+            for (float plinth : new float[] {0, 1.0f}) {
+                GridMesh mesh = new VoxelToSTL(map, VOXEL_SIZE, MAX_HEIGHT, baseMode, plinth).convert();
+                assertClosed(mesh);
+                assertTrue(Meshes.signedVolume(mesh) > 0, "faces point inward");
+            }
+        }
+    }
+
+    @Test
+    void wallsOverEvenSlopesHaveNoZeroAreaFacets() {
+        // Outline runs whose heights are constant or change linearly: every wall chain point
+        // is collinear with its neighbours
+        HeightMap map = new HeightMap(30, 24, 255);
+        fill(map, 2, 2, 27, 21, 1);
+        for (int y = 2; y <= 21; y++) {
+            for (int x = 2; x <= 27; x++) {
+                map.set(x, y, y < 12 ? 3 * x : 40 + 2 * y);
+            }
+        }
+        fill(map, 10, 8, 14, 15, 0);
+        for (BaseMode baseMode : BaseMode.values()) {
+            for (float plinth : new float[] {0, 1.0f}) {
+                assertClosed(new VoxelToSTL(map, VOXEL_SIZE, MAX_HEIGHT, baseMode, plinth).convert());
+            }
+        }
+    }
+
+    @Test
+    void baseModesEncloseTheSameVolume() {
+        Random random = new Random(45);
+        HeightMap map = new HeightMap(25, 25, 255);
+        for (int y = 0; y < map.getHeight(); y++) {
+            for (int x = 0; x < map.getWidth(); x++) {
+                map.set(x, y, random.nextInt(3) == 0 ? 0 : 1 + random.nextInt(255));
+            }
+        }
+        GridMesh perQuad = new VoxelToSTL(map, VOXEL_SIZE, MAX_HEIGHT, BaseMode.PER_QUAD, 0).convert();
+        GridMesh merged = new VoxelToSTL(map, VOXEL_SIZE, MAX_HEIGHT, BaseMode.MERGED, 0).convert();
+
+        assertVolume(Meshes.signedVolume(perQuad), merged);
+        assertTrue(merged.size() <= perQuad.size());
+    }
+
+    private static void fill(HeightMap map, int x0, int y0, int x1, int y1, int level) {
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                map.set(x, y, level);
+            }
+        }
+    }
+
+    private static void assertClosed(GridMesh mesh) {
+        MeshValidator.Report report = MeshValidator.validate(mesh);
+        assertTrue(report.isValid(), report.getProblems());
+        assertEquals(0, report.getFlippedEdges());
+        assertEquals(0, report.getDegenerateTriangles(), "zero-area facets");
+    }
+
+    private static void assertVolume(double expected, GridMesh mesh) {
+        assertEquals(expected, Meshes.signedVolume(mesh), Math.abs(expected) * 1e-5);
+    }
+}